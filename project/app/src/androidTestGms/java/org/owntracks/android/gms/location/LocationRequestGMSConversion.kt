@@ -20,10 +20,12 @@ class LocationRequestGMSConversion {
                 numUpdates = 50,
                 expirationDuration = TimeUnit.MINUTES.toMillis(2),
                 priority = LocationRequest.PRIORITY_HIGH_ACCURACY,
-                interval = 30_000)
+                interval = 30_000,
+                maxWaitTime = 120_000)
 
         val gmsLocationRequest = locationRequest.toGMSLocationRequest()
         assertEquals(1000, gmsLocationRequest.fastestInterval)
+        assertEquals(120_000, gmsLocationRequest.maxWaitTime)
         assertEquals(30_000, gmsLocationRequest.interval)
         assertEquals(50, gmsLocationRequest.numUpdates)
         assertEquals(com.google.android.gms.location.LocationRequest.PRIORITY_HIGH_ACCURACY, gmsLocationRequest.priority)
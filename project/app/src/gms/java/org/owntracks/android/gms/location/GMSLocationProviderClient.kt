@@ -66,7 +66,7 @@ class GMSLocationProviderClient(private val fusedLocationProviderClient: FusedLo
         Timber.i("Requesting location updates $locationRequest ${clientCallBack.hashCode()}")
         val gmsCallBack = object : com.google.android.gms.location.LocationCallback() {
             override fun onLocationResult(locationResult: LocationResult) {
-                clientCallBack.onLocationResult(org.owntracks.android.location.LocationResult(locationResult.lastLocation))
+                clientCallBack.onLocationResult(org.owntracks.android.location.LocationResult(locationResult.locations))
             }
 
             override fun onLocationAvailability(locationAvailability: LocationAvailability) {
@@ -11,6 +11,10 @@ class GMSGeofencingClient(private val geofencingClient: com.google.android.gms.l
         this.geofencingClient.removeGeofences(GeofencePendingIntent)
     }
 
+    override fun removeGeofences(requestIds: List<String>) {
+        this.geofencingClient.removeGeofences(requestIds)
+    }
+
     @SuppressLint("MissingPermission")
     override fun addGeofences(request: GeofencingRequest, GeofencePendingIntent: PendingIntent) {
         this.geofencingClient.addGeofences(request.toGMSGeofencingRequest(), GeofencePendingIntent)
@@ -7,6 +7,7 @@ import android.os.Bundle
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
+import androidx.core.content.ContextCompat
 import androidx.databinding.DataBindingUtil
 import com.google.android.gms.maps.CameraUpdateFactory
 import com.google.android.gms.maps.GoogleMap
@@ -36,6 +37,7 @@ class GoogleMapFragment internal constructor() : MapFragment(), OnMapReadyCallba
     private var googleMap: GoogleMap? = null
     private var binding: GoogleMapFragmentBinding? = null
     private val markers: MutableMap<String, Marker?> = HashMap()
+    private val tracks: MutableMap<String, Polyline> = HashMap()
 
     override fun onCreateView(
         inflater: LayoutInflater,
@@ -125,6 +127,9 @@ class GoogleMapFragment internal constructor() : MapFragment(), OnMapReadyCallba
                     (activity as MapActivity).onMapClick()
                 }
             }
+            setOnCameraIdleListener {
+                (activity as MapActivity).onMapZoomChanged(cameraPosition.zoom.toDouble())
+            }
 
         }
     }
@@ -136,6 +141,7 @@ class GoogleMapFragment internal constructor() : MapFragment(), OnMapReadyCallba
     override fun clearMarkers() {
         this.googleMap?.clear()
         markers.clear()
+        tracks.clear()
     }
 
     override fun updateMarker(id: String, latLng: org.owntracks.android.location.LatLng) {
@@ -163,6 +169,32 @@ class GoogleMapFragment internal constructor() : MapFragment(), OnMapReadyCallba
         }
     }
 
+    override fun updateTrack(id: String, track: List<org.owntracks.android.location.LatLng>) {
+        if (track.size < 2) {
+            removeTrack(id)
+            return
+        }
+        val points = track.map { it.toGMSLatLng() }
+        val polyline = tracks[id]
+        if (polyline != null) {
+            polyline.points = points
+        } else {
+            googleMap?.addPolyline(
+                PolylineOptions()
+                    .addAll(points)
+                    .width(TRACK_WIDTH)
+                    .color(ContextCompat.getColor(requireContext(), R.color.contact_track))
+            )?.also { tracks[id] = it }
+        }
+    }
+
+    override fun removeTrack(id: String) {
+        tracks.remove(id)?.remove()
+    }
+
+    override fun currentZoom(): Double =
+        googleMap?.cameraPosition?.zoom?.toDouble() ?: ZOOM_LEVEL_STREET.toDouble()
+
     override fun locationPermissionGranted() {
         initMap()
     }
@@ -211,6 +243,7 @@ class GoogleMapFragment internal constructor() : MapFragment(), OnMapReadyCallba
 
     companion object {
         private const val ZOOM_LEVEL_STREET: Float = 15f
+        private const val TRACK_WIDTH: Float = 8f
     }
 }
 
@@ -0,0 +1,99 @@
+package org.owntracks.android.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.objectbox.annotation.Entity;
+import io.objectbox.annotation.Id;
+import io.objectbox.annotation.Index;
+import io.objectbox.annotation.Unique;
+
+/**
+ * Persisted snapshot of a contact, used to warm the contacts repo after a process restart.
+ */
+@Entity
+public class ContactModel {
+    @Id
+    private long id;
+    @Unique
+    @Index
+    private String contactId = "";
+    private long tst = 0;
+    @Nullable
+    private byte[] messageLocation;
+    @Nullable
+    private String name;
+    @Nullable
+    private byte[] faceThumbnail;
+
+    public ContactModel() {
+    }
+
+    public ContactModel(@NonNull String contactId) {
+        this.contactId = contactId;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    @NonNull
+    public String getContactId() {
+        return contactId;
+    }
+
+    public void setContactId(@NonNull String contactId) {
+        this.contactId = contactId;
+    }
+
+    public long getTst() {
+        return tst; // unit is seconds
+    }
+
+    public void setTst(long tst) {
+        this.tst = tst;
+    }
+
+    /**
+     * @return the last known location message for this contact, serialized as unencrypted JSON
+     */
+    @Nullable
+    public byte[] getMessageLocation() {
+        return messageLocation;
+    }
+
+    public void setMessageLocation(@Nullable byte[] messageLocation) {
+        this.messageLocation = messageLocation;
+    }
+
+    @Nullable
+    public String getName() {
+        return name;
+    }
+
+    public void setName(@Nullable String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return a downscaled, re-encoded copy of the card face, so that we don't keep the full-size
+     * image around on disk
+     */
+    @Nullable
+    public byte[] getFaceThumbnail() {
+        return faceThumbnail;
+    }
+
+    public void setFaceThumbnail(@Nullable byte[] faceThumbnail) {
+        this.faceThumbnail = faceThumbnail;
+    }
+
+    @NonNull
+    public String toString() {
+        return "ContactModel(" + getId() + "," + getContactId() + "," + getTst() + ")";
+    }
+}
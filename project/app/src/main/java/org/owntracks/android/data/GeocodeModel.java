@@ -0,0 +1,95 @@
+package org.owntracks.android.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.objectbox.annotation.Entity;
+import io.objectbox.annotation.Id;
+import io.objectbox.annotation.Index;
+
+/**
+ * A cached reverse geocode result. A null text means the provider had no address for the location.
+ */
+@Entity
+public class GeocodeModel {
+    @Id
+    private long id;
+    @Index
+    private String provider = "";
+    private double latitude;
+    private double longitude;
+    @Nullable
+    private String text;
+    private long storedAt;
+    private long lastUsed;
+
+    public GeocodeModel() {
+    }
+
+    public GeocodeModel(@NonNull String provider, double latitude, double longitude, @Nullable String text, long storedAt) {
+        this.provider = provider;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.text = text;
+        this.storedAt = storedAt;
+        this.lastUsed = storedAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    @NonNull
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(@NonNull String provider) {
+        this.provider = provider;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    @Nullable
+    public String getText() {
+        return text;
+    }
+
+    public void setText(@Nullable String text) {
+        this.text = text;
+    }
+
+    public long getStoredAt() {
+        return storedAt;
+    }
+
+    public void setStoredAt(long storedAt) {
+        this.storedAt = storedAt;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public void setLastUsed(long lastUsed) {
+        this.lastUsed = lastUsed;
+    }
+}
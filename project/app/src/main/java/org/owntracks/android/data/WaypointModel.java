@@ -166,6 +166,14 @@ public class WaypointModel extends BaseObservable {
         this.lastTransition = status;
     }
 
+    /**
+     * Copies lastTransition and lastTriggered from another copy of this waypoint
+     */
+    public void copyTransitionStateFrom(@NonNull WaypointModel other) {
+        this.lastTransition = other.lastTransition;
+        this.lastTriggered = other.lastTriggered;
+    }
+
     public boolean isUnknown() {
         return this.lastTransition == 0;
     }
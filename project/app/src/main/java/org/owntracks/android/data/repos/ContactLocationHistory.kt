@@ -0,0 +1,152 @@
+package org.owntracks.android.data.repos
+
+import android.content.Context
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.*
+import org.owntracks.android.location.DouglasPeucker
+import org.owntracks.android.location.LatLng
+import org.owntracks.android.model.messages.MessageLocation
+import timber.log.Timber
+import java.io.*
+import java.net.URLEncoder
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Keeps the most recent fixes for each contact so that the map can draw where they've been. Each
+ * contact gets a [LocationHistoryRing], which is spilled to disk a little while after it changes and
+ * read back lazily the first time the contact is seen again.
+ */
+@Singleton
+class ContactLocationHistory @Inject constructor(@ApplicationContext context: Context) {
+    private val rings = mutableMapOf<String, LocationHistoryRing>()
+    private val dirty = mutableSetOf<String>()
+    private val spillDirectory = File(context.filesDir, SPILL_DIRECTORY_NAME)
+    private val scope = CoroutineScope(Dispatchers.IO)
+    private var spillJob: Job? = null
+
+    fun add(id: String, messageLocation: MessageLocation) {
+        val added = ringFor(id).add(
+            messageLocation.latitude,
+            messageLocation.longitude,
+            messageLocation.timestamp,
+            messageLocation.accuracy
+        )
+        if (added) {
+            scheduleSpill(id)
+        }
+    }
+
+    /**
+     * The contact's track, simplified down to the detail that's visible at the given zoom level. Reads
+     * the contact's history back from disk if it hasn't been seen since the app started.
+     */
+    suspend fun track(id: String, zoom: Double): List<LatLng> = withContext(Dispatchers.IO) {
+        trackNow(id, zoom)
+    }
+
+    private fun trackNow(id: String, zoom: Double): List<LatLng> {
+        val ring = synchronized(rings) {
+            rings[id] ?: restore(id)?.also { rings[id] = it }
+        } ?: return emptyList()
+        val latitudes = DoubleArray(ring.capacity)
+        val longitudes = DoubleArray(ring.capacity)
+        val count = ring.copyCoordinatesInto(latitudes, longitudes)
+        if (count < 2) {
+            return emptyList()
+        }
+        val tolerance = DouglasPeucker.toleranceForZoom(latitudes[count - 1], zoom)
+        return DouglasPeucker.simplify(latitudes, longitudes, count, tolerance)
+            .map { LatLng(latitudes[it], longitudes[it]) }
+    }
+
+    fun remove(id: String) {
+        synchronized(rings) {
+            rings.remove(id)
+            dirty.remove(id)
+        }
+        scope.launch { spillFileFor(id).delete() }
+    }
+
+    /**
+     * Drops a contact's history from memory, writing it out first if it's changed, so that it's
+     * still there to be restored if the contact comes back
+     */
+    fun evict(id: String) {
+        val ring = synchronized(rings) {
+            rings.remove(id)?.takeIf { dirty.remove(id) }
+        } ?: return
+        scope.launch { write(id, ring) }
+    }
+
+    fun clear() {
+        synchronized(rings) {
+            rings.clear()
+            dirty.clear()
+            spillJob?.cancel()
+            spillJob = null
+        }
+        scope.launch { spillDirectory.listFiles()?.forEach { it.delete() } }
+    }
+
+    private fun ringFor(id: String): LocationHistoryRing = synchronized(rings) {
+        rings.getOrPut(id) { restore(id) ?: LocationHistoryRing(LocationHistoryRing.DEFAULT_CAPACITY) }
+    }
+
+    private fun restore(id: String): LocationHistoryRing? {
+        val file = spillFileFor(id)
+        if (!file.exists()) {
+            return null
+        }
+        return try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use {
+                LocationHistoryRing.readFrom(it, LocationHistoryRing.DEFAULT_CAPACITY)
+            }
+        } catch (e: IOException) {
+            Timber.w(e, "Unable to read location history for $id")
+            null
+        }
+    }
+
+    private fun scheduleSpill(id: String) {
+        synchronized(rings) {
+            dirty.add(id)
+            if (spillJob?.isActive != true) {
+                spillJob = scope.launch {
+                    delay(SPILL_DELAY_MILLIS)
+                    spill()
+                }
+            }
+        }
+    }
+
+    private fun spill() {
+        val toWrite = synchronized(rings) {
+            dirty.mapNotNull { id -> rings[id]?.let { id to it } }.also { dirty.clear() }
+        }
+        if (toWrite.isEmpty()) {
+            return
+        }
+        toWrite.forEach { (id, ring) -> write(id, ring) }
+        Timber.v("Spilled location history for ${toWrite.size} contacts")
+    }
+
+    private fun write(id: String, ring: LocationHistoryRing) {
+        spillDirectory.mkdirs()
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(spillFileFor(id)))).use {
+                ring.writeTo(it)
+            }
+        } catch (e: IOException) {
+            Timber.w(e, "Unable to write location history for $id")
+        }
+    }
+
+    private fun spillFileFor(id: String) = File(spillDirectory, URLEncoder.encode(id, "UTF-8"))
+
+    companion object {
+        private const val SPILL_DIRECTORY_NAME = "locationHistory"
+        private val SPILL_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30)
+    }
+}
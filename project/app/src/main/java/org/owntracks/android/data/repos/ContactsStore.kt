@@ -0,0 +1,18 @@
+package org.owntracks.android.data.repos
+
+import org.owntracks.android.model.FusedContact
+import org.owntracks.android.model.messages.MessageCard
+import org.owntracks.android.model.messages.MessageLocation
+
+/**
+ * Durable backing store for [ContactsRepo]. Writes are allowed to be deferred, so callers on hot
+ * paths shouldn't assume that anything is on disk until [flush] has been called.
+ */
+interface ContactsStore {
+    fun loadAll(): List<FusedContact>
+    fun putLocation(id: String, messageLocation: MessageLocation)
+    fun putCard(id: String, messageCard: MessageCard)
+    fun remove(id: String)
+    fun clear()
+    fun flush()
+}
@@ -0,0 +1,103 @@
+package org.owntracks.android.data.repos
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+
+/**
+ * Fixed-capacity ring of location fixes, oldest first. Stored as parallel primitive arrays so that a
+ * few hundred fixes per contact cost a few KB rather than a few hundred [MessageLocation] objects.
+ */
+class LocationHistoryRing(capacity: Int) {
+    val capacity = if (capacity > 0) capacity else DEFAULT_CAPACITY
+    private val latitudes = DoubleArray(this.capacity)
+    private val longitudes = DoubleArray(this.capacity)
+    private val timestamps = LongArray(this.capacity)
+    private val accuracies = IntArray(this.capacity)
+    private var headPosition = 0
+
+    var size = 0
+        private set
+
+    val latestTimestamp: Long
+        @Synchronized get() = if (size == 0) 0 else timestamps[physicalIndex(size - 1)]
+
+    /**
+     * Appends a fix to the ring, evicting the oldest if full. Fixes that are not newer than the
+     * latest one held are dropped, as they'd otherwise make the track double back on itself.
+     *
+     * @return true if the fix was added
+     */
+    @Synchronized
+    fun add(latitude: Double, longitude: Double, timestamp: Long, accuracy: Int): Boolean {
+        if (size > 0 && timestamp <= latestTimestamp) {
+            return false
+        }
+        latitudes[headPosition] = latitude
+        longitudes[headPosition] = longitude
+        timestamps[headPosition] = timestamp
+        accuracies[headPosition] = accuracy
+        headPosition = (headPosition + 1) % capacity
+        if (size < capacity) {
+            size++
+        }
+        return true
+    }
+
+    /**
+     * Copies the coordinates into the given arrays, oldest first.
+     *
+     * @return the number of fixes copied
+     */
+    @Synchronized
+    fun copyCoordinatesInto(latitudeDestination: DoubleArray, longitudeDestination: DoubleArray): Int {
+        val count = minOf(size, latitudeDestination.size, longitudeDestination.size)
+        val offset = size - count
+        for (i in 0 until count) {
+            val index = physicalIndex(offset + i)
+            latitudeDestination[i] = latitudes[index]
+            longitudeDestination[i] = longitudes[index]
+        }
+        return count
+    }
+
+    @Synchronized
+    fun timestampAt(i: Int): Long = timestamps[physicalIndex(i)]
+
+    @Synchronized
+    fun accuracyAt(i: Int): Int = accuracies[physicalIndex(i)]
+
+    @Synchronized
+    fun clear() {
+        headPosition = 0
+        size = 0
+    }
+
+    private fun physicalIndex(i: Int): Int = (headPosition - size + i + capacity) % capacity
+
+    @Synchronized
+    @Throws(IOException::class)
+    fun writeTo(output: DataOutputStream) {
+        output.writeInt(size)
+        for (i in 0 until size) {
+            val index = physicalIndex(i)
+            output.writeDouble(latitudes[index])
+            output.writeDouble(longitudes[index])
+            output.writeLong(timestamps[index])
+            output.writeInt(accuracies[index])
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 500
+
+        @Throws(IOException::class)
+        fun readFrom(input: DataInputStream, capacity: Int): LocationHistoryRing {
+            return LocationHistoryRing(capacity).apply {
+                repeat(input.readInt()) {
+                    add(input.readDouble(), input.readDouble(), input.readLong(), input.readInt())
+                }
+            }
+        }
+    }
+}
@@ -4,19 +4,20 @@ import android.location.Location;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import org.greenrobot.eventbus.EventBus;
+import org.owntracks.android.support.EventChannels;
+
 import javax.inject.Singleton;
 
 import javax.inject.Inject;
 
 @Singleton
 public class LocationRepo {
-    private final EventBus eventBus;
+    private final EventChannels eventChannels;
     private Location currentLocation;
 
     @Inject
-    public LocationRepo(EventBus eventBus) {
-        this.eventBus = eventBus;
+    public LocationRepo(EventChannels eventChannels) {
+        this.eventChannels = eventChannels;
     }
 
     @Nullable
@@ -34,6 +35,6 @@ public class LocationRepo {
 
     public void setCurrentLocation(@NonNull Location l) {
         this.currentLocation = l;
-        eventBus.postSticky(l);
+        eventChannels.getLocation().post(l);
     }
 }
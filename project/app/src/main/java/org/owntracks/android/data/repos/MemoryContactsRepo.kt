@@ -2,6 +2,14 @@ package org.owntracks.android.data.repos
 
 import androidx.annotation.MainThread
 import androidx.lifecycle.MutableLiveData
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
 import org.greenrobot.eventbus.EventBus
 import org.greenrobot.eventbus.Subscribe
 import org.greenrobot.eventbus.ThreadMode
@@ -10,18 +18,33 @@ import org.owntracks.android.model.messages.MessageCard
 import org.owntracks.android.model.messages.MessageLocation
 import org.owntracks.android.support.ContactBitmapAndName
 import org.owntracks.android.support.ContactBitmapAndNameMemoryCache
+import org.owntracks.android.support.ContactUpdateCoalescer
 import org.owntracks.android.support.Events.*
+import org.owntracks.android.support.Preferences
 import timber.log.Timber
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 import javax.inject.Singleton
 
 @Singleton
 class MemoryContactsRepo @Inject constructor(
     private val eventBus: EventBus,
-    private val contactsBitmapAndNameMemoryCache: ContactBitmapAndNameMemoryCache
+    private val contactsBitmapAndNameMemoryCache: ContactBitmapAndNameMemoryCache,
+    private val contactsStore: ContactsStore,
+    private val contactLocationHistory: ContactLocationHistory,
+    private val preferences: Preferences,
+    private val contactUpdateCoalescer: ContactUpdateCoalescer
 ) : ContactsRepo {
 
     private val contacts = mutableMapOf<String,FusedContact>()
+
+    /**
+     * Wall-clock time each contact was last updated, which drives eviction
+     */
+    private val lastSeen = mutableMapOf<String, Long>()
+
+    private val evictionScope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private var evictionSweep: Job? = null
     override val all = MutableLiveData(contacts)
 
     override fun getById(id: String): FusedContact? {
@@ -29,37 +52,62 @@ class MemoryContactsRepo @Inject constructor(
     }
 
     @Synchronized
-    private fun put(id: String, contact: FusedContact) {
+    private fun put(id: String, contact: FusedContact, seenAt: Long = System.currentTimeMillis()) {
         Timber.v("new contact allocated id:%s, tid:%s", id, contact.trackerId)
         contacts[id] = contact
+        lastSeen[id] = seenAt
         all.postValue(contacts)
+        startEvictionSweep()
     }
 
     @MainThread
     @Synchronized
     override fun clearAll() {
         contacts.clear()
+        lastSeen.clear()
+        contactUpdateCoalescer.clear()
         contactsBitmapAndNameMemoryCache.evictAll()
+        contactsStore.clear()
+        contactLocationHistory.clear()
         all.postValue(contacts)
+        stopEvictionSweep()
     }
 
     @Synchronized
     override fun remove(id: String) {
         Timber.v("removing contact: %s", id)
-        contacts.remove(id)?.run { eventBus.post(FusedContactRemoved(this)) }
+        forget(id)
+        contactsStore.remove(id)
+        contactLocationHistory.remove(id)
+    }
+
+    /**
+     * Drops a contact from memory only, leaving whatever's persisted for it alone
+     */
+    private fun forget(id: String) {
+        contacts.remove(id)?.run {
+            contactUpdateCoalescer.cancel(this)
+            eventBus.post(FusedContactRemoved(this))
+        }
+        lastSeen.remove(id)
         all.postValue(contacts)
+        if (contacts.isEmpty()) {
+            stopEvictionSweep()
+        }
     }
 
     @Synchronized
     override fun update(id: String, messageCard: MessageCard) {
+        contactsStore.putCard(id, messageCard)
         var c = getById(id)
         if (c != null) {
+            lastSeen[id] = System.currentTimeMillis()
             c.messageCard = messageCard
             contactsBitmapAndNameMemoryCache.put(
                 c.id,
                 ContactBitmapAndName.CardBitmap(messageCard.name, null)
             )
-            eventBus.post(c)
+            contactUpdateCoalescer.offer(c)
         } else {
             c = FusedContact(id)
             c.messageCard = messageCard
@@ -78,8 +126,11 @@ class MemoryContactsRepo @Inject constructor(
         if (fusedContact != null) {
             // If timestamp of last location message is <= the new location message, skip update. We either received an old or already known message.
             if (fusedContact.setMessageLocation(messageLocation)) {
+                contactsStore.putLocation(id, messageLocation)
+                contactLocationHistory.add(id, messageLocation)
+                lastSeen[id] = System.currentTimeMillis()
                 all.postValue(contacts)
-                eventBus.post(fusedContact)
+                contactUpdateCoalescer.offer(fusedContact)
             }
         } else {
             fusedContact = FusedContact(id).apply {
@@ -92,11 +143,99 @@ class MemoryContactsRepo @Inject constructor(
                     }
                 }
             }
+            contactsStore.putLocation(id, messageLocation)
+            contactLocationHistory.add(id, messageLocation)
             put(id, fusedContact)
             eventBus.post(FusedContactAdded(fusedContact))
         }
     }
 
+    /**
+     * Populates the repo with whatever was persisted last time round, so that the map has something
+     * to show before the endpoint has re-delivered anything. Anything that's already arrived from
+     * the endpoint in the meantime wins.
+     */
+    private fun hydrate() {
+        GlobalScope.launch(Dispatchers.IO) {
+            val persisted = contactsStore.loadAll()
+            val loadedAt = System.currentTimeMillis()
+            synchronized(this@MemoryContactsRepo) {
+                persisted
+                    .filter { !contacts.containsKey(it.id) }
+                    .forEach { contact ->
+                        contact.messageCard?.name?.also {
+                            contactsBitmapAndNameMemoryCache.put(
+                                contact.id,
+                                ContactBitmapAndName.CardBitmap(it, null)
+                            )
+                        }
+                        // A contact with only a card has no location time, so counts as seen on loading
+                        put(
+                            contact.id,
+                            contact,
+                            if (contact.tst > 0) TimeUnit.SECONDS.toMillis(contact.tst) else loadedAt
+                        )
+                        eventBus.post(FusedContactAdded(contact))
+                    }
+            }
+        }
+    }
+
+    /**
+     * Drops contacts that haven't been heard from within [Preferences.contactsIdleHours], and then
+     * the least recently seen contacts until the repo is back under [Preferences.contactsMaxCount].
+     * Evicted contacts are only dropped from memory, so the map drops their markers and their
+     * cached bitmap goes too, but they're still persisted and are loaded again on the next start.
+     */
+    @Synchronized
+    internal fun evictStaleContacts(now: Long = System.currentTimeMillis()) {
+        val ttlMillis = TimeUnit.HOURS.toMillis(preferences.contactsIdleHours.toLong())
+        val stale = if (ttlMillis > 0) {
+            lastSeen.filterValues { now - it > ttlMillis }.keys
+        } else {
+            emptySet()
+        }
+        val maxCount = preferences.contactsMaxCount
+        val excess = if (maxCount > 0) contacts.size - stale.size - maxCount else 0
+        val overflow = if (excess > 0) {
+            lastSeen.entries
+                .filter { it.key !in stale }
+                .sortedBy { it.value }
+                .take(excess)
+                .map { it.key }
+        } else {
+            emptyList()
+        }
+        if (stale.isEmpty() && overflow.isEmpty()) {
+            return
+        }
+        Timber.d("Evicting ${stale.size} stale and ${overflow.size} excess contacts")
+        (stale + overflow).forEach {
+            forget(it)
+            contactLocationHistory.evict(it)
+            contactsBitmapAndNameMemoryCache.remove(it)
+        }
+    }
+
+    /**
+     * Sweeps for contacts to evict while there are any, so an empty repo doesn't keep a timer going
+     */
+    private fun startEvictionSweep() {
+        if (evictionSweep?.isActive == true) {
+            return
+        }
+        evictionSweep = evictionScope.launch {
+            while (isActive) {
+                delay(EVICTION_SWEEP_INTERVAL_MILLIS)
+                evictStaleContacts()
+            }
+        }
+    }
+
+    private fun stopEvictionSweep() {
+        evictionSweep?.cancel()
+        evictionSweep = null
+    }
 
     @Subscribe(threadMode = ThreadMode.BACKGROUND)
     fun onEventMainThread(@Suppress("UNUSED_PARAMETER") e: ModeChanged?) {
@@ -110,5 +249,10 @@ class MemoryContactsRepo @Inject constructor(
 
     init {
         eventBus.register(this)
+        hydrate()
+    }
+
+    companion object {
+        private val EVICTION_SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1)
     }
 }
\ No newline at end of file
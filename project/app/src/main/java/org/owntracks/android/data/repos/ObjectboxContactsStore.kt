@@ -0,0 +1,205 @@
+package org.owntracks.android.data.repos
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.Base64
+import io.objectbox.Box
+import io.objectbox.BoxStore
+import kotlinx.coroutines.*
+import org.owntracks.android.data.ContactModel
+import org.owntracks.android.data.ContactModel_
+import org.owntracks.android.model.FusedContact
+import org.owntracks.android.model.messages.MessageCard
+import org.owntracks.android.model.messages.MessageLocation
+import org.owntracks.android.support.Parser
+import timber.log.Timber
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Singleton
+
+@Singleton
+class ObjectboxContactsStore @Inject constructor(
+    private val boxStore: BoxStore,
+    private val parser: Parser
+) : ContactsStore {
+    private val box: Box<ContactModel> = boxStore.boxFor(ContactModel::class.java)
+    private val scope = CoroutineScope(Dispatchers.IO)
+    private val pendingWrites = mutableMapOf<String, PendingWrite>()
+    private var clearPending = false
+    private var flushJob: Job? = null
+
+    // Held for the whole of a flush, so that flushes (and so clears) are written one at a time, in order
+    private val writeLock = Any()
+
+    private class PendingWrite {
+        var messageLocation: MessageLocation? = null
+        var messageCard: MessageCard? = null
+        var removed = false
+    }
+
+    override fun loadAll(): List<FusedContact> {
+        val contacts = box.all.mapNotNull(::toFusedContact)
+        Timber.d("Loaded ${contacts.size} persisted contacts")
+        return contacts
+    }
+
+    override fun putLocation(id: String, messageLocation: MessageLocation) {
+        enqueue(id) {
+            this.messageLocation = messageLocation
+            removed = false
+        }
+    }
+
+    override fun putCard(id: String, messageCard: MessageCard) {
+        enqueue(id) {
+            this.messageCard = messageCard
+            removed = false
+        }
+    }
+
+    override fun remove(id: String) {
+        enqueue(id) {
+            messageLocation = null
+            messageCard = null
+            removed = true
+        }
+    }
+
+    /**
+     * Drops anything not yet written, and queues removing everything that has been. The removal goes
+     * through the same write-behind as everything else, so that it's ordered with the writes either
+     * side of it.
+     */
+    override fun clear() {
+        synchronized(pendingWrites) {
+            pendingWrites.clear()
+            clearPending = true
+            scheduleFlush()
+        }
+    }
+
+    private fun enqueue(id: String, update: PendingWrite.() -> Unit) {
+        synchronized(pendingWrites) {
+            pendingWrites.getOrPut(id, ::PendingWrite).update()
+            scheduleFlush()
+        }
+    }
+
+    private fun scheduleFlush() {
+        synchronized(pendingWrites) {
+            if (flushJob?.isActive != true) {
+                flushJob = scope.launch {
+                    delay(FLUSH_DELAY_MILLIS)
+                    flush()
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes out everything that's been queued since the last flush in a single transaction.
+     */
+    override fun flush() {
+        synchronized(writeLock) {
+            flushLocked()
+        }
+    }
+
+    private fun flushLocked() {
+        val batch: Map<String, PendingWrite>
+        val clearFirst: Boolean
+        synchronized(pendingWrites) {
+            if (pendingWrites.isEmpty() && !clearPending) return
+            batch = pendingWrites.toMap()
+            pendingWrites.clear()
+            clearFirst = clearPending
+            clearPending = false
+        }
+        val removals = batch.filterValues { it.removed }.keys
+        val updates = batch.filterValues { !it.removed }
+        try {
+            val models = updates.map { (id, pendingWrite) ->
+                ((if (clearFirst) null else findByContactId(id)) ?: ContactModel(id)).apply {
+                    pendingWrite.messageLocation?.also {
+                        messageLocation = parser.toUnencryptedJsonBytes(it)
+                        tst = it.timestamp
+                    }
+                    pendingWrite.messageCard?.also {
+                        name = it.name
+                        faceThumbnail = it.face?.run(::toFaceThumbnail)
+                    }
+                }
+            }
+            boxStore.runInTx {
+                if (clearFirst) {
+                    box.removeAll()
+                }
+                removals.forEach { id -> findByContactId(id)?.run(box::remove) }
+                box.put(models)
+            }
+            Timber.v("Flushed ${models.size} contact updates and ${removals.size} removals")
+        } catch (e: Exception) {
+            Timber.e(e, "Unable to persist contacts")
+        }
+    }
+
+    private fun findByContactId(id: String): ContactModel? =
+        box.query().equal(ContactModel_.contactId, id).build().findUnique()
+
+    private fun toFusedContact(model: ContactModel): FusedContact? {
+        val messageLocation = model.messageLocation?.let {
+            try {
+                parser.fromUnencryptedJson(it) as? MessageLocation
+            } catch (e: IOException) {
+                Timber.w(e, "Unable to deserialize persisted location for ${model.contactId}")
+                null
+            }
+        }
+        if (messageLocation == null && model.name == null && model.faceThumbnail == null) {
+            return null
+        }
+        return FusedContact(model.contactId).apply {
+            messageLocation?.also {
+                it.topic = model.contactId
+                setMessageLocation(it)
+            }
+            if (model.name != null || model.faceThumbnail != null) {
+                messageCard = MessageCard().apply {
+                    name = model.name
+                    face = model.faceThumbnail?.let { Base64.encodeToString(it, Base64.NO_WRAP) }
+                }
+            }
+        }
+    }
+
+    /**
+     * Cards can carry arbitrarily large images, but we only ever draw them at marker size. Decode
+     * once and store a small re-encoded copy.
+     */
+    private fun toFaceThumbnail(face: String): ByteArray? {
+        return try {
+            val imageAsBytes = Base64.decode(face.toByteArray(), Base64.DEFAULT)
+            BitmapFactory.decodeByteArray(imageAsBytes, 0, imageAsBytes.size)?.let { bitmap ->
+                ByteArrayOutputStream().use {
+                    Bitmap.createScaledBitmap(
+                        bitmap,
+                        FACE_THUMBNAIL_SIZE,
+                        FACE_THUMBNAIL_SIZE,
+                        true
+                    ).compress(Bitmap.CompressFormat.PNG, 100, it)
+                    it.toByteArray()
+                }
+            }
+        } catch (e: IllegalArgumentException) {
+            Timber.w(e, "Unable to decode card face")
+            null
+        }
+    }
+
+    companion object {
+        private val FLUSH_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5)
+        private const val FACE_THUMBNAIL_SIZE = 96
+    }
+}
@@ -6,13 +6,16 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import org.greenrobot.eventbus.EventBus;
-import org.owntracks.android.data.MyObjectBox;
 import org.owntracks.android.data.WaypointModel;
 import org.owntracks.android.data.WaypointModel_;
 import org.owntracks.android.support.Preferences;
+import org.owntracks.android.support.RunThingsOnOtherThreads;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -28,12 +31,13 @@ import timber.log.Timber;
 @Singleton
 public class ObjectboxWaypointsRepo extends WaypointsRepo {
     private final Preferences preferences;
+    private final BoxStore boxStore;
     private Box<org.owntracks.android.data.WaypointModel> box;
 
     @Inject
-    public ObjectboxWaypointsRepo(@ApplicationContext Context context, EventBus eventBus, Preferences preferences) {
-        super(eventBus);
-        BoxStore boxStore = MyObjectBox.builder().androidContext(context).build();
+    public ObjectboxWaypointsRepo(@ApplicationContext Context context, EventBus eventBus, Preferences preferences, BoxStore boxStore, RunThingsOnOtherThreads runThingsOnOtherThreads) {
+        super(eventBus, runThingsOnOtherThreads);
+        this.boxStore = boxStore;
         this.box = boxStore.boxFor(org.owntracks.android.data.WaypointModel.class);
         this.preferences = preferences;
         if (!preferences.isObjectboxMigrated()) {
@@ -97,26 +101,26 @@ public class ObjectboxWaypointsRepo extends WaypointsRepo {
 
     @Override
     public org.owntracks.android.data.WaypointModel get(long tst) {
-        return this.box.query().equal(WaypointModel_.tst, tst).build().findUnique();
+        return withPendingTransitionState(this.box.query().equal(WaypointModel_.tst, tst).build().findUnique());
     }
 
     @Override
     public List<org.owntracks.android.data.WaypointModel> getAll() {
-        return this.box.getAll();
+        return withPendingTransitionStates(this.box.getAll());
     }
 
     @Override
     public List<WaypointModel> getAllWithGeofences() {
-        return this.box.query().greater(WaypointModel_.geofenceRadius, 0L).and().between(WaypointModel_.geofenceLatitude, -90, 90).and().between(WaypointModel_.geofenceLongitude, -180, 180).build().find();
+        return withPendingTransitionStates(this.box.query().greater(WaypointModel_.geofenceRadius, 0L).and().between(WaypointModel_.geofenceLatitude, -90, 90).and().between(WaypointModel_.geofenceLongitude, -180, 180).build().find());
     }
 
     @Override
-    public ObjectBoxLiveData<WaypointModel> getAllLive() {
-        return new ObjectBoxLiveData<>(getAllQuery());
+    protected ObjectBoxLiveData<WaypointModel> getAllLive_impl() {
+        return new ObjectBoxLiveData<>(getAllQuery_impl());
     }
 
     @Override
-    public Query<WaypointModel> getAllQuery() {
+    protected Query<WaypointModel> getAllQuery_impl() {
         return this.box.query().order(WaypointModel_.description).build();
     }
 
@@ -135,5 +139,41 @@ public class ObjectboxWaypointsRepo extends WaypointsRepo {
         box.remove(w);
     }
 
+    @Override
+    protected void updateTransitionStates_impl(Map<Long, WaypointModel> states) {
+        boxStore.runInTx(() -> {
+            List<WaypointModel> stored = new ArrayList<>(states.size());
+            for (Map.Entry<Long, WaypointModel> state : states.entrySet()) {
+                WaypointModel w = box.get(state.getKey());
+                if (w != null) {
+                    w.copyTransitionStateFrom(state.getValue());
+                    stored.add(w);
+                }
+            }
+            box.put(stored);
+        });
+    }
+
+    @Override
+    protected List<WaypointModel> importAll_impl(Collection<WaypointModel> waypoints) {
+        long[] tsts = new long[waypoints.size()];
+        int i = 0;
+        for (WaypointModel w : waypoints) {
+            tsts[i++] = w.getTst();
+        }
+        List<WaypointModel> replaced = new ArrayList<>();
+        Query<WaypointModel> query = box.query().in(WaypointModel_.tst, tsts).build();
+        try {
+            boxStore.runInTx(() -> {
+                replaced.addAll(query.find());
+                box.remove(replaced);
+                box.put(waypoints);
+            });
+        } finally {
+            query.close();
+        }
+        return replaced;
+    }
+
 
 }
@@ -0,0 +1,197 @@
+package org.owntracks.android.data.repos
+
+import android.content.Context
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.*
+import org.owntracks.android.support.RunThingsOnOtherThreads
+import timber.log.Timber
+import java.io.*
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * The most recent region transitions received from contacts, for the events notification and the
+ * events view. Held in a fixed-capacity ring, which is written to disk a little while after it
+ * changes and read back on the background thread at startup, so the history survives a restart
+ * without growing without bound.
+ */
+@Singleton
+class TransitionEventLog @Inject constructor(
+    @ApplicationContext context: Context,
+    private val runThingsOnOtherThreads: RunThingsOnOtherThreads
+) {
+    data class Event(val timestamp: Long, val title: String, val text: String)
+
+    private val timestamps = LongArray(CAPACITY)
+    private val titles = arrayOfNulls<String>(CAPACITY)
+    private val texts = arrayOfNulls<String>(CAPACITY)
+    private var headPosition = 0
+    private var size = 0
+    private var unseen = 0
+    private var loaded = false
+    private var dirty = false
+
+    private val file = File(context.filesDir, FILE_NAME)
+    private val scope = CoroutineScope(Dispatchers.IO)
+    private var writeJob: Job? = null
+
+    init {
+        runThingsOnOtherThreads.postOnBackgroundHandlerDelayed({ synchronized(this) { load() } }, 0)
+    }
+
+    /**
+     * The number of events added since [markSeen] was last called
+     */
+    val unseenCount: Int
+        @Synchronized get() {
+            load()
+            return unseen
+        }
+
+    /**
+     * Adds an event, evicting the oldest if full. [timestamp] is in milliseconds.
+     */
+    @Synchronized
+    fun add(timestamp: Long, title: String, text: String) {
+        load()
+        append(timestamp, title, text)
+        unseen = minOf(unseen + 1, CAPACITY)
+        scheduleWrite()
+    }
+
+    /**
+     * Up to [limit] of the most recent events, newest first
+     */
+    @Synchronized
+    fun recent(limit: Int = CAPACITY): List<Event> {
+        load()
+        val count = minOf(limit, size)
+        return List(count) {
+            val index = physicalIndex(size - 1 - it)
+            Event(timestamps[index], titles[index]!!, texts[index]!!)
+        }
+    }
+
+    @Synchronized
+    fun markSeen() {
+        if (!loaded) {
+            // Called from the main thread when a notification is dismissed, so rather than reading the
+            // file here wait for the load that's already queued on the background thread
+            runThingsOnOtherThreads.postOnBackgroundHandlerDelayed(::markSeen, 0)
+            return
+        }
+        if (unseen != 0) {
+            unseen = 0
+            scheduleWrite()
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        loaded = true
+        headPosition = 0
+        size = 0
+        unseen = 0
+        titles.fill(null)
+        texts.fill(null)
+        scheduleWrite()
+    }
+
+    private fun append(timestamp: Long, title: String, text: String) {
+        timestamps[headPosition] = timestamp
+        titles[headPosition] = title
+        texts[headPosition] = text
+        headPosition = (headPosition + 1) % CAPACITY
+        if (size < CAPACITY) {
+            size++
+        }
+    }
+
+    private fun physicalIndex(i: Int): Int = (headPosition - size + i + CAPACITY) % CAPACITY
+
+    private fun load() {
+        if (loaded) {
+            return
+        }
+        loaded = true
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != FORMAT_VERSION) {
+                    return
+                }
+                unseen = input.readInt()
+                repeat(input.readInt()) {
+                    append(input.readLong(), input.readUTF(), input.readUTF())
+                }
+            }
+        } catch (e: FileNotFoundException) {
+            // Nothing logged yet
+        } catch (e: IOException) {
+            Timber.w(e, "Unable to read transition event log")
+        }
+    }
+
+    /**
+     * Writes any changes to disk now, rather than waiting for the scheduled write
+     */
+    fun flush() {
+        synchronized(this) {
+            writeJob?.cancel()
+            writeJob = null
+        }
+        write()
+    }
+
+    private fun scheduleWrite() {
+        dirty = true
+        if (writeJob?.isActive != true) {
+            writeJob = scope.launch {
+                delay(WRITE_DELAY_MILLIS)
+                write()
+            }
+        }
+    }
+
+    private fun write() {
+        val bytes = synchronized(this) {
+            if (!dirty) {
+                return
+            }
+            dirty = false
+            ByteArrayOutputStream().also { buffer ->
+                DataOutputStream(buffer).use { output ->
+                    output.writeInt(FORMAT_VERSION)
+                    output.writeInt(unseen)
+                    output.writeInt(size)
+                    for (i in 0 until size) {
+                        val index = physicalIndex(i)
+                        output.writeLong(timestamps[index])
+                        output.writeUTF(titles[index]!!)
+                        output.writeUTF(texts[index]!!)
+                    }
+                }
+            }.toByteArray()
+        }
+        // Written alongside and then moved into place, so a crash mid-write can't lose the lot
+        val temporary = File(file.path + ".tmp")
+        synchronized(file) {
+            try {
+                FileOutputStream(temporary).use { it.write(bytes) }
+                if (!temporary.renameTo(file)) {
+                    throw IOException("Unable to replace $file")
+                }
+            } catch (e: IOException) {
+                Timber.w(e, "Unable to write transition event log")
+                temporary.delete()
+            }
+        }
+    }
+
+    companion object {
+        const val CAPACITY = 100
+        private const val FORMAT_VERSION = 1
+        private const val FILE_NAME = "transitionEvents"
+        private val WRITE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5)
+    }
+}
@@ -8,53 +8,221 @@ import org.owntracks.android.data.WaypointModel;
 import org.owntracks.android.model.messages.MessageWaypoint;
 import org.owntracks.android.support.Events;
 import org.owntracks.android.support.MessageWaypointCollection;
+import org.owntracks.android.support.RunThingsOnOtherThreads;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import io.objectbox.android.ObjectBoxLiveData;
 import io.objectbox.query.Query;
+import timber.log.Timber;
 
 public abstract class WaypointsRepo {
     private EventBus eventBus;
-    protected WaypointsRepo(EventBus eventBus) {
+    private final RunThingsOnOtherThreads runThingsOnOtherThreads;
+    private final Object geofenceSnapshotLock = new Object();
+    private volatile WaypointsSnapshot geofenceSnapshot;
+    private long geofenceSnapshotGeneration = 0;
+
+    private static final long TRANSITION_STATE_FLUSH_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    // Detached copies holding the lastTransition and lastTriggered not yet written, by waypoint id
+    private final Map<Long, WaypointModel> pendingTransitionStates = new HashMap<>();
+    private boolean transitionStateFlushScheduled = false;
+    private final Runnable scheduledTransitionStateFlush = () -> {
+        synchronized (pendingTransitionStates) {
+            transitionStateFlushScheduled = false;
+        }
+        flushTransitionStates();
+    };
+
+    protected WaypointsRepo(EventBus eventBus, RunThingsOnOtherThreads runThingsOnOtherThreads) {
         this.eventBus = eventBus;
+        this.runThingsOnOtherThreads = runThingsOnOtherThreads;
     }
     public abstract WaypointModel get(long tst);
     protected abstract List<WaypointModel> getAll();
     public abstract List<WaypointModel> getAllWithGeofences();
-    public abstract ObjectBoxLiveData<WaypointModel> getAllLive();
-    public abstract Query<WaypointModel> getAllQuery();
+
+    /**
+     * Live waypoints for the UI. These are read straight from the store, so any pending transition
+     * states are written out first.
+     */
+    public ObjectBoxLiveData<WaypointModel> getAllLive() {
+        flushTransitionStates();
+        return getAllLive_impl();
+    }
+
+    /**
+     * A query over the waypoints for the UI. As with {@link #getAllLive()}, pending transition
+     * states are written out first.
+     */
+    public Query<WaypointModel> getAllQuery() {
+        flushTransitionStates();
+        return getAllQuery_impl();
+    }
+
+    /**
+     * Returns the waypoints with geofences as a cached {@link WaypointsSnapshot}, so that callers on
+     * the location path don't have to query and load them on every fix. The snapshot is rebuilt on
+     * first use after any waypoint is inserted, updated or deleted.
+     */
+    @NonNull
+    public WaypointsSnapshot getGeofenceSnapshot() {
+        WaypointsSnapshot snapshot = geofenceSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        long generation;
+        synchronized (geofenceSnapshotLock) {
+            generation = geofenceSnapshotGeneration;
+        }
+        snapshot = new WaypointsSnapshot(getAllWithGeofences());
+        synchronized (geofenceSnapshotLock) {
+            // Don't cache it if a waypoint changed while it was being built
+            if (generation == geofenceSnapshotGeneration) {
+                geofenceSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    private void invalidateGeofenceSnapshot() {
+        synchronized (geofenceSnapshotLock) {
+            geofenceSnapshotGeneration++;
+            geofenceSnapshot = null;
+        }
+    }
 
     public void insert(WaypointModel w) {
         insert_impl(w);
+        invalidateGeofenceSnapshot();
         eventBus.post(new Events.WaypointAdded(w));
 
     }
 
     public void update(WaypointModel w, boolean notify) {
         update_impl(w);
+        invalidateGeofenceSnapshot();
         if(notify) {
             eventBus.post(new Events.WaypointUpdated(w));
         }
     }
 
+    /**
+     * Records a waypoint's new lastTransition and lastTriggered without writing it straight away.
+     * Pending states are written together in one transaction a few seconds later, or by
+     * {@link #flushTransitionStates()}, and until then are applied to waypoints read from the repo.
+     */
+    public void updateTransitionState(@NonNull WaypointModel w) {
+        WaypointModel state = new WaypointModel(w.getId(), w.getTst(), w.getDescription(), w.getGeofenceLatitude(), w.getGeofenceLongitude(), w.getGeofenceRadius(), w.getLastTransition(), w.getLastTriggered());
+        synchronized (pendingTransitionStates) {
+            pendingTransitionStates.put(w.getId(), state);
+            scheduleTransitionStateFlush();
+        }
+        invalidateGeofenceSnapshot();
+    }
+
+    private void scheduleTransitionStateFlush() {
+        synchronized (pendingTransitionStates) {
+            if (!transitionStateFlushScheduled) {
+                transitionStateFlushScheduled = true;
+                runThingsOnOtherThreads.postOnBackgroundHandlerDelayed(scheduledTransitionStateFlush, TRANSITION_STATE_FLUSH_DELAY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Writes out all pending transition states in a single transaction
+     */
+    public void flushTransitionStates() {
+        Map<Long, WaypointModel> batch;
+        synchronized (pendingTransitionStates) {
+            if (pendingTransitionStates.isEmpty()) {
+                return;
+            }
+            batch = new HashMap<>(pendingTransitionStates);
+        }
+        try {
+            updateTransitionStates_impl(batch);
+            Timber.v("Flushed %d waypoint transition states", batch.size());
+        } catch (Exception e) {
+            Timber.e(e, "Unable to persist waypoint transition states, will retry");
+            scheduleTransitionStateFlush();
+            return;
+        }
+        synchronized (pendingTransitionStates) {
+            // Keep any that were replaced while the batch was being written
+            for (Map.Entry<Long, WaypointModel> written : batch.entrySet()) {
+                if (pendingTransitionStates.get(written.getKey()) == written.getValue()) {
+                    pendingTransitionStates.remove(written.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies any transition state that's not been written yet to a waypoint that's just been read
+     */
+    @Nullable
+    protected WaypointModel withPendingTransitionState(@Nullable WaypointModel w) {
+        if (w != null) {
+            WaypointModel state;
+            synchronized (pendingTransitionStates) {
+                state = pendingTransitionStates.get(w.getId());
+            }
+            if (state != null) {
+                w.copyTransitionStateFrom(state);
+            }
+        }
+        return w;
+    }
+
+    @NonNull
+    protected List<WaypointModel> withPendingTransitionStates(@NonNull List<WaypointModel> waypoints) {
+        synchronized (pendingTransitionStates) {
+            if (pendingTransitionStates.isEmpty()) {
+                return waypoints;
+            }
+        }
+        for (WaypointModel w : waypoints) {
+            withPendingTransitionState(w);
+        }
+        return waypoints;
+    }
+
     public void delete(WaypointModel w) {
         delete_impl(w);
+        synchronized (pendingTransitionStates) {
+            pendingTransitionStates.remove(w.getId());
+        }
+        invalidateGeofenceSnapshot();
         eventBus.post(new Events.WaypointRemoved(w));
     }
 
     public void importFromMessage(@Nullable MessageWaypointCollection waypoints) {
-        if(waypoints == null)
+        if(waypoints == null || waypoints.isEmpty())
             return;
 
+        // Later waypoints replace earlier ones with the same tst, same as existing ones do
+        Map<Long, WaypointModel> imported = new LinkedHashMap<>();
         for (MessageWaypoint m: waypoints) {
-            // Delete existing waypoint if one with the same tst already exists
-            WaypointModel exisiting = get(m.getTimestamp());
-            if(exisiting != null) {
-                delete(exisiting);
+            imported.put(m.getTimestamp(), toDaoObject(m));
+        }
+        List<WaypointModel> added = new ArrayList<>(imported.values());
+        List<WaypointModel> removed = importAll_impl(added);
+        synchronized (pendingTransitionStates) {
+            for (WaypointModel w : removed) {
+                pendingTransitionStates.remove(w.getId());
             }
-            insert(toDaoObject(m));
         }
+        invalidateGeofenceSnapshot();
+        Timber.d("Imported %d waypoints, replacing %d", added.size(), removed.size());
+        eventBus.post(new Events.WaypointsBulkChanged(added, removed));
     }
 
     @NonNull
@@ -80,8 +248,23 @@ public abstract class WaypointsRepo {
         return message;
     }
 
+    protected abstract ObjectBoxLiveData<WaypointModel> getAllLive_impl();
+    protected abstract Query<WaypointModel> getAllQuery_impl();
     protected abstract void insert_impl(WaypointModel w);
     protected abstract void update_impl(WaypointModel w);
     protected abstract void delete_impl(WaypointModel w);
 
+    /**
+     * Writes the lastTransition and lastTriggered of each given waypoint to the stored waypoint with
+     * the same id, if there still is one, leaving everything else about it alone
+     */
+    protected abstract void updateTransitionStates_impl(Map<Long, WaypointModel> states);
+
+    /**
+     * Stores all of the waypoints in one go, first deleting any existing waypoints with the same tst
+     *
+     * @return the waypoints that were replaced
+     */
+    protected abstract List<WaypointModel> importAll_impl(Collection<WaypointModel> waypoints);
+
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package org.owntracks.android.data.repos
+
+import android.location.Location
+import org.owntracks.android.data.WaypointModel
+import org.owntracks.android.location.geofencing.Geofence
+
+/**
+ * Immutable, array-backed copy of the waypoints that have geofences, for code that has to look at
+ * every one of them on each location fix. [WaypointsRepo] builds a new one after any waypoint
+ * changes, so [inregions] always reflects the last known transitions.
+ */
+class WaypointsSnapshot internal constructor(waypoints: List<WaypointModel>) {
+    private val waypoints = waypoints.toTypedArray()
+    private val latitudes = DoubleArray(this.waypoints.size) { this.waypoints[it].geofenceLatitude }
+    private val longitudes = DoubleArray(this.waypoints.size) { this.waypoints[it].geofenceLongitude }
+    private val radii = IntArray(this.waypoints.size) { this.waypoints[it].geofenceRadius }
+    private val lastTransitions = IntArray(this.waypoints.size) { this.waypoints[it].lastTransition }
+
+    val size: Int
+        get() = waypoints.size
+
+    /**
+     * Descriptions of the waypoints whose last transition was an entry
+     */
+    val inregions: List<String> = waypoints
+        .filter { it.lastTransition == Geofence.GEOFENCE_TRANSITION_ENTER }
+        .map { it.description }
+
+    fun getWaypoint(index: Int): WaypointModel = waypoints[index]
+
+    fun getLastTransition(index: Int): Int = lastTransitions[index]
+
+    /**
+     * Whether the location is within the waypoint's geofence. [results] is scratch space of at least
+     * one element, so that scanning every waypoint doesn't allocate.
+     */
+    fun contains(index: Int, location: Location, results: FloatArray): Boolean {
+        Location.distanceBetween(
+            location.latitude,
+            location.longitude,
+            latitudes[index],
+            longitudes[index],
+            results
+        )
+        return results[0] <= radii[index]
+    }
+}
@@ -7,7 +7,9 @@ import dagger.hilt.InstallIn
 import dagger.hilt.components.SingletonComponent
 import org.owntracks.android.App
 import org.owntracks.android.data.repos.ContactsRepo
+import org.owntracks.android.data.repos.ContactsStore
 import org.owntracks.android.data.repos.MemoryContactsRepo
+import org.owntracks.android.data.repos.ObjectboxContactsStore
 import org.owntracks.android.data.repos.ObjectboxWaypointsRepo
 import org.owntracks.android.data.repos.WaypointsRepo
 import org.owntracks.android.support.preferences.PreferencesStore
@@ -29,4 +31,7 @@ abstract class ReposAndContextModule {
 
     @Binds
     abstract fun bindMemoryContactsRepo(memoryContactsRepo: MemoryContactsRepo): ContactsRepo
+
+    @Binds
+    abstract fun bindContactsStore(objectboxContactsStore: ObjectboxContactsStore): ContactsStore
 }
\ No newline at end of file
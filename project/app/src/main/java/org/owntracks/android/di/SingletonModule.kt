@@ -7,9 +7,11 @@ import dagger.Provides
 import dagger.hilt.InstallIn
 import dagger.hilt.android.qualifiers.ApplicationContext
 import dagger.hilt.components.SingletonComponent
+import io.objectbox.BoxStore
 import org.greenrobot.eventbus.EventBus
 import org.owntracks.android.BuildConfig
 import org.owntracks.android.EventBusIndex
+import org.owntracks.android.data.MyObjectBox
 import org.owntracks.android.gms.GMSRequirementsChecker
 import org.owntracks.android.support.OSSRequirementsChecker
 import org.owntracks.android.support.Preferences
@@ -35,6 +37,12 @@ class SingletonModule {
         return CountingIdlingResource("outgoingQueueIdlingResource", false)
     }
 
+    @Provides
+    @Singleton
+    fun provideBoxStore(@ApplicationContext context: Context): BoxStore {
+        return MyObjectBox.builder().androidContext(context).build()
+    }
+
     @Provides
     fun provideRequirementsChecker(
         preferences: Preferences,
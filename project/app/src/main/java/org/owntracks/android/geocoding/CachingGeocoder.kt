@@ -5,22 +5,56 @@ import timber.log.Timber
 import java.math.BigDecimal
 import java.math.RoundingMode
 
-abstract class CachingGeocoder : Geocoder {
-    private val cache = GeocoderLRUCache(40)
-
-    @Synchronized
-    override fun reverse(latitude: Double, longitude: Double): GeocodeResult {
-        val result = cache.computeAndOnlyStoreNonErrors(
-            Pair(
-                latitude.toBigDecimal().setScale(4, RoundingMode.HALF_EVEN),
-                longitude.toBigDecimal().setScale(4, RoundingMode.HALF_EVEN)
-            ),
-            ::doLookup
+/**
+ * Geocoder with an in-memory [GeocodeSpatialCache] in front of an optional [PersistentGeocodeCache].
+ * A cached result is used for any lookup within the hit radius, which grows with the location's
+ * accuracy (between [minimumHitRadiusMeters] and [maximumHitRadiusMeters]). Only successful lookups
+ * (including empty ones) are cached in either tier.
+ */
+abstract class CachingGeocoder(
+    private val persistentCache: PersistentGeocodeCache? = null,
+    private val minimumHitRadiusMeters: Double = DEFAULT_MINIMUM_HIT_RADIUS_METERS,
+    private val maximumHitRadiusMeters: Double = DEFAULT_MAXIMUM_HIT_RADIUS_METERS
+) : Geocoder {
+    private val cache = GeocodeSpatialCache(200)
+
+    /**
+     * Identifies this provider's results in the persistent cache
+     */
+    protected abstract val cacheName: String
+
+    override fun reverse(latitude: Double, longitude: Double, accuracy: Int): GeocodeResult {
+        val result = cached(latitude, longitude, accuracy) ?: lookupAndStore(latitude, longitude)
+        Timber.d("Geocode cache: hits=${cache.hitCount}, misses=${cache.missCount}")
+        return result
+    }
+
+    /**
+     * Returns a cached result for the location from either tier, without going to the provider
+     */
+    fun cached(latitude: Double, longitude: Double, accuracy: Int): GeocodeResult? {
+        val radius = accuracy.toDouble().coerceIn(minimumHitRadiusMeters, maximumHitRadiusMeters)
+        return cache.get(latitude, longitude, radius)
+            ?: persistentCache?.get(cacheName, latitude, longitude, radius)
+                ?.also { cache.put(latitude, longitude, it) }
+    }
+
+    private fun lookupAndStore(latitude: Double, longitude: Double): GeocodeResult {
+        val result = doLookup(
+            latitude.toBigDecimal().setScale(4, RoundingMode.HALF_EVEN),
+            longitude.toBigDecimal().setScale(4, RoundingMode.HALF_EVEN)
         )
-        Timber.d("Geocode cache: hits=${cache.hitCount()}, misses=${cache.missCount()}")
+        if (result is GeocodeResult.Formatted || result is GeocodeResult.Empty) {
+            cache.put(latitude, longitude, result)
+            persistentCache?.put(cacheName, latitude, longitude, result)
+        }
         return result
     }
 
     protected abstract fun doLookup(latitude: BigDecimal, longitude: BigDecimal): GeocodeResult
-}
 
+    companion object {
+        const val DEFAULT_MINIMUM_HIT_RADIUS_METERS = 20.0
+        const val DEFAULT_MAXIMUM_HIT_RADIUS_METERS = 100.0
+    }
+}
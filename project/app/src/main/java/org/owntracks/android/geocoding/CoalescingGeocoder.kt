@@ -0,0 +1,176 @@
+package org.owntracks.android.geocoding
+
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import kotlin.math.floor
+
+/**
+ * Concurrent front end for a [Geocoder]. Requests for the same small cell that arrive while a lookup
+ * is already in flight share that lookup rather than making another, at most [maxParallelLookups]
+ * lookups run at once, and waiting lookups are started in [Priority] order.
+ */
+class CoalescingGeocoder(
+    private val geocoder: Geocoder,
+    private val maxParallelLookups: Int = DEFAULT_MAX_PARALLEL_LOOKUPS,
+    private val dispatcher: CoroutineDispatcher = Dispatchers.IO
+) {
+    enum class Priority {
+        /** Something the user is looking at right now, e.g. the contact selected on the map */
+        HIGH,
+        NORMAL,
+        /** Background work that nobody is waiting on, e.g. the ongoing notification */
+        LOW
+    }
+
+    data class Location(val latitude: Double, val longitude: Double, val accuracy: Int)
+
+    private class Waiter(var priority: Priority) {
+        val granted = CompletableDeferred<Unit>()
+    }
+
+    private class InFlight {
+        lateinit var result: Deferred<GeocodeResult>
+        var waiter: Waiter? = null
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + dispatcher)
+    private val lock = Any()
+    private val inFlight = HashMap<Long, InFlight>()
+    private val waiting = Array(Priority.values().size) { ArrayDeque<Waiter>() }
+    private var running = 0
+
+    suspend fun reverse(
+        latitude: Double,
+        longitude: Double,
+        accuracy: Int,
+        priority: Priority
+    ): GeocodeResult = withContext(dispatcher) {
+        (geocoder as? CachingGeocoder)?.cached(latitude, longitude, accuracy)?.run {
+            return@withContext this
+        }
+        val key = coalescingKey(latitude, longitude)
+        val request = synchronized(lock) {
+            inFlight[key]?.also { existing ->
+                existing.waiter?.let { promote(it, priority) }
+            } ?: InFlight().also { request ->
+                inFlight[key] = request
+                request.result = scope.async {
+                    try {
+                        acquire(request, priority)
+                        try {
+                            geocoder.reverse(latitude, longitude, accuracy)
+                        } finally {
+                            release()
+                        }
+                    } finally {
+                        synchronized(lock) { inFlight.remove(key) }
+                    }
+                }
+            }
+        }
+        request.result.await()
+    }
+
+    /**
+     * Cancels every lookup in flight or waiting for a permit, so nothing is delivered from a geocoder
+     * that's been replaced. Callers still waiting on one get a [CancellationException].
+     */
+    fun close() {
+        scope.cancel()
+    }
+
+    /**
+     * Geocodes a batch of locations, returning results in the same order. Locations that share a
+     * cell are looked up once, cached answers are used directly, and the remaining cells are worked
+     * through by at most [maxParallelLookups] coroutines rather than one coroutine per location.
+     */
+    suspend fun reverseAll(
+        locations: List<Location>,
+        priority: Priority
+    ): List<GeocodeResult> = withContext(dispatcher) {
+        val results = arrayOfNulls<GeocodeResult>(locations.size)
+        val cells = LinkedHashMap<Long, MutableList<Int>>()
+        locations.forEachIndexed { index, location ->
+            val cached = (geocoder as? CachingGeocoder)?.cached(
+                location.latitude,
+                location.longitude,
+                location.accuracy
+            )
+            if (cached != null) {
+                results[index] = cached
+            } else {
+                cells.getOrPut(coalescingKey(location.latitude, location.longitude)) { mutableListOf() }
+                    .add(index)
+            }
+        }
+        if (cells.isNotEmpty()) {
+            val pending = Channel<List<Int>>(Channel.UNLIMITED)
+            cells.values.forEach { pending.offer(it) }
+            pending.close()
+            coroutineScope {
+                repeat(minOf(maxParallelLookups, cells.size)) {
+                    launch {
+                        for (indices in pending) {
+                            val location = locations[indices.first()]
+                            val result = reverse(
+                                location.latitude,
+                                location.longitude,
+                                location.accuracy,
+                                priority
+                            )
+                            indices.forEach { results[it] = result }
+                        }
+                    }
+                }
+            }
+        }
+        results.map { it ?: GeocodeResult.Empty }
+    }
+
+    private suspend fun acquire(request: InFlight, priority: Priority) {
+        val waiter = synchronized(lock) {
+            if (running < maxParallelLookups) {
+                running++
+                return
+            }
+            Waiter(priority).also {
+                waiting[priority.ordinal].addLast(it)
+                request.waiter = it
+            }
+        }
+        waiter.granted.await()
+        synchronized(lock) { request.waiter = null }
+    }
+
+    /**
+     * Hands the permit straight to the next waiter if there is one, so [running] doesn't change
+     */
+    private fun release() {
+        synchronized(lock) {
+            val next = waiting.firstNotNullOfOrNull { it.removeFirstOrNull() }
+            if (next != null) {
+                next.granted.complete(Unit)
+            } else {
+                running--
+            }
+        }
+    }
+
+    private fun promote(waiter: Waiter, priority: Priority) {
+        if (priority < waiter.priority && waiting[waiter.priority.ordinal].remove(waiter)) {
+            waiter.priority = priority
+            waiting[priority.ordinal].addLast(waiter)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_PARALLEL_LOOKUPS = 2
+
+        // Roughly the minimum cache hit radius, so coalesced requests get an answer the cache would have given them anyway
+        private const val COALESCING_CELL_DEGREES = 0.0002
+
+        private fun coalescingKey(latitude: Double, longitude: Double): Long =
+            (floor(latitude / COALESCING_CELL_DEGREES).toLong() shl 32) or
+                    (floor(longitude / COALESCING_CELL_DEGREES).toLong() and 0xffffffffL)
+    }
+}
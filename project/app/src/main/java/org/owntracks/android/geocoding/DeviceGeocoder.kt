@@ -8,13 +8,19 @@ import timber.log.Timber
 import java.math.BigDecimal
 import java.util.*
 
-class DeviceGeocoder internal constructor(context: Context?) : CachingGeocoder() {
+class DeviceGeocoder internal constructor(
+    context: Context?,
+    persistentCache: PersistentGeocodeCache? = null
+) : CachingGeocoder(persistentCache) {
+    // The device geocoder's results are localised, so keep them apart per locale
+    override val cacheName = "device:${Locale.getDefault()}"
     private val geocoder: android.location.Geocoder =
         android.location.Geocoder(context, Locale.getDefault())
+    @Volatile
     private var tripResetTimestamp: Instant = Instant.MIN
-    override fun reverse(latitude: Double, longitude: Double): GeocodeResult {
+    override fun reverse(latitude: Double, longitude: Double, accuracy: Int): GeocodeResult {
         return if (geocoderAvailable()) {
-            super.reverse(latitude, longitude)
+            super.reverse(latitude, longitude, accuracy)
         } else {
             tripResetTimestamp = Instant.now().plus(1, ChronoUnit.MINUTES)
             GeocodeResult.Unavailable(tripResetTimestamp)
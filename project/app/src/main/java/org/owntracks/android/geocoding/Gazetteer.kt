@@ -0,0 +1,242 @@
+package org.owntracks.android.geocoding
+
+import org.owntracks.android.support.Distance
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.OutputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import kotlin.math.*
+
+/**
+ * A read-only, memory-mapped index of named places and streets, bucketed into a grid of cells.
+ *
+ * File layout (big-endian):
+ *  - header: magic `OTGZ`, format version, cell size in microdegrees, place count, cell count
+ *  - cell index, sorted by cell key: cell key (long), index of first place (int), place count (int)
+ *  - places, grouped by cell: latitude and longitude in microdegrees (ints), offset of name (int),
+ *    and from version 2, kind (byte, [KIND_PLACE] or [KIND_STREET])
+ *  - names: unsigned short byte length followed by UTF-8 bytes
+ *
+ * Files are built by `tools/gazetteer/gazetteer.py` in the repository, which documents the sources.
+ *
+ * Nothing is copied onto the heap when the file is opened, so even a large gazetteer only costs the
+ * pages that lookups actually touch. The file's structure is checked up front though, so that a
+ * truncated or corrupt file is rejected on opening rather than failing a lookup later.
+ */
+class Gazetteer private constructor(private val buffer: ByteBuffer) {
+    private val cellSizeMicrodegrees: Int
+    private val placeCount: Int
+    private val cellCount: Int
+    private val cellIndexOffset = HEADER_SIZE
+    private val placesOffset: Int
+    private val namesOffset: Int
+    private val placeEntrySize: Int
+
+    init {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw IOException("Not a gazetteer file")
+        }
+        placeEntrySize = when (buffer.getInt(4)) {
+            1 -> PLACE_ENTRY_SIZE_V1
+            VERSION -> PLACE_ENTRY_SIZE
+            else -> throw IOException("Unsupported gazetteer version ${buffer.getInt(4)}")
+        }
+        cellSizeMicrodegrees = buffer.getInt(8)
+        placeCount = buffer.getInt(12)
+        cellCount = buffer.getInt(16)
+        if (cellSizeMicrodegrees <= 0 || placeCount < 0 || cellCount < 0) {
+            throw IOException("Corrupt gazetteer header")
+        }
+        val requiredSize = HEADER_SIZE.toLong() + cellCount.toLong() * CELL_ENTRY_SIZE +
+            placeCount.toLong() * placeEntrySize
+        if (buffer.capacity() < requiredSize) {
+            throw IOException("Truncated gazetteer: ${buffer.capacity()} bytes, expected at least $requiredSize")
+        }
+        placesOffset = cellIndexOffset + cellCount * CELL_ENTRY_SIZE
+        namesOffset = placesOffset + placeCount * placeEntrySize
+        validate()
+    }
+
+    /**
+     * Checks that every cell's places, and every place's name, lie within the buffer
+     */
+    private fun validate() {
+        for (cell in 0 until cellCount) {
+            val cellOffset = cellIndexOffset + cell * CELL_ENTRY_SIZE
+            val first = buffer.getInt(cellOffset + 8)
+            val count = buffer.getInt(cellOffset + 12)
+            if (first < 0 || count < 0 || first.toLong() + count > placeCount) {
+                throw IOException("Corrupt gazetteer cell $cell")
+            }
+        }
+        for (place in 0 until placeCount) {
+            val nameOffset = namesOffset.toLong() + buffer.getInt(placesOffset + place * placeEntrySize + 8)
+            if (nameOffset < namesOffset || nameOffset + 2 > buffer.capacity()) {
+                throw IOException("Corrupt gazetteer name offset for place $place")
+            }
+            val length = buffer.getShort(nameOffset.toInt()).toInt() and 0xffff
+            if (nameOffset + 2 + length > buffer.capacity()) {
+                throw IOException("Truncated gazetteer name for place $place")
+            }
+        }
+    }
+
+    val size: Int
+        get() = placeCount
+
+    /**
+     * Returns the name of the place nearest to the given point, if there's one within [maxDistanceMeters].
+     * If [kind] is given, only places of that kind are considered.
+     */
+    fun nearest(latitude: Double, longitude: Double, maxDistanceMeters: Double, kind: Int? = null): String? {
+        val latitudeE6 = (latitude * 1e6).roundToInt()
+        val longitudeE6 = (longitude * 1e6).roundToInt()
+        val latitudeIndex = latitudeE6.floorDiv(cellSizeMicrodegrees)
+        val longitudeIndex = longitudeE6.floorDiv(cellSizeMicrodegrees)
+        val cellHeightMeters = cellSizeMicrodegrees / 1e6 * Distance.METERS_PER_DEGREE
+        val cellWidthMeters = max(cellHeightMeters * cos(latitude * PI / 180), 1.0)
+        val latitudeSpan = ceil(maxDistanceMeters / cellHeightMeters).toInt()
+        val longitudeSpan = ceil(maxDistanceMeters / cellWidthMeters).toInt()
+
+        var nearestPlace = -1
+        var nearestDistance = maxDistanceMeters
+        for (i in latitudeIndex - latitudeSpan..latitudeIndex + latitudeSpan) {
+            for (j in longitudeIndex - longitudeSpan..longitudeIndex + longitudeSpan) {
+                val cell = findCell(cellKey(i, j))
+                if (cell < 0) continue
+                val cellOffset = cellIndexOffset + cell * CELL_ENTRY_SIZE
+                val first = buffer.getInt(cellOffset + 8)
+                val count = buffer.getInt(cellOffset + 12)
+                for (place in first until first + count) {
+                    val placeOffset = placesOffset + place * placeEntrySize
+                    if (kind != null && kindAt(placeOffset) != kind) continue
+                    val distance = Distance.meters(
+                        latitude,
+                        longitude,
+                        buffer.getInt(placeOffset) / 1e6,
+                        buffer.getInt(placeOffset + 4) / 1e6
+                    )
+                    if (distance <= nearestDistance) {
+                        nearestDistance = distance
+                        nearestPlace = place
+                    }
+                }
+            }
+        }
+        return if (nearestPlace >= 0) nameOf(nearestPlace) else null
+    }
+
+    private fun findCell(key: Long): Int {
+        var low = 0
+        var high = cellCount - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val midKey = buffer.getLong(cellIndexOffset + mid * CELL_ENTRY_SIZE)
+            when {
+                midKey < key -> low = mid + 1
+                midKey > key -> high = mid - 1
+                else -> return mid
+            }
+        }
+        return -1
+    }
+
+    private fun kindAt(placeOffset: Int): Int =
+        if (placeEntrySize > PLACE_ENTRY_SIZE_V1) buffer.get(placeOffset + 12).toInt() else KIND_PLACE
+
+    private fun nameOf(place: Int): String {
+        val nameOffset = namesOffset + buffer.getInt(placesOffset + place * placeEntrySize + 8)
+        val length = buffer.getShort(nameOffset).toInt() and 0xffff
+        val bytes = ByteArray(length)
+        val view = buffer.duplicate()
+        view.position(nameOffset + 2)
+        view.get(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    data class Place(val latitude: Double, val longitude: Double, val name: String, val kind: Int = KIND_PLACE)
+
+    companion object {
+        const val KIND_PLACE = 0
+        const val KIND_STREET = 1
+        private const val MAGIC = 0x4f54475a // "OTGZ"
+        private const val VERSION = 2
+        private const val HEADER_SIZE = 20
+        private const val CELL_ENTRY_SIZE = 16
+        private const val PLACE_ENTRY_SIZE_V1 = 12
+        private const val PLACE_ENTRY_SIZE = 13
+        const val DEFAULT_CELL_SIZE_MICRODEGREES = 10_000
+
+        @Throws(IOException::class)
+        fun open(file: File): Gazetteer =
+            RandomAccessFile(file, "r").use {
+                Gazetteer(it.channel.map(FileChannel.MapMode.READ_ONLY, 0, it.length()))
+            }
+
+        @Throws(IOException::class)
+        fun fromBuffer(buffer: ByteBuffer): Gazetteer = Gazetteer(buffer)
+
+        /**
+         * Writes the given places out in gazetteer format.
+         */
+        @Throws(IOException::class)
+        fun write(
+            places: Collection<Place>,
+            output: OutputStream,
+            cellSizeMicrodegrees: Int = DEFAULT_CELL_SIZE_MICRODEGREES
+        ) {
+            val byCell = places
+                .map {
+                    val latitudeE6 = (it.latitude * 1e6).roundToInt()
+                    val longitudeE6 = (it.longitude * 1e6).roundToInt()
+                    Triple(
+                        cellKey(
+                            latitudeE6.floorDiv(cellSizeMicrodegrees),
+                            longitudeE6.floorDiv(cellSizeMicrodegrees)
+                        ), Pair(latitudeE6, longitudeE6), it
+                    )
+                }
+                .groupBy { it.first }
+                .toSortedMap()
+
+            DataOutputStream(output).run {
+                writeInt(MAGIC)
+                writeInt(VERSION)
+                writeInt(cellSizeMicrodegrees)
+                writeInt(places.size)
+                writeInt(byCell.size)
+
+                var firstPlace = 0
+                byCell.forEach { (key, cellPlaces) ->
+                    writeLong(key)
+                    writeInt(firstPlace)
+                    writeInt(cellPlaces.size)
+                    firstPlace += cellPlaces.size
+                }
+
+                var nameOffset = 0
+                byCell.values.flatten().forEach { (_, coordinates, place) ->
+                    writeInt(coordinates.first)
+                    writeInt(coordinates.second)
+                    writeInt(nameOffset)
+                    writeByte(place.kind)
+                    nameOffset += 2 + min(place.name.toByteArray(Charsets.UTF_8).size, 0xffff)
+                }
+
+                byCell.values.flatten().forEach { (_, _, place) ->
+                    val name = place.name.toByteArray(Charsets.UTF_8)
+                    val length = min(name.size, 0xffff)
+                    writeShort(length)
+                    write(name, 0, length)
+                }
+                flush()
+            }
+        }
+
+        private fun cellKey(latitudeIndex: Int, longitudeIndex: Int): Long =
+            (latitudeIndex.toLong() shl 32) or (longitudeIndex.toLong() and 0xffffffffL)
+    }
+}
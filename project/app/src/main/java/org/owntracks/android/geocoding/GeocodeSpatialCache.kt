@@ -0,0 +1,105 @@
+package org.owntracks.android.geocoding
+
+import androidx.collection.LongSparseArray
+import org.owntracks.android.support.Distance
+import kotlin.math.*
+
+/**
+ * In-memory geocode cache that answers with the nearest cached result within a radius, rather than
+ * needing an exact match. Entries are bucketed into a grid of roughly [CELL_SIZE_DEGREES] cells keyed
+ * by a packed long, so a lookup only has to look at the handful of cells around the point.
+ */
+class GeocodeSpatialCache(private val maxEntries: Int) {
+    private class Entry(val latitude: Double, val longitude: Double, val result: GeocodeResult) {
+        var lastUsed = 0L
+    }
+
+    private val cells = LongSparseArray<MutableList<Entry>>()
+    private var size = 0
+    private var useCounter = 0L
+
+    var hitCount = 0
+        private set
+    var missCount = 0
+        private set
+
+    /**
+     * Returns the result cached nearest to the given point, as long as it's within [radiusMeters]
+     */
+    @Synchronized
+    fun get(latitude: Double, longitude: Double, radiusMeters: Double): GeocodeResult? {
+        val latitudeIndex = cellIndex(latitude)
+        val longitudeIndex = cellIndex(longitude)
+        val latitudeSpan = ceil(radiusMeters / cellHeightMeters()).toInt()
+        val longitudeSpan = ceil(radiusMeters / cellWidthMeters(latitude)).toInt()
+
+        var nearest: Entry? = null
+        var nearestDistance = radiusMeters
+        for (i in latitudeIndex - latitudeSpan..latitudeIndex + latitudeSpan) {
+            for (j in longitudeIndex - longitudeSpan..longitudeIndex + longitudeSpan) {
+                cells[cellKey(i, j)]?.forEach {
+                    val distance = Distance.meters(latitude, longitude, it.latitude, it.longitude)
+                    if (distance <= nearestDistance) {
+                        nearest = it
+                        nearestDistance = distance
+                    }
+                }
+            }
+        }
+        return nearest?.run {
+            hitCount++
+            lastUsed = ++useCounter
+            result
+        } ?: run {
+            missCount++
+            null
+        }
+    }
+
+    @Synchronized
+    fun put(latitude: Double, longitude: Double, result: GeocodeResult) {
+        val key = cellKey(cellIndex(latitude), cellIndex(longitude))
+        val cell = cells[key] ?: mutableListOf<Entry>().also { cells.put(key, it) }
+        cell.add(Entry(latitude, longitude, result).apply { lastUsed = ++useCounter })
+        size++
+        if (size > maxEntries) {
+            evictLeastRecentlyUsed()
+        }
+    }
+
+    private fun evictLeastRecentlyUsed() {
+        var oldestCellIndex = -1
+        var oldestEntry: Entry? = null
+        for (i in 0 until cells.size()) {
+            cells.valueAt(i).forEach {
+                if (oldestEntry == null || it.lastUsed < oldestEntry!!.lastUsed) {
+                    oldestEntry = it
+                    oldestCellIndex = i
+                }
+            }
+        }
+        val entry = oldestEntry
+        if (entry != null) {
+            val cell = cells.valueAt(oldestCellIndex)
+            cell.remove(entry)
+            if (cell.isEmpty()) {
+                cells.removeAt(oldestCellIndex)
+            }
+            size--
+        }
+    }
+
+    companion object {
+        private const val CELL_SIZE_DEGREES = 0.001
+
+        private fun cellIndex(degrees: Double): Int = floor(degrees / CELL_SIZE_DEGREES).toInt()
+
+        private fun cellKey(latitudeIndex: Int, longitudeIndex: Int): Long =
+            (latitudeIndex.toLong() shl 32) or (longitudeIndex.toLong() and 0xffffffffL)
+
+        private fun cellHeightMeters() = CELL_SIZE_DEGREES * Distance.METERS_PER_DEGREE
+
+        private fun cellWidthMeters(latitude: Double) =
+            max(CELL_SIZE_DEGREES * Distance.METERS_PER_DEGREE * cos(latitude * PI / 180), 1.0)
+    }
+}
@@ -1,5 +1,13 @@
 package org.owntracks.android.geocoding;
 
 interface Geocoder {
-    GeocodeResult reverse(double latitude, double longitude);
+    /**
+     * @param accuracy accuracy of the location in metres, which lets a cached result for a nearby
+     *                 location be used instead
+     */
+    GeocodeResult reverse(double latitude, double longitude, int accuracy);
+
+    default GeocodeResult reverse(double latitude, double longitude) {
+        return reverse(latitude, longitude, 0);
+    }
 }
@@ -1,7 +1,7 @@
 package org.owntracks.android.geocoding
 
 class GeocoderNone internal constructor() : Geocoder {
-    override fun reverse(latitude: Double, longitude: Double): GeocodeResult {
+    override fun reverse(latitude: Double, longitude: Double, accuracy: Int): GeocodeResult {
         return GeocodeResult.Empty
     }
 }
\ No newline at end of file
@@ -9,7 +9,6 @@ import androidx.core.app.NotificationCompat.PRIORITY_LOW
 import androidx.core.app.NotificationManagerCompat
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.*
-import kotlinx.coroutines.withContext
 import org.owntracks.android.R
 import org.owntracks.android.model.messages.MessageLocation
 import org.owntracks.android.services.BackgroundService
@@ -26,39 +25,81 @@ import javax.inject.Singleton
 @Singleton
 class GeocoderProvider @Inject constructor(
     @ApplicationContext private val context: Context,
-    private val preferences: Preferences
+    private val preferences: Preferences,
+    private val persistentGeocodeCache: PersistentGeocodeCache
 ) {
 
-    private val ioDispatcher = Dispatchers.IO
     private var lastRateLimitedNotificationTime: Instant? = null
     private var notificationManager: NotificationManagerCompat
-    private lateinit var geocoder: Geocoder
+    @Volatile
+    private lateinit var geocoder: CoalescingGeocoder
 
     private fun setGeocoderProvider(context: Context, preferences: Preferences) {
         Timber.i("Setting geocoding provider to ${preferences.reverseGeocodeProvider}")
-        geocoder = when (preferences.reverseGeocodeProvider) {
-            Preferences.REVERSE_GEOCODE_PROVIDER_OPENCAGE -> OpenCageGeocoder(preferences.openCageGeocoderApiKey)
-            Preferences.REVERSE_GEOCODE_PROVIDER_DEVICE -> DeviceGeocoder(context)
-            else -> GeocoderNone()
-        }
-    }
-
-    private suspend fun geocoderResolve(messageLocation: MessageLocation): GeocodeResult {
-        return withContext(ioDispatcher) {
-            return@withContext geocoder.reverse(messageLocation.latitude, messageLocation.longitude)
+        if (this::geocoder.isInitialized) {
+            geocoder.close()
         }
+        geocoder = CoalescingGeocoder(when (preferences.reverseGeocodeProvider) {
+            Preferences.REVERSE_GEOCODE_PROVIDER_OPENCAGE -> OpenCageGeocoder(
+                preferences.openCageGeocoderApiKey,
+                persistentCache = persistentGeocodeCache
+            )
+            Preferences.REVERSE_GEOCODE_PROVIDER_DEVICE -> DeviceGeocoder(context, persistentGeocodeCache)
+            Preferences.REVERSE_GEOCODE_PROVIDER_OFFLINE -> OfflineGeocoder(OfflineGeocoder.gazetteerFile(context))
+            else -> GeocoderNone()
+        })
     }
 
-    suspend fun resolve(messageLocation: MessageLocation) {
+    private suspend fun geocoderResolve(
+        messageLocation: MessageLocation,
+        priority: CoalescingGeocoder.Priority
+    ): GeocodeResult = geocoder.reverse(
+        messageLocation.latitude,
+        messageLocation.longitude,
+        messageLocation.accuracy,
+        priority
+    )
+
+    suspend fun resolve(
+        messageLocation: MessageLocation,
+        priority: CoalescingGeocoder.Priority = CoalescingGeocoder.Priority.NORMAL
+    ) {
         if (messageLocation.hasGeocode) {
             return
         }
         Timber.tag("399845").d("Resolving geocode for $messageLocation")
-        val result = geocoderResolve(messageLocation)
+        val result = geocoderResolve(messageLocation, priority)
         messageLocation.geocode = geocodeResultToText(result)
         maybeCreateErrorNotification(result)
     }
 
+    /**
+     * Resolves geocodes for many locations at once, e.g. everything shown in the contacts list. The
+     * results are all applied together once the batch is done, rather than one at a time as each
+     * lookup returns.
+     */
+    suspend fun resolveAll(
+        messageLocations: Collection<MessageLocation>,
+        priority: CoalescingGeocoder.Priority = CoalescingGeocoder.Priority.NORMAL
+    ) {
+        val pending = messageLocations.filterNot { it.hasGeocode }
+        if (pending.isEmpty()) {
+            return
+        }
+        Timber.d("Resolving geocodes for ${pending.size} locations")
+        val results = geocoder.reverseAll(
+            pending.map { CoalescingGeocoder.Location(it.latitude, it.longitude, it.accuracy) },
+            priority
+        )
+        pending.zip(results).forEach { (messageLocation, result) ->
+            messageLocation.geocode = geocodeResultToText(result)
+        }
+        maybeCreateErrorNotification(
+            results.firstOrNull { it !is GeocodeResult.Formatted && it !is GeocodeResult.Empty }
+                ?: GeocodeResult.Empty
+        )
+    }
+
     private fun maybeCreateErrorNotification(result: GeocodeResult) {
         if (result is GeocodeResult.Formatted || result is GeocodeResult.Empty || !preferences.notificationGeocoderErrors) {
             notificationManager.cancel(GEOCODE_ERROR_NOTIFICATION_TAG, 0)
@@ -125,7 +166,7 @@ class GeocoderProvider @Inject constructor(
             return
         }
         MainScope().launch {
-            val result = geocoderResolve(messageLocation)
+            val result = geocoderResolve(messageLocation, CoalescingGeocoder.Priority.LOW)
             messageLocation.geocode = geocodeResultToText(result)
             backgroundService.onGeocodingProviderResult(messageLocation)
             maybeCreateErrorNotification(result)
@@ -0,0 +1,88 @@
+package org.owntracks.android.geocoding
+
+import android.content.Context
+import org.threeten.bp.Instant
+import org.threeten.bp.temporal.ChronoUnit
+import timber.log.Timber
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Resolves locations to the nearest street and named place in a local [Gazetteer] file, without
+ * touching the network. The file is read from [gazetteerFile], where it's put by [import], and is
+ * reopened if it's replaced.
+ */
+class OfflineGeocoder internal constructor(private val gazetteerFile: File) : Geocoder {
+    @Volatile
+    private var gazetteer: Gazetteer? = null
+
+    @Volatile
+    private var loadedModified = 0L
+
+    override fun reverse(latitude: Double, longitude: Double, accuracy: Int): GeocodeResult {
+        val gazetteer = gazetteer?.takeIf { gazetteerFile.lastModified() == loadedModified } ?: open()
+            ?: return GeocodeResult.Unavailable(Instant.now().plus(1, ChronoUnit.MINUTES))
+        val street = gazetteer.nearest(latitude, longitude, STREET_MAX_DISTANCE_METERS, Gazetteer.KIND_STREET)
+        val place = gazetteer.nearest(latitude, longitude, MAX_DISTANCE_METERS, Gazetteer.KIND_PLACE)
+        return when {
+            street != null && place != null -> GeocodeResult.Formatted("$street, $place")
+            street != null -> GeocodeResult.Formatted(street)
+            place != null -> GeocodeResult.Formatted(place)
+            else -> GeocodeResult.Empty
+        }
+    }
+
+    @Synchronized
+    private fun open(): Gazetteer? {
+        gazetteer?.takeIf { gazetteerFile.lastModified() == loadedModified }?.run { return this }
+        gazetteer = null
+        if (!gazetteerFile.exists()) {
+            Timber.w("No gazetteer found at $gazetteerFile")
+            return null
+        }
+        return try {
+            val modified = gazetteerFile.lastModified()
+            Gazetteer.open(gazetteerFile).also {
+                Timber.i("Loaded gazetteer with ${it.size} places from $gazetteerFile")
+                loadedModified = modified
+                gazetteer = it
+            }
+        } catch (e: IOException) {
+            Timber.e(e, "Unable to load gazetteer from $gazetteerFile")
+            null
+        }
+    }
+
+    companion object {
+        private const val GAZETTEER_FILE_NAME = "gazetteer.bin"
+        private const val MAX_DISTANCE_METERS = 2000.0
+        private const val STREET_MAX_DISTANCE_METERS = 100.0
+
+        fun gazetteerFile(context: Context): File =
+            File(context.getExternalFilesDir(null) ?: context.filesDir, GAZETTEER_FILE_NAME)
+
+        /**
+         * Copies a gazetteer in from [input], checking that it can be read before replacing the
+         * current one.
+         *
+         * @return the number of places in the imported gazetteer
+         */
+        @Throws(IOException::class)
+        fun import(context: Context, input: InputStream): Int {
+            val target = gazetteerFile(context)
+            val temporary = File(target.path + ".tmp")
+            try {
+                FileOutputStream(temporary).use { input.copyTo(it) }
+                val size = Gazetteer.open(temporary).size
+                if (!temporary.renameTo(target)) {
+                    throw IOException("Unable to replace $target")
+                }
+                return size
+            } finally {
+                temporary.delete()
+            }
+        }
+    }
+}
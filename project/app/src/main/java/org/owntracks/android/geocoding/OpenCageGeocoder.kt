@@ -16,16 +16,20 @@ import java.math.BigDecimal
 
 class OpenCageGeocoder @JvmOverloads internal constructor(
     private val apiKey: String,
-    private val httpClient: OkHttpClient = OkHttpClient()
-) : CachingGeocoder() {
+    private val httpClient: OkHttpClient = OkHttpClient(),
+    persistentCache: PersistentGeocodeCache? = null
+) : CachingGeocoder(persistentCache) {
+    override val cacheName = "opencage"
     private val jsonMapper: ObjectMapper =
         ObjectMapper().registerKotlinModule().registerModule(ThreeTenModule())
+    @Volatile
     private var tripResetTimestamp: Instant = Instant.now()
-    private var something = true
+    @Volatile
+    private var rateLimitHit = false
     override fun doLookup(latitude: BigDecimal, longitude: BigDecimal): GeocodeResult {
         if (tripResetTimestamp > Instant.now()) {
             Timber.w("Rate-limited, not querying")
-            something = false
+            rateLimitHit = true
             return GeocodeResult.RateLimited(tripResetTimestamp)
         }
         val url = HttpUrl.Builder()
@@ -0,0 +1,86 @@
+package org.owntracks.android.geocoding
+
+import io.objectbox.Box
+import io.objectbox.BoxStore
+import org.owntracks.android.data.GeocodeModel
+import org.owntracks.android.data.GeocodeModel_
+import org.owntracks.android.support.Distance
+import timber.log.Timber
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.math.PI
+import kotlin.math.cos
+
+/**
+ * On-disk tier of the geocode cache, which survives restarts and switching between providers. Entries
+ * are kept per provider, expire after [TTL_MILLIS], and the least recently used are dropped once there
+ * are more than [MAX_ENTRIES]. When an entry was last used is only tracked to within
+ * [LAST_USED_SLACK_MILLIS].
+ */
+@Singleton
+class PersistentGeocodeCache @Inject constructor(boxStore: BoxStore) {
+    private val box: Box<GeocodeModel> = boxStore.boxFor(GeocodeModel::class.java)
+
+    /**
+     * Returns the fresh cached result nearest to the given coordinates, as long as it's within
+     * [radiusMeters].
+     */
+    fun get(provider: String, latitude: Double, longitude: Double, radiusMeters: Double): GeocodeResult? {
+        val now = System.currentTimeMillis()
+        val latitudeDelta = radiusMeters / Distance.METERS_PER_DEGREE
+        val longitudeDelta = latitudeDelta / cos(latitude * PI / 180).coerceAtLeast(0.01)
+        val model = box.query()
+            .equal(GeocodeModel_.provider, provider)
+            .between(GeocodeModel_.latitude, latitude - latitudeDelta, latitude + latitudeDelta)
+            .between(GeocodeModel_.longitude, longitude - longitudeDelta, longitude + longitudeDelta)
+            .greater(GeocodeModel_.storedAt, now - TTL_MILLIS)
+            .build()
+            .find()
+            .map { it to Distance.meters(latitude, longitude, it.latitude, it.longitude) }
+            .filter { it.second <= radiusMeters }
+            .minByOrNull { it.second }
+            ?.first ?: return null
+        // Recency only needs to be roughly right for eviction, so hits don't each cost a write
+        if (now - model.lastUsed > LAST_USED_SLACK_MILLIS) {
+            model.lastUsed = now
+            box.put(model)
+        }
+        return model.text?.let { GeocodeResult.Formatted(it) } ?: GeocodeResult.Empty
+    }
+
+    fun put(provider: String, latitude: Double, longitude: Double, result: GeocodeResult) {
+        val text = when (result) {
+            is GeocodeResult.Formatted -> result.text
+            is GeocodeResult.Empty -> null
+            else -> return
+        }
+        box.put(GeocodeModel(provider, latitude, longitude, text, System.currentTimeMillis()))
+        if (box.count() > MAX_ENTRIES) {
+            evict()
+        }
+    }
+
+    private fun evict() {
+        val expired = box.query()
+            .less(GeocodeModel_.storedAt, System.currentTimeMillis() - TTL_MILLIS)
+            .build()
+            .remove()
+        val excess = box.count() - MAX_ENTRIES + EVICTION_HEADROOM
+        if (excess > 0) {
+            val leastRecentlyUsed = box.query()
+                .order(GeocodeModel_.lastUsed)
+                .build()
+                .findIds(0, excess)
+            box.remove(*leastRecentlyUsed)
+        }
+        Timber.d("Evicted $expired expired and ${excess.coerceAtLeast(0)} least recently used geocodes")
+    }
+
+    companion object {
+        private val TTL_MILLIS = TimeUnit.DAYS.toMillis(30)
+        private val LAST_USED_SLACK_MILLIS = TimeUnit.DAYS.toMillis(1)
+        private const val MAX_ENTRIES = 5000L
+        private const val EVICTION_HEADROOM = 500L
+    }
+}
@@ -0,0 +1,136 @@
+package org.owntracks.android.location
+
+import org.owntracks.android.support.Distance
+import java.util.concurrent.TimeUnit
+import kotlin.math.hypot
+import kotlin.math.max
+
+/**
+ * Works out how the device is moving from recent fixes, and picks a location request to match. While
+ * stationary, requests are slow and low power; once moving, they go back to the configured interval
+ * at high accuracy, with a small displacement filter when moving slowly.
+ */
+class AdaptiveSamplingController {
+    enum class Motion { STATIONARY, SLOW, FAST }
+
+    data class Profile(val interval: Long, val priority: Int, val smallestDisplacement: Float)
+
+    private val latitudes = DoubleArray(WINDOW_SIZE)
+    private val longitudes = DoubleArray(WINDOW_SIZE)
+    private val accuracies = FloatArray(WINDOW_SIZE)
+    private val times = LongArray(WINDOW_SIZE)
+    private var head = 0
+    private var count = 0
+
+    // Assume movement to start with, so tracks don't start sparse
+    @get:Synchronized
+    var motion = Motion.FAST
+        private set
+
+    /**
+     * Feeds in a fix. [speed] is in meters per second, or null if the fix doesn't have one.
+     *
+     * @return whether the [motion] has changed
+     */
+    @Synchronized
+    fun onLocation(latitude: Double, longitude: Double, accuracy: Float, speed: Float?, time: Long): Boolean {
+        if (count > 0 && time <= times[(head + WINDOW_SIZE - 1) % WINDOW_SIZE]) {
+            return false
+        }
+        val impliedSpeed = speed?.toDouble() ?: impliedSpeed(latitude, longitude, accuracy, time)
+        times[head] = time
+        latitudes[head] = latitude
+        longitudes[head] = longitude
+        accuracies[head] = accuracy
+        head = (head + 1) % WINDOW_SIZE
+        count = minOf(count + 1, WINDOW_SIZE)
+
+        var oldest = time
+        var displacement = 0.0
+        for (i in 1 until count) {
+            val index = (head - 1 - i + WINDOW_SIZE) % WINDOW_SIZE
+            if (time - times[index] > WINDOW_MILLIS) break
+            oldest = times[index]
+            displacement = max(
+                displacement,
+                Distance.meters(latitudes[index], longitudes[index], latitude, longitude)
+            )
+        }
+
+        val previous = motion
+        motion = when {
+            impliedSpeed >= FAST_SPEED || (motion == Motion.FAST && impliedSpeed >= SLOW_DOWN_SPEED) -> Motion.FAST
+            impliedSpeed >= SLOW_SPEED || displacement > max(STATIONARY_RADIUS_METERS, accuracy.toDouble()) -> Motion.SLOW
+            time - oldest >= STATIONARY_AFTER_MILLIS -> Motion.STATIONARY
+            motion == Motion.FAST -> Motion.SLOW
+            else -> motion
+        }
+        return motion != previous
+    }
+
+    /**
+     * Called when a motion sensor reports the device has started moving
+     *
+     * @return whether the [motion] has changed
+     */
+    @Synchronized
+    fun onMotionDetected(): Boolean {
+        if (motion != Motion.STATIONARY) {
+            return false
+        }
+        motion = Motion.SLOW
+        count = 0
+        return true
+    }
+
+    @Synchronized
+    fun reset() {
+        motion = Motion.FAST
+        count = 0
+    }
+
+    /**
+     * The location request to use for the current [motion], given the configured [baseInterval]
+     */
+    @Synchronized
+    fun profile(baseInterval: Long, hasMotionSensor: Boolean): Profile = when (motion) {
+        Motion.STATIONARY -> Profile(
+            max(baseInterval, if (hasMotionSensor) STATIONARY_INTERVAL_WITH_SENSOR else STATIONARY_INTERVAL),
+            LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY,
+            STATIONARY_RADIUS_METERS.toFloat()
+        )
+        Motion.SLOW -> Profile(baseInterval, LocationRequest.PRIORITY_HIGH_ACCURACY, SLOW_DISPLACEMENT_METERS)
+        Motion.FAST -> Profile(baseInterval, LocationRequest.PRIORITY_HIGH_ACCURACY, 0f)
+    }
+
+    /**
+     * The speed from the previous fix to this one, counting only the distance that can't be put down
+     * to the two fixes' accuracy, so that a stationary device's jitter doesn't look like movement
+     */
+    private fun impliedSpeed(latitude: Double, longitude: Double, accuracy: Float, time: Long): Double {
+        if (count == 0) {
+            return 0.0
+        }
+        val previous = (head + WINDOW_SIZE - 1) % WINDOW_SIZE
+        val seconds = (time - times[previous]) / 1000.0
+        val distance = Distance.meters(latitudes[previous], longitudes[previous], latitude, longitude)
+        val uncertainty = hypot(accuracies[previous].toDouble(), accuracy.toDouble())
+        return max(0.0, distance - uncertainty) / seconds
+    }
+
+    companion object {
+        private const val WINDOW_SIZE = 16
+        private val WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5)
+        private val STATIONARY_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(2)
+        private const val STATIONARY_RADIUS_METERS = 30.0
+
+        // Meters per second: a slow walk, and somewhere between running and driving
+        private const val SLOW_SPEED = 0.7
+        private const val FAST_SPEED = 5.0
+        private const val SLOW_DOWN_SPEED = 3.0
+        private const val SLOW_DISPLACEMENT_METERS = 5f
+
+        private val STATIONARY_INTERVAL = TimeUnit.MINUTES.toMillis(1)
+        private val STATIONARY_INTERVAL_WITH_SENSOR = TimeUnit.MINUTES.toMillis(5)
+    }
+}
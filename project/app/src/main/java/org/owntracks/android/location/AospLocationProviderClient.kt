@@ -3,7 +3,9 @@ package org.owntracks.android.location
 import android.annotation.SuppressLint
 import android.content.Context
 import android.location.Location
+import android.os.Handler
 import android.os.Looper
+import android.os.SystemClock
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.launch
@@ -17,13 +19,23 @@ import timber.log.Timber
 class AospLocationProviderClient(val context: Context) : LocationProviderClient {
     private val callbackMap = mutableMapOf<LocationCallback, IMyLocationConsumer>()
     private val gpsMyLocationProvider = GpsMyLocationProvider(context)
+    private val handler = Handler(Looper.getMainLooper())
+
+    // Locations held back for callbacks whose request has a maxWaitTime. Only touched on the main thread.
+    private val batches = mutableMapOf<LocationCallback, MutableList<Location>>()
 
     @SuppressLint("MissingPermission")
     override fun requestLocationUpdates(locationRequest: LocationRequest, clientCallBack: LocationCallback) {
         GlobalScope.launch {
             withContext(Dispatchers.Main) {
                 gpsMyLocationProvider.stopLocationProvider()
-                val listener = IMyLocationConsumer { location, _ -> clientCallBack.onLocationResult(LocationResult(location)) }
+                val maxWaitTime = locationRequest.maxWaitTime?.takeIf { it > (locationRequest.interval ?: 0) }
+                val listener = if (maxWaitTime == null) {
+                    IMyLocationConsumer { location, _ -> clientCallBack.onLocationResult(LocationResult(location)) }
+                } else {
+                    IMyLocationConsumer { location, _ -> addToBatch(clientCallBack, location, maxWaitTime) }
+                }
+                gpsMyLocationProvider.clearLocationSources()
                 when (locationRequest.priority) {
                     PRIORITY_HIGH_ACCURACY -> {
                         gpsMyLocationProvider.addLocationSource("gps")
@@ -31,7 +43,6 @@ class AospLocationProviderClient(val context: Context) : LocationProviderClient
                         gpsMyLocationProvider.addLocationSource("passive")
                     }
                     PRIORITY_BALANCED_POWER_ACCURACY -> {
-                        gpsMyLocationProvider.clearLocationSources()
                         gpsMyLocationProvider.addLocationSource("network")
                         gpsMyLocationProvider.addLocationSource("passive")
                     }
@@ -53,7 +64,38 @@ class AospLocationProviderClient(val context: Context) : LocationProviderClient
         requestLocationUpdates(locationRequest, clientCallBack)
     }
 
+    /**
+     * Emulates batched delivery, as the platform LocationManager only offers it from API 31. The
+     * provider still runs as often as asked, but the callback only runs once per [maxWaitTime].
+     */
+    private fun addToBatch(clientCallBack: LocationCallback, location: Location, maxWaitTime: Long) {
+        if (!callbackMap.containsKey(clientCallBack)) {
+            return
+        }
+        val batch = batches.getOrPut(clientCallBack) { mutableListOf() }
+        batch.add(location)
+        if (batch.size == 1) {
+            handler.postAtTime({ deliverBatch(clientCallBack) }, clientCallBack, SystemClock.uptimeMillis() + maxWaitTime)
+        }
+    }
+
+    private fun deliverBatch(clientCallBack: LocationCallback) {
+        handler.removeCallbacksAndMessages(clientCallBack)
+        batches.remove(clientCallBack)?.takeIf { it.isNotEmpty() }?.run {
+            clientCallBack.onLocationResult(LocationResult(this))
+        }
+    }
+
+    /**
+     * Drops any locations still held back for the callback, as it mustn't be called once it's removed
+     */
     override fun removeLocationUpdates(clientCallBack: LocationCallback) {
+        handler.removeCallbacksAndMessages(clientCallBack)
+        handler.post {
+            // A location may have started a new batch since, so check again on the main thread
+            handler.removeCallbacksAndMessages(clientCallBack)
+            batches.remove(clientCallBack)
+        }
         callbackMap[clientCallBack]?.run {
             gpsMyLocationProvider.stopLocationProvider()
             callbackMap.remove(clientCallBack)
@@ -62,7 +104,7 @@ class AospLocationProviderClient(val context: Context) : LocationProviderClient
     }
 
     override fun flushLocations() {
-        Timber.i("Flush locations NOOP on AOSP location provider")
+        handler.post { batches.keys.toList().forEach(::deliverBatch) }
     }
 
     override fun getLastLocation(): Location? {
@@ -0,0 +1,106 @@
+package org.owntracks.android.location
+
+import org.owntracks.android.support.Distance
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.pow
+import kotlin.math.sqrt
+
+/**
+ * Polyline simplification for drawing tracks. Works on a local equirectangular projection, which is
+ * plenty accurate over the few km that a recent track covers.
+ */
+object DouglasPeucker {
+    private const val METERS_PER_PIXEL_AT_ZOOM_ZERO = 156_543.03392
+
+    /**
+     * Returns the indices of the points to keep, in order. The first and last points are always kept.
+     */
+    fun simplify(
+        latitudes: DoubleArray,
+        longitudes: DoubleArray,
+        count: Int,
+        toleranceMeters: Double
+    ): IntArray {
+        if (count <= 2) {
+            return IntArray(count) { it }
+        }
+        val metersPerDegreeLatitude = Distance.METERS_PER_DEGREE
+        val metersPerDegreeLongitude = metersPerDegreeLatitude * cos(latitudes[0] * PI / 180)
+        val keep = BooleanArray(count)
+        keep[0] = true
+        keep[count - 1] = true
+
+        // Explicit stack of (start, end) pairs, so long tracks can't blow the call stack
+        val stack = IntArray(count * 2)
+        var stackSize = 0
+        stack[stackSize++] = 0
+        stack[stackSize++] = count - 1
+
+        while (stackSize > 0) {
+            val end = stack[--stackSize]
+            val start = stack[--stackSize]
+            val startX = longitudes[start] * metersPerDegreeLongitude
+            val startY = latitudes[start] * metersPerDegreeLatitude
+            val endX = longitudes[end] * metersPerDegreeLongitude
+            val endY = latitudes[end] * metersPerDegreeLatitude
+
+            var maxDistance = 0.0
+            var maxIndex = -1
+            for (i in start + 1 until end) {
+                val distance = distanceToSegment(
+                    longitudes[i] * metersPerDegreeLongitude,
+                    latitudes[i] * metersPerDegreeLatitude,
+                    startX, startY, endX, endY
+                )
+                if (distance > maxDistance) {
+                    maxDistance = distance
+                    maxIndex = i
+                }
+            }
+            if (maxIndex != -1 && maxDistance > toleranceMeters) {
+                keep[maxIndex] = true
+                stack[stackSize++] = start
+                stack[stackSize++] = maxIndex
+                stack[stackSize++] = maxIndex
+                stack[stackSize++] = end
+            }
+        }
+
+        val result = IntArray(keep.count { it })
+        var resultIndex = 0
+        keep.forEachIndexed { index, kept ->
+            if (kept) {
+                result[resultIndex++] = index
+            }
+        }
+        return result
+    }
+
+    /**
+     * The ground distance covered by a couple of pixels at the given zoom level, which is the most
+     * detail that's worth drawing.
+     */
+    fun toleranceForZoom(latitude: Double, zoom: Double, pixels: Double = 2.0): Double =
+        pixels * METERS_PER_PIXEL_AT_ZOOM_ZERO * cos(latitude * PI / 180) / 2.0.pow(zoom)
+
+    private fun distanceToSegment(
+        x: Double,
+        y: Double,
+        startX: Double,
+        startY: Double,
+        endX: Double,
+        endY: Double
+    ): Double {
+        val dx = endX - startX
+        val dy = endY - startY
+        val lengthSquared = dx * dx + dy * dy
+        if (lengthSquared == 0.0) {
+            return sqrt((x - startX).pow(2) + (y - startY).pow(2))
+        }
+        val t = (((x - startX) * dx + (y - startY) * dy) / lengthSquared).coerceIn(0.0, 1.0)
+        val projectedX = startX + t * dx
+        val projectedY = startY + t * dy
+        return sqrt((x - projectedX).pow(2) + (y - projectedY).pow(2))
+    }
+}
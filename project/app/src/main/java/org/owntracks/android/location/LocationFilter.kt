@@ -0,0 +1,170 @@
+package org.owntracks.android.location
+
+import org.owntracks.android.support.Distance
+import java.util.concurrent.TimeUnit
+
+/**
+ * Decides whether a fix is worth publishing, before any message is built for it. Fixes implying an
+ * impossible speed are rejected as outliers, the rest are optionally smoothed with a simple Kalman
+ * filter weighted by accuracy, and then gated on the time and distance since the last published fix.
+ *
+ * Works on plain fields, and keeps its state in primitives, so it doesn't allocate per fix. Each
+ * setting is disabled when zero.
+ */
+class LocationFilter {
+    enum class Verdict {
+        /** Publish the fix */
+        ACCEPT,
+
+        /** Too soon after the last published fix. It's still a good position, just not worth sending */
+        TOO_SOON,
+
+        /** Too close to the last published fix. It's still a good position, just not worth sending */
+        TOO_CLOSE,
+
+        /** Implies an impossible speed, and shouldn't be used at all */
+        OUTLIER
+    }
+
+    private var minDistanceMeters = 0
+    private var minIntervalMillis = 0L
+    private var maxSpeedMetersPerSecond = 0
+    private var smoothing = false
+
+    // Last fix that wasn't an outlier, as reported
+    private var hasReference = false
+    private var referenceLatitude = 0.0
+    private var referenceLongitude = 0.0
+    private var referenceTime = 0L
+    private var consecutiveOutliers = 0
+
+    // Kalman state. Variance is in square meters
+    private var hasEstimate = false
+    private var estimateLatitude = 0.0
+    private var estimateLongitude = 0.0
+    private var estimateTime = 0L
+    private var variance = 0.0
+
+    // Last published fix, as smoothed
+    private var hasPublished = false
+    private var publishedLatitude = 0.0
+    private var publishedLongitude = 0.0
+    private var publishedTime = 0L
+
+    /** Latitude to use for the last fix that wasn't an outlier. Smoothed, if smoothing is enabled */
+    @get:Synchronized
+    var latitude = 0.0
+        private set
+
+    /** Longitude to use for the last fix that wasn't an outlier. Smoothed, if smoothing is enabled */
+    @get:Synchronized
+    var longitude = 0.0
+        private set
+
+    @Synchronized
+    fun configure(minDistanceMeters: Int, minIntervalSeconds: Int, maxSpeedMetersPerSecond: Int, smoothing: Boolean) {
+        this.minDistanceMeters = minDistanceMeters
+        this.minIntervalMillis = TimeUnit.SECONDS.toMillis(minIntervalSeconds.toLong())
+        this.maxSpeedMetersPerSecond = maxSpeedMetersPerSecond
+        if (this.smoothing != smoothing) {
+            hasEstimate = false
+        }
+        this.smoothing = smoothing
+    }
+
+    /**
+     * Runs a fix through the filter. Unless it's an [Verdict.OUTLIER], [latitude] and [longitude] are
+     * updated with the position to use for it.
+     */
+    @Synchronized
+    fun filter(latitude: Double, longitude: Double, accuracy: Float, time: Long): Verdict {
+        if (isOutlier(latitude, longitude, time)) {
+            return Verdict.OUTLIER
+        }
+        hasReference = true
+        referenceLatitude = latitude
+        referenceLongitude = longitude
+        referenceTime = time
+
+        if (smoothing) {
+            smooth(latitude, longitude, accuracy, time)
+            this.latitude = estimateLatitude
+            this.longitude = estimateLongitude
+        } else {
+            this.latitude = latitude
+            this.longitude = longitude
+        }
+
+        if (hasPublished) {
+            if (minIntervalMillis > 0 && time - publishedTime < minIntervalMillis) {
+                return Verdict.TOO_SOON
+            }
+            if (minDistanceMeters > 0 && Distance.meters(
+                    publishedLatitude,
+                    publishedLongitude,
+                    this.latitude,
+                    this.longitude
+                ) < minDistanceMeters
+            ) {
+                return Verdict.TOO_CLOSE
+            }
+        }
+        hasPublished = true
+        publishedLatitude = this.latitude
+        publishedLongitude = this.longitude
+        publishedTime = time
+        return Verdict.ACCEPT
+    }
+
+    @Synchronized
+    fun reset() {
+        hasReference = false
+        hasEstimate = false
+        hasPublished = false
+        consecutiveOutliers = 0
+    }
+
+    private fun isOutlier(latitude: Double, longitude: Double, time: Long): Boolean {
+        if (maxSpeedMetersPerSecond <= 0 || !hasReference || time <= referenceTime) {
+            return false
+        }
+        val seconds = (time - referenceTime) / 1000.0
+        val distance = Distance.meters(referenceLatitude, referenceLongitude, latitude, longitude)
+        if (distance / seconds <= maxSpeedMetersPerSecond) {
+            consecutiveOutliers = 0
+            return false
+        }
+        // If fixes keep disagreeing with the reference, it's more likely the reference that was wrong
+        if (++consecutiveOutliers > MAX_CONSECUTIVE_OUTLIERS) {
+            consecutiveOutliers = 0
+            hasEstimate = false
+            return false
+        }
+        return true
+    }
+
+    private fun smooth(latitude: Double, longitude: Double, accuracy: Float, time: Long) {
+        val measurementVariance = accuracy.coerceAtLeast(MIN_ACCURACY).toDouble().let { it * it }
+        if (!hasEstimate || time <= estimateTime) {
+            hasEstimate = true
+            estimateLatitude = latitude
+            estimateLongitude = longitude
+            estimateTime = time
+            variance = measurementVariance
+            return
+        }
+        // The device may have moved since the last estimate, so that becomes less certain with time
+        variance += (time - estimateTime) / 1000.0 * PROCESS_NOISE_METERS_PER_SECOND * PROCESS_NOISE_METERS_PER_SECOND
+        estimateTime = time
+        val gain = variance / (variance + measurementVariance)
+        estimateLatitude += gain * (latitude - estimateLatitude)
+        estimateLongitude += gain * (longitude - estimateLongitude)
+        variance *= 1 - gain
+    }
+
+    companion object {
+        private const val MAX_CONSECUTIVE_OUTLIERS = 3
+        private const val MIN_ACCURACY = 1f
+        private const val PROCESS_NOISE_METERS_PER_SECOND = 3.0
+    }
+}
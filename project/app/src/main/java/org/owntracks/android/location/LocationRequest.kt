@@ -7,6 +7,8 @@ data class LocationRequest(
         var expirationDuration: Long? = null,
         var priority: Int = PRIORITY_BALANCED_POWER_ACCURACY,
         var interval: Long? = null,
+        /** Locations may be held back and delivered together, as long as none is delayed by more than this */
+        var maxWaitTime: Long? = null,
 ) {
     companion object {
         const val PRIORITY_HIGH_ACCURACY: Int = 0
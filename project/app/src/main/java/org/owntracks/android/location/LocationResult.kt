@@ -2,4 +2,12 @@ package org.owntracks.android.location
 
 import android.location.Location
 
-data class LocationResult(val lastLocation: Location)
\ No newline at end of file
+/**
+ * One or more locations delivered together, oldest first
+ */
+data class LocationResult(val locations: List<Location>) {
+    constructor(location: Location) : this(listOf(location))
+
+    val lastLocation: Location
+        get() = locations.last()
+}
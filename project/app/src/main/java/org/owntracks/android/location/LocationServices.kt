@@ -5,15 +5,19 @@ import org.owntracks.android.BuildConfig.FLAVOR
 import org.owntracks.android.gms.location.GMSLocationProviderClient
 import org.owntracks.android.gms.location.geofencing.GMSGeofencingClient
 import org.owntracks.android.location.geofencing.GeofencingClient
+import org.owntracks.android.location.geofencing.GeofencingEventListener
 import org.owntracks.android.services.BackgroundService
 import org.owntracks.android.support.Preferences
 import org.owntracks.android.support.Preferences.Companion.EXPERIMENTAL_FEATURE_USE_AOSP_LOCATION_PROVIDER
 
 object LocationServices {
-    fun getGeofencingClient(backgroundService: BackgroundService): GeofencingClient {
+    fun getGeofencingClient(
+        backgroundService: BackgroundService,
+        listener: GeofencingEventListener
+    ): GeofencingClient {
         return when (FLAVOR) {
             "gms" -> GMSGeofencingClient.create(backgroundService)
-            else -> NoopGeofencingClient()
+            else -> SoftwareGeofencingClient(AospLocationProviderClient(backgroundService), listener)
         }
     }
 
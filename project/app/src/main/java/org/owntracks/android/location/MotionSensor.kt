@@ -0,0 +1,64 @@
+package org.owntracks.android.location
+
+import android.content.Context
+import android.hardware.*
+import timber.log.Timber
+
+/**
+ * Listens for the device starting to move, using the significant motion sensor if there is one and
+ * the step detector otherwise. Only armed while the device is thought to be stationary, and disarms
+ * itself after reporting motion once.
+ */
+class MotionSensor(context: Context, private val onMotion: Runnable) {
+    private val sensorManager = context.getSystemService(Context.SENSOR_SERVICE) as SensorManager?
+    private val significantMotionSensor = sensorManager?.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION)
+    private val stepDetectorSensor = sensorManager?.getDefaultSensor(Sensor.TYPE_STEP_DETECTOR)
+    private var armed = false
+
+    private val triggerListener = object : TriggerEventListener() {
+        override fun onTrigger(event: TriggerEvent?) {
+            synchronized(this@MotionSensor) { armed = false }
+            Timber.d("Significant motion detected")
+            onMotion.run()
+        }
+    }
+
+    private val stepListener = object : SensorEventListener {
+        override fun onSensorChanged(event: SensorEvent?) {
+            disarm()
+            Timber.d("Step detected")
+            onMotion.run()
+        }
+
+        override fun onAccuracyChanged(sensor: Sensor?, accuracy: Int) {}
+    }
+
+    val isAvailable: Boolean
+        get() = significantMotionSensor != null || stepDetectorSensor != null
+
+    @Synchronized
+    fun arm() {
+        if (armed || sensorManager == null) {
+            return
+        }
+        armed = when {
+            significantMotionSensor != null -> sensorManager.requestTriggerSensor(triggerListener, significantMotionSensor)
+            stepDetectorSensor != null -> sensorManager.registerListener(stepListener, stepDetectorSensor, SensorManager.SENSOR_DELAY_NORMAL)
+            else -> false
+        }
+        Timber.d("Motion sensor armed: $armed")
+    }
+
+    @Synchronized
+    fun disarm() {
+        if (!armed || sensorManager == null) {
+            return
+        }
+        if (significantMotionSensor != null) {
+            sensorManager.cancelTriggerSensor(triggerListener, significantMotionSensor)
+        } else {
+            sensorManager.unregisterListener(stepListener)
+        }
+        armed = false
+    }
+}
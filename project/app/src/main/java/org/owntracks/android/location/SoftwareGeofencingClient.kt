@@ -0,0 +1,128 @@
+package org.owntracks.android.location
+
+import android.annotation.SuppressLint
+import android.app.PendingIntent
+import android.location.Location
+import android.os.SystemClock
+import org.owntracks.android.location.geofencing.*
+import timber.log.Timber
+import java.util.concurrent.TimeUnit
+
+/**
+ * In-process geofencing for builds without Play Services. Fences are checked against locations from
+ * a dedicated [LocationProviderClient] using a [GeofenceMonitor], and the location request is made
+ * more frequent and more precise as the device gets near a fence edge, and relaxed again as it moves
+ * away. Events are handed straight to [listener] rather than sent through the PendingIntent, which is
+ * only used to group fences for removal.
+ */
+class SoftwareGeofencingClient(
+    private val locationProviderClient: LocationProviderClient,
+    private val listener: GeofencingEventListener
+) : GeofencingClient {
+    private enum class Rate(val interval: Long, val smallestDisplacement: Float, val priority: Int) {
+        NEAR(TimeUnit.SECONDS.toMillis(15), 0f, LocationRequest.PRIORITY_HIGH_ACCURACY),
+        APPROACHING(TimeUnit.MINUTES.toMillis(1), 25f, LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY),
+        FAR(TimeUnit.MINUTES.toMillis(5), 100f, LocationRequest.PRIORITY_LOW_POWER)
+    }
+
+    private val monitor = GeofenceMonitor()
+    private val requestIdsByPendingIntent = HashMap<PendingIntent, MutableSet<String>>()
+    private var rate: Rate? = null
+
+    private val locationCallback = object : LocationCallback {
+        override fun onLocationResult(locationResult: LocationResult) {
+            onLocation(locationResult.lastLocation)
+        }
+
+        override fun onLocationAvailability(locationAvailability: LocationAvailability) {}
+    }
+
+    override fun removeGeofences(GeofencePendingIntent: PendingIntent) {
+        synchronized(monitor) {
+            requestIdsByPendingIntent.remove(GeofencePendingIntent)?.forEach(monitor::remove)
+            stopIfEmpty()
+        }
+    }
+
+    override fun removeGeofences(requestIds: List<String>) {
+        synchronized(monitor) {
+            requestIds.forEach(monitor::remove)
+            requestIdsByPendingIntent.values.forEach { it.removeAll(requestIds) }
+            stopIfEmpty()
+        }
+    }
+
+    private fun stopIfEmpty() {
+        if (monitor.isEmpty) {
+            Timber.d("No geofences left, stopping geofence location updates")
+            locationProviderClient.removeLocationUpdates(locationCallback)
+            rate = null
+        }
+    }
+
+    override fun addGeofences(request: GeofencingRequest, GeofencePendingIntent: PendingIntent) {
+        val geofences = request.geofences ?: return
+        synchronized(monitor) {
+            monitor.add(geofences, request.initialTrigger ?: 0, SystemClock.elapsedRealtime())
+            requestIdsByPendingIntent.getOrPut(GeofencePendingIntent) { HashSet() }
+                .addAll(geofences.mapNotNull { it.requestId })
+        }
+        Timber.d("Monitoring ${geofences.size} geofences in software")
+        val lastLocation = locationProviderClient.getLastLocation()
+        if (lastLocation != null) {
+            onLocation(lastLocation)
+        } else {
+            synchronized(monitor) { updateRate(Rate.APPROACHING) }
+        }
+    }
+
+    private fun onLocation(location: Location) {
+        val transitions = synchronized(monitor) {
+            if (monitor.isEmpty) {
+                return
+            }
+            val transitions = monitor.onLocation(
+                location.latitude,
+                location.longitude,
+                location.accuracy,
+                SystemClock.elapsedRealtime()
+            )
+            val distance = monitor.distanceToNearestBoundary(location.latitude, location.longitude)
+            updateRate(
+                when {
+                    distance == null || distance > FAR_METERS -> Rate.FAR
+                    distance > NEAR_METERS -> Rate.APPROACHING
+                    else -> Rate.NEAR
+                }
+            )
+            transitions
+        }
+        transitions.forEach {
+            Timber.d("Geofence transition ${it.transition} for ${it.geofences.map(Geofence::requestId)}")
+            listener.onGeofencingEvent(GeofencingEvent(null, it.transition, it.geofences, location))
+        }
+    }
+
+    @SuppressLint("MissingPermission")
+    private fun updateRate(rate: Rate) {
+        if (rate == this.rate) {
+            return
+        }
+        Timber.d("Changing geofence location rate from ${this.rate} to $rate")
+        this.rate = rate
+        locationProviderClient.requestLocationUpdates(
+            LocationRequest(
+                interval = rate.interval,
+                fastestInterval = rate.interval / 2,
+                smallestDisplacement = rate.smallestDisplacement,
+                priority = rate.priority
+            ),
+            locationCallback
+        )
+    }
+
+    companion object {
+        private const val NEAR_METERS = 500.0
+        private const val FAR_METERS = 2000.0
+    }
+}
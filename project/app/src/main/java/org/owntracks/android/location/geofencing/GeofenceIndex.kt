@@ -0,0 +1,128 @@
+package org.owntracks.android.location.geofencing
+
+import org.owntracks.android.support.Distance
+import kotlin.math.*
+
+/**
+ * Grid index over geofence circles. Each fence is registered in every cell that its bounding box
+ * touches, so finding the fences that might contain a point only means reading that point's cell
+ * and doing a cheap bounding box check before working out the real distance. Fences too large to be
+ * worth spreading over the grid are kept in a short list that's always checked.
+ */
+internal class GeofenceIndex(private val cellDegrees: Double = DEFAULT_CELL_DEGREES) {
+    /**
+     * A fence circle, along with the bounding box of the circle grown by [reach] meters
+     */
+    class Entry(
+        val geofence: Geofence,
+        val latitude: Double,
+        val longitude: Double,
+        val radius: Double,
+        val reach: Double
+    ) {
+        private val latitudeSpan = reach / Distance.METERS_PER_DEGREE
+        private val longitudeSpan =
+            reach / (Distance.METERS_PER_DEGREE * max(cos(Math.toRadians(latitude)), MIN_COSINE))
+        val minLatitude = latitude - latitudeSpan
+        val maxLatitude = latitude + latitudeSpan
+        val minLongitude = longitude - longitudeSpan
+        val maxLongitude = longitude + longitudeSpan
+
+        fun boundingBoxContains(latitude: Double, longitude: Double): Boolean =
+            latitude in minLatitude..maxLatitude && longitude in minLongitude..maxLongitude
+
+        fun distanceTo(latitude: Double, longitude: Double): Double =
+            Distance.meters(this.latitude, this.longitude, latitude, longitude)
+    }
+
+    private val cells = HashMap<Long, MutableList<Entry>>()
+    private val oversized = mutableListOf<Entry>()
+
+    fun add(entry: Entry) {
+        val keys = cellKeys(entry)
+        if (keys == null) {
+            oversized.add(entry)
+        } else {
+            keys.forEach { cells.getOrPut(it) { mutableListOf() }.add(entry) }
+        }
+    }
+
+    fun remove(entry: Entry) {
+        val keys = cellKeys(entry)
+        if (keys == null) {
+            oversized.remove(entry)
+        } else {
+            keys.forEach { key ->
+                cells[key]?.run {
+                    remove(entry)
+                    if (isEmpty()) cells.remove(key)
+                }
+            }
+        }
+    }
+
+    fun clear() {
+        cells.clear()
+        oversized.clear()
+    }
+
+    /**
+     * Fences whose bounding box contains the point
+     */
+    fun candidates(latitude: Double, longitude: Double): List<Entry> {
+        val result = mutableListOf<Entry>()
+        cells[cellKey(cellOf(latitude), cellOf(longitude))]?.filterTo(result) {
+            it.boundingBoxContains(latitude, longitude)
+        }
+        oversized.filterTo(result) { it.boundingBoxContains(latitude, longitude) }
+        return result
+    }
+
+    /**
+     * Distance in meters from the point to the nearest fence edge, or null if there's no fence
+     * within the surrounding cells, in which case the nearest edge is at least a cell away.
+     */
+    fun distanceToNearestBoundary(latitude: Double, longitude: Double): Double? {
+        val latitudeCell = cellOf(latitude)
+        val longitudeCell = cellOf(longitude)
+        var nearest = Double.POSITIVE_INFINITY
+        val check = { entry: Entry ->
+            nearest = min(nearest, abs(entry.distanceTo(latitude, longitude) - entry.radius))
+        }
+        for (latitudeOffset in -1..1) {
+            for (longitudeOffset in -1..1) {
+                cells[cellKey(latitudeCell + latitudeOffset, longitudeCell + longitudeOffset)]?.forEach(check)
+            }
+        }
+        oversized.forEach(check)
+        return nearest.takeIf { it.isFinite() }
+    }
+
+    private fun cellOf(degrees: Double): Int = floor(degrees / cellDegrees).toInt()
+
+    /**
+     * Keys of all the cells the entry's bounding box touches, or null if there'd be too many
+     */
+    private fun cellKeys(entry: Entry): List<Long>? {
+        val latitudeCells = cellOf(entry.minLatitude)..cellOf(entry.maxLatitude)
+        val longitudeCells = cellOf(entry.minLongitude)..cellOf(entry.maxLongitude)
+        if ((latitudeCells.last - latitudeCells.first + 1).toLong() *
+            (longitudeCells.last - longitudeCells.first + 1) > MAX_CELLS_PER_ENTRY
+        ) {
+            return null
+        }
+        return latitudeCells.flatMap { latitudeCell ->
+            longitudeCells.map { longitudeCell -> cellKey(latitudeCell, longitudeCell) }
+        }
+    }
+
+    companion object {
+        // Roughly 5.5km north-south
+        const val DEFAULT_CELL_DEGREES = 0.05
+        private const val MAX_CELLS_PER_ENTRY = 64
+        private const val MIN_COSINE = 0.01
+
+        private fun cellKey(latitudeCell: Int, longitudeCell: Int): Long =
+            (latitudeCell.toLong() shl 32) or (longitudeCell.toLong() and 0xffffffffL)
+    }
+}
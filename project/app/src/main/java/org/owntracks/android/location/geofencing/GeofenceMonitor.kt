@@ -0,0 +1,177 @@
+package org.owntracks.android.location.geofencing
+
+import org.owntracks.android.location.geofencing.Geofence.Companion.GEOFENCE_TRANSITION_DWELL
+import org.owntracks.android.location.geofencing.Geofence.Companion.GEOFENCE_TRANSITION_ENTER
+import org.owntracks.android.location.geofencing.Geofence.Companion.GEOFENCE_TRANSITION_EXIT
+import org.owntracks.android.location.geofencing.Geofence.Companion.NEVER_EXPIRE
+import timber.log.Timber
+import kotlin.math.max
+
+/**
+ * Works out geofence transitions from a stream of locations. A fence is entered once a location is
+ * inside its radius, but only exited once a location is more than a hysteresis margin outside it,
+ * so a location jittering around the edge doesn't keep flipping it. A location whose accuracy is
+ * worse than that can't enter a fence, but can still exit it if it's outside the margin even allowing
+ * for its accuracy. Fences that ask for dwell transitions get one after they've been occupied for
+ * their loitering delay.
+ *
+ * Not thread safe.
+ */
+internal class GeofenceMonitor {
+    data class Transition(val transition: Int, val geofences: List<Geofence>)
+
+    private class State(
+        val entry: GeofenceIndex.Entry,
+        val initialTrigger: Int,
+        val expiresAt: Long
+    ) {
+        val geofence: Geofence
+            get() = entry.geofence
+
+        /** null until the first location after the fence was added */
+        var inside: Boolean? = null
+        var enteredAt = 0L
+        var dwelled = false
+
+        fun wants(transition: Int) = (geofence.transitionTypes ?: 0) and transition != 0
+    }
+
+    private val index = GeofenceIndex()
+    private val states = HashMap<String, State>()
+
+    // Fences that are either occupied or haven't seen a location yet, and so need to be checked even
+    // when they're not near the current location
+    private val unsettled = HashSet<State>()
+    private var nextExpiry = Long.MAX_VALUE
+
+    val isEmpty: Boolean
+        get() = states.isEmpty()
+
+    fun add(geofences: List<Geofence>, initialTrigger: Int, now: Long) {
+        geofences.forEach { geofence ->
+            val requestId = geofence.requestId
+            val latitude = geofence.circularLatitude
+            val longitude = geofence.circularLongitude
+            val radius = geofence.circularRadius
+            if (requestId == null || latitude == null || longitude == null || radius == null || radius <= 0) {
+                Timber.w("Ignoring incomplete geofence $geofence")
+                return@forEach
+            }
+            remove(requestId)
+            val expirationDuration = geofence.expirationDuration ?: NEVER_EXPIRE
+            val state = State(
+                GeofenceIndex.Entry(geofence, latitude, longitude, radius.toDouble(), radius + hysteresis(radius.toDouble())),
+                initialTrigger,
+                if (expirationDuration == NEVER_EXPIRE) Long.MAX_VALUE else now + expirationDuration
+            )
+            states[requestId] = state
+            nextExpiry = minOf(nextExpiry, state.expiresAt)
+            index.add(state.entry)
+            unsettled.add(state)
+        }
+    }
+
+    fun remove(requestId: String) {
+        states.remove(requestId)?.run {
+            index.remove(entry)
+            unsettled.remove(this)
+        }
+    }
+
+    fun clear() {
+        states.clear()
+        index.clear()
+        unsettled.clear()
+        nextExpiry = Long.MAX_VALUE
+    }
+
+    /**
+     * Feeds a location through the fences, returning the resulting transitions grouped by type, with
+     * exits ahead of entries.
+     */
+    fun onLocation(latitude: Double, longitude: Double, accuracy: Float, now: Long): List<Transition> {
+        removeExpired(now)
+        val entered = mutableListOf<Geofence>()
+        val exited = mutableListOf<Geofence>()
+        val dwelled = mutableListOf<Geofence>()
+        val candidates = index.candidates(latitude, longitude).mapNotNullTo(HashSet()) {
+            states[it.geofence.requestId]
+        }
+        (candidates + unsettled).forEach { state ->
+            val vague = accuracy > state.entry.reach
+            val distance = if (vague || state in candidates) {
+                state.entry.distanceTo(latitude, longitude)
+            } else {
+                Double.POSITIVE_INFINITY
+            }
+            val wasInside = state.inside
+            if (vague) {
+                // Too vague to say whether it's inside a fence this small, but it may still be clearly outside
+                if (distance - accuracy > state.entry.reach && wasInside != false) {
+                    exit(state, wasInside, exited)
+                }
+                return@forEach
+            }
+            when {
+                distance <= state.entry.radius && wasInside != true -> {
+                    state.inside = true
+                    state.enteredAt = now
+                    state.dwelled = false
+                    unsettled.add(state)
+                    if (if (wasInside == null) state.initialTrigger and GEOFENCE_TRANSITION_ENTER != 0 else state.wants(GEOFENCE_TRANSITION_ENTER)) {
+                        entered.add(state.geofence)
+                    }
+                }
+                distance > state.entry.reach && wasInside != false -> exit(state, wasInside, exited)
+                distance > state.entry.radius && wasInside == null -> {
+                    // Inside the hysteresis margin on the first fix, so call it outside without saying so
+                    state.inside = false
+                    unsettled.remove(state)
+                }
+            }
+            if (state.inside == true && !state.dwelled && state.wants(GEOFENCE_TRANSITION_DWELL) &&
+                now - state.enteredAt >= (state.geofence.loiteringDelay ?: 0)
+            ) {
+                state.dwelled = true
+                dwelled.add(state.geofence)
+            }
+        }
+        return listOf(
+            Transition(GEOFENCE_TRANSITION_EXIT, exited),
+            Transition(GEOFENCE_TRANSITION_ENTER, entered),
+            Transition(GEOFENCE_TRANSITION_DWELL, dwelled)
+        ).filter { it.geofences.isNotEmpty() }
+    }
+
+    private fun exit(state: State, wasInside: Boolean?, exited: MutableList<Geofence>) {
+        state.inside = false
+        unsettled.remove(state)
+        if (if (wasInside == null) state.initialTrigger and GEOFENCE_TRANSITION_EXIT != 0 else state.wants(GEOFENCE_TRANSITION_EXIT)) {
+            exited.add(state.geofence)
+        }
+    }
+
+    /**
+     * @see GeofenceIndex.distanceToNearestBoundary
+     */
+    fun distanceToNearestBoundary(latitude: Double, longitude: Double): Double? =
+        index.distanceToNearestBoundary(latitude, longitude)
+
+    private fun removeExpired(now: Long) {
+        if (now < nextExpiry) {
+            return
+        }
+        states.values.filter { it.expiresAt <= now }.forEach {
+            Timber.d("Geofence ${it.geofence.requestId} expired")
+            remove(it.geofence.requestId!!)
+        }
+        nextExpiry = states.values.minOfOrNull { it.expiresAt } ?: Long.MAX_VALUE
+    }
+
+    companion object {
+        private const val MIN_HYSTERESIS_METERS = 25.0
+        private const val HYSTERESIS_FRACTION = 0.1
+
+        private fun hysteresis(radius: Double) = max(MIN_HYSTERESIS_METERS, radius * HYSTERESIS_FRACTION)
+    }
+}
@@ -0,0 +1,116 @@
+package org.owntracks.android.location.geofencing
+
+import android.app.PendingIntent
+import org.owntracks.android.support.Distance
+import timber.log.Timber
+import kotlin.math.max
+
+/**
+ * Keeps the geofences registered with a [GeofencingClient] in line with the wanted set, by only
+ * removing and adding the ones that differ from what's already registered. If there are more than
+ * [limit] geofences, only the [limit] nearest are registered, and that selection is made again once
+ * the device has moved far enough that a fence outside it might be getting close.
+ *
+ * What's registered is only known for fences added by this reconciler, so the first reconcile (and
+ * the first one after [reset]) removes everything registered against the [PendingIntent] and starts
+ * from scratch.
+ */
+class GeofenceReconciler @JvmOverloads constructor(
+    private val client: GeofencingClient,
+    private val pendingIntent: PendingIntent,
+    private val limit: Int = MAX_REGISTERED_GEOFENCES
+) {
+    private val registered = HashMap<String, Geofence>()
+    private var cleared = false
+    private var geofences: List<Geofence> = emptyList()
+    private var anchorLatitude = Double.NaN
+    private var anchorLongitude = Double.NaN
+    private var rotationDistance = Double.POSITIVE_INFINITY
+
+    /**
+     * Sets the geofences that should be registered. The location, if known, picks the nearest ones
+     * when there are too many.
+     */
+    @Synchronized
+    fun setGeofences(geofences: List<Geofence>, latitude: Double?, longitude: Double?) {
+        this.geofences = geofences.filter { it.requestId != null }
+        reconcile(latitude, longitude)
+    }
+
+    @Synchronized
+    fun onLocation(latitude: Double, longitude: Double) {
+        if (geofences.size <= limit) {
+            return
+        }
+        if (anchorLatitude.isNaN() ||
+            Distance.meters(anchorLatitude, anchorLongitude, latitude, longitude) > rotationDistance
+        ) {
+            Timber.d("Rotating registered geofences")
+            reconcile(latitude, longitude)
+        }
+    }
+
+    /**
+     * Forgets what's registered, for when the platform may have dropped the geofences (e.g. location
+     * being turned off) or they may be stale. The next reconcile re-registers everything.
+     */
+    @Synchronized
+    fun reset() {
+        registered.clear()
+        cleared = false
+    }
+
+    private fun reconcile(latitude: Double?, longitude: Double?) {
+        if (!cleared) {
+            client.removeGeofences(pendingIntent)
+            registered.clear()
+            cleared = true
+        }
+        val selected = select(latitude, longitude)
+        val toRemove = registered.filter { (requestId, geofence) -> selected[requestId] != geofence }.keys.toList()
+        val toAdd = selected.values.filter { registered[it.requestId] != it }
+        if (toRemove.isNotEmpty()) {
+            client.removeGeofences(toRemove)
+            toRemove.forEach { registered.remove(it) }
+        }
+        if (toAdd.isNotEmpty()) {
+            client.addGeofences(GeofencingRequest(Geofence.GEOFENCE_TRANSITION_ENTER, toAdd), pendingIntent)
+            toAdd.forEach { registered[it.requestId!!] = it }
+        }
+        Timber.d("Reconciled geofences: removed ${toRemove.size}, added ${toAdd.size}, registered ${registered.size} of ${geofences.size}")
+    }
+
+    private fun select(latitude: Double?, longitude: Double?): Map<String, Geofence> {
+        if (geofences.size <= limit || latitude == null || longitude == null) {
+            anchorLatitude = Double.NaN
+            anchorLongitude = Double.NaN
+            rotationDistance = Double.POSITIVE_INFINITY
+            return geofences.take(limit).associateBy { it.requestId!! }
+        }
+        val nearest = geofences
+            .map { it to edgeDistance(it, latitude, longitude) }
+            .sortedBy { it.second }
+            .take(limit)
+        anchorLatitude = latitude
+        anchorLongitude = longitude
+        // No fence outside the selection can be reached before moving half way to the furthest one in it
+        rotationDistance = max(MIN_ROTATION_METERS, nearest.last().second / 2)
+        return nearest.associate { it.first.requestId!! to it.first }
+    }
+
+    private fun edgeDistance(geofence: Geofence, latitude: Double, longitude: Double): Double {
+        val fenceLatitude = geofence.circularLatitude ?: return Double.POSITIVE_INFINITY
+        val fenceLongitude = geofence.circularLongitude ?: return Double.POSITIVE_INFINITY
+        return max(
+            0.0,
+            Distance.meters(fenceLatitude, fenceLongitude, latitude, longitude) -
+                    (geofence.circularRadius ?: 0f)
+        )
+    }
+
+    companion object {
+        // The most geofences Play Services will hold per app
+        const val MAX_REGISTERED_GEOFENCES = 100
+        private const val MIN_ROTATION_METERS = 100.0
+    }
+}
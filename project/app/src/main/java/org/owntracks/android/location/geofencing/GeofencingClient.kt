@@ -4,5 +4,6 @@ import android.app.PendingIntent
 
 interface GeofencingClient {
     fun removeGeofences(GeofencePendingIntent: PendingIntent)
+    fun removeGeofences(requestIds: List<String>)
     fun addGeofences(request: GeofencingRequest, GeofencePendingIntent: PendingIntent)
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+package org.owntracks.android.location.geofencing
+
+/**
+ * Receives events from geofencing clients that run in-process, and so don't need to round-trip them
+ * through a PendingIntent
+ */
+fun interface GeofencingEventListener {
+    fun onGeofencingEvent(event: GeofencingEvent)
+}
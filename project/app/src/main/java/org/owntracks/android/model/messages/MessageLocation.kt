@@ -3,11 +3,10 @@ package org.owntracks.android.model.messages
 import android.location.Location
 import android.os.Build
 import com.fasterxml.jackson.annotation.*
-import org.jetbrains.annotations.NotNull
 import org.owntracks.android.location.LatLng
 import org.owntracks.android.model.BatteryStatus
 import org.owntracks.android.model.FusedContact
-import org.owntracks.android.services.WifiInfoProvider
+import org.owntracks.android.support.DeviceStateSnapshot
 import org.owntracks.android.support.Preferences
 import java.lang.ref.WeakReference
 import java.util.concurrent.TimeUnit
@@ -139,18 +138,19 @@ open class MessageLocation(private val dep: MessageWithCreatedAt = MessageCreate
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && location.hasVerticalAccuracy()) location.verticalAccuracyMeters.toInt() else 0
         }
 
+        /**
+         * A location with the current WiFi, battery and connection state attached
+         */
         @JvmStatic
-        fun fromLocationAndWifiInfo(
-            location: @NotNull Location,
-            wifiInfoProvider: WifiInfoProvider
-        ): @NotNull MessageLocation =
-            if (wifiInfoProvider.isConnected()) {
-                fromLocation(location).apply {
-                    ssid = wifiInfoProvider.getSSID()
-                    bssid = wifiInfoProvider.getBSSID()
+        fun fromLocationAndDeviceState(location: Location, deviceState: DeviceStateSnapshot): MessageLocation =
+            fromLocation(location).apply {
+                deviceState.bssid?.let {
+                    ssid = deviceState.ssid
+                    bssid = it
                 }
-            } else {
-                fromLocation(location)
+                battery = deviceState.batteryLevel
+                batteryStatus = deviceState.batteryStatus
+                conn = deviceState.connectionType
             }
 
         const val TYPE = "location"
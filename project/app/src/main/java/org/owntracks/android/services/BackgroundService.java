@@ -14,6 +14,7 @@ import android.location.Location;
 import android.media.AudioManager;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.text.Spannable;
@@ -36,30 +37,38 @@ import org.jetbrains.annotations.NotNull;
 import org.owntracks.android.R;
 import org.owntracks.android.data.WaypointModel;
 import org.owntracks.android.data.repos.ContactsRepo;
+import org.owntracks.android.data.repos.ContactsStore;
 import org.owntracks.android.data.repos.LocationRepo;
+import org.owntracks.android.data.repos.TransitionEventLog;
 import org.owntracks.android.data.repos.WaypointsRepo;
+import org.owntracks.android.data.repos.WaypointsSnapshot;
 import org.owntracks.android.geocoding.GeocoderProvider;
+import org.owntracks.android.location.AdaptiveSamplingController;
 import org.owntracks.android.location.LocationAvailability;
 import org.owntracks.android.location.LocationCallback;
 import org.owntracks.android.location.LocationProviderClient;
 import org.owntracks.android.location.LocationRequest;
 import org.owntracks.android.location.LocationResult;
 import org.owntracks.android.location.LocationServices;
+import org.owntracks.android.location.MotionSensor;
 import org.owntracks.android.location.geofencing.Geofence;
+import org.owntracks.android.location.geofencing.GeofenceReconciler;
 import org.owntracks.android.location.geofencing.GeofencingClient;
 import org.owntracks.android.location.geofencing.GeofencingEvent;
-import org.owntracks.android.location.geofencing.GeofencingRequest;
 import org.owntracks.android.model.FusedContact;
 import org.owntracks.android.model.messages.MessageLocation;
 import org.owntracks.android.model.messages.MessageTransition;
 import org.owntracks.android.services.worker.Scheduler;
 import org.owntracks.android.support.DateFormatter;
+import org.owntracks.android.support.EventChannel;
+import org.owntracks.android.support.EventChannels;
 import org.owntracks.android.support.Events;
 import org.owntracks.android.support.Preferences;
 import org.owntracks.android.support.RunThingsOnOtherThreads;
 import org.owntracks.android.support.ServiceBridge;
 import org.owntracks.android.support.preferences.OnModeChangedPreferenceChangedListener;
 import org.owntracks.android.ui.map.MapActivity;
+import org.owntracks.android.ui.status.events.TransitionEventsActivity;
 
 import java.util.LinkedList;
 import java.util.List;
@@ -68,6 +77,7 @@ import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 
 import dagger.hilt.android.AndroidEntryPoint;
+import kotlinx.coroutines.Dispatchers;
 import timber.log.Timber;
 
 import static android.os.Process.killProcess;
@@ -80,10 +90,13 @@ import static org.owntracks.android.geocoding.GeocoderProvider.ERROR_NOTIFICATIO
 @AndroidEntryPoint
 public class BackgroundService extends Service implements OnModeChangedPreferenceChangedListener, ServiceBridge.ServiceBridgeInterface {
     private static final int INTENT_REQUEST_CODE_GEOFENCE = 1264;
+    private static final int MOVE_MODE_BATCH_SIZE = 5;
     private static final int INTENT_REQUEST_CODE_CLEAR_EVENTS = 1263;
 
     private static final int NOTIFICATION_ID_ONGOING = 1;
     private static final int NOTIFICATION_ID_EVENT_GROUP = 2;
+    private static final int NOTIFICATION_EVENT_GROUP_MAX_LINES = 5;
+    private static final long NOTIFICATION_ONGOING_MIN_UPDATE_INTERVAL = TimeUnit.SECONDS.toMillis(1);
     public static final String BACKGROUND_LOCATION_RESTRICTION_NOTIFICATION_TAG = "backgroundRestrictionNotification";
 
     private static int notificationEventsID = 3;
@@ -103,6 +116,9 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
 
     private LocationProviderClient locationProviderClient;
     private GeofencingClient geofencingClient;
+    private GeofenceReconciler geofenceReconciler;
+    private final AdaptiveSamplingController samplingController = new AdaptiveSamplingController();
+    private MotionSensor motionSensor;
 
     private LocationCallback locationCallback;
     private LocationCallback locationCallbackOnDemand;
@@ -111,28 +127,36 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
 
 
     private NotificationCompat.Builder activeNotificationCompatBuilder;
+    private OngoingNotificationRenderer ongoingNotificationRenderer;
     private NotificationCompat.Builder eventsNotificationCompatBuilder;
     private NotificationManager notificationManager;
 
     private NotificationManagerCompat notificationManagerCompat;
 
-    private final LinkedList<Spannable> activeNotifications = new LinkedList<>();
     private int lastQueueLength = 0;
 
     private boolean hasBeenStartedExplicitly = false;
 
+    private final List<EventChannel.Subscription> channelSubscriptions = new LinkedList<>();
+
     @Inject
     Preferences preferences;
 
     @Inject
     EventBus eventBus;
 
+    @Inject
+    EventChannels eventChannels;
+
     @Inject
     Scheduler scheduler;
 
     @Inject
     LocationProcessor locationProcessor;
 
+    @Inject
+    LocationPipeline locationPipeline;
+
     @Inject
     GeocoderProvider geocoderProvider;
 
@@ -148,6 +172,12 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
     @Inject
     WaypointsRepo waypointsRepo;
 
+    @Inject
+    TransitionEventLog transitionEventLog;
+
+    @Inject
+    ContactsStore contactsStore;
+
     @Inject
     ServiceBridge serviceBridge;
 
@@ -160,7 +190,9 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
         Timber.v("Background service onCreate. ThreadID: %s", Thread.currentThread());
         serviceBridge.bind(this);
         locationProviderClient = LocationServices.INSTANCE.getLocationProviderClient(this, preferences);
-        geofencingClient = LocationServices.INSTANCE.getGeofencingClient(this);
+        geofencingClient = LocationServices.INSTANCE.getGeofencingClient(this, this::onGeofencingEvent);
+        geofenceReconciler = new GeofenceReconciler(geofencingClient, getGeofencePendingIntent());
+        motionSensor = new MotionSensor(this, this::onMotionDetected);
         notificationManagerCompat = NotificationManagerCompat.from(this);
         notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
 
@@ -173,7 +205,11 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
             @Override
             public void onLocationResult(@NotNull LocationResult locationResult) {
                 Timber.d("BackgroundService Location result received: %s", locationResult);
-                onLocationChanged(locationResult.getLastLocation(), MessageLocation.REPORT_TYPE_DEFAULT);
+                if (locationResult.getLocations().size() > 1) {
+                    onLocationsChanged(locationResult.getLocations(), MessageLocation.REPORT_TYPE_DEFAULT);
+                } else {
+                    onLocationChanged(locationResult.getLastLocation(), MessageLocation.REPORT_TYPE_DEFAULT);
+                }
             }
         };
 
@@ -190,7 +226,8 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
             }
         };
 
-        startForeground(NOTIFICATION_ID_ONGOING, getOngoingNotification());
+        ongoingNotificationRenderer = new OngoingNotificationRenderer(notificationManager, NOTIFICATION_ID_ONGOING, NOTIFICATION_ONGOING_MIN_UPDATE_INTERVAL, new Handler(runThingsOnOtherThreads.getBackgroundLooper()), this::buildOngoingNotification);
+        startForeground(NOTIFICATION_ID_ONGOING, ongoingNotificationRenderer.render(getOngoingNotificationContent()));
 
         setupLocationRequest();
 
@@ -200,6 +237,9 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
 
         eventBus.register(this);
         eventBus.postSticky(new Events.ServiceStarted());
+        channelSubscriptions.add(eventChannels.getLocation().subscribe("BackgroundService", Dispatchers.getDefault(), this::onLocation));
+        channelSubscriptions.add(eventChannels.getEndpointState().subscribe("BackgroundService", Dispatchers.getMain(), this::onEndpointState));
+        channelSubscriptions.add(eventChannels.getQueueLength().subscribe("BackgroundService", Dispatchers.getMain(), this::onQueueLength));
 
         messageProcessor.initialize();
 
@@ -210,8 +250,17 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
     @Override
     public void onDestroy() {
         stopForeground(true);
+        ongoingNotificationRenderer.cancel();
         preferences.unregisterOnPreferenceChangedListener(this);
         messageProcessor.stopSendingMessages();
+        for (EventChannel.Subscription subscription : channelSubscriptions) {
+            subscription.cancel();
+        }
+        channelSubscriptions.clear();
+        motionSensor.disarm();
+        waypointsRepo.flushTransitionStates();
+        transitionEventLog.flush();
+        contactsStore.flush();
         super.onDestroy();
     }
 
@@ -232,7 +281,12 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
 
             switch (intent.getAction()) {
                 case INTENT_ACTION_SEND_LOCATION_USER:
-                    locationProcessor.publishLocationMessage(MessageLocation.REPORT_TYPE_USER);
+                    Location currentLocation = locationRepo.getCurrentLocation();
+                    if (currentLocation != null) {
+                        locationPipeline.submit(currentLocation, MessageLocation.REPORT_TYPE_USER);
+                    } else {
+                        Timber.e("no location available");
+                    }
                     return;
                 case INTENT_ACTION_SEND_EVENT_CIRCULAR:
                     onGeofencingEvent(GeofencingEvent.fromIntent(intent));
@@ -271,6 +325,8 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
     }
 
     private void exit() {
+        waypointsRepo.flushTransitionStates();
+        transitionEventLog.flush();
         stopSelf();
         scheduler.cancelAllTasks();
         killProcess(myPid());
@@ -298,7 +354,7 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
         notificationManager.notify(BACKGROUND_LOCATION_RESTRICTION_NOTIFICATION_TAG, 0, notification);
     }
 
-    @Nullable
+    @NonNull
     private NotificationCompat.Builder getOngoingNotificationBuilder() {
         if (activeNotificationCompatBuilder != null)
             return activeNotificationCompatBuilder;
@@ -337,30 +393,42 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
     }
 
     private void updateOngoingNotification() {
-        notificationManager.notify(NOTIFICATION_ID_ONGOING, getOngoingNotification());
+        ongoingNotificationRenderer.update(getOngoingNotificationContent());
     }
 
-    private Notification getOngoingNotification() {
-        NotificationCompat.Builder builder = getOngoingNotificationBuilder();
-
-        if (builder == null)
-            return null;
-
+    @NonNull
+    private OngoingNotificationRenderer.Content getOngoingNotificationContent() {
+        String title;
+        long timestamp = 0;
+        int number = 0;
         if (this.lastLocationMessage != null && preferences.getNotificationLocation()) {
-            builder.setContentTitle(this.lastLocationMessage.getGeocode());
-            builder.setWhen(TimeUnit.SECONDS.toMillis(this.lastLocationMessage.getTimestamp()));
-            builder.setNumber(lastQueueLength);
+            title = this.lastLocationMessage.getGeocode();
+            timestamp = TimeUnit.SECONDS.toMillis(this.lastLocationMessage.getTimestamp());
+            number = lastQueueLength;
         } else {
-            builder.setContentTitle(getString(R.string.app_name));
+            title = getString(R.string.app_name);
         }
 
+        String text;
         // Show monitoring mode if endpoint state is not interesting
         if (lastEndpointState == MessageProcessor.EndpointState.CONNECTED || lastEndpointState == MessageProcessor.EndpointState.IDLE) {
-            builder.setContentText(getMonitoringLabel(preferences.getMonitoring()));
+            text = getMonitoringLabel(preferences.getMonitoring());
         } else if (lastEndpointState == MessageProcessor.EndpointState.ERROR && lastEndpointState.getMessage() != null) {
-            builder.setContentText(lastEndpointState.getLabel(this) + ": " + lastEndpointState.getMessage());
+            text = lastEndpointState.getLabel(this) + ": " + lastEndpointState.getMessage();
         } else {
-            builder.setContentText(lastEndpointState.getLabel(this));
+            text = lastEndpointState.getLabel(this);
+        }
+        return new OngoingNotificationRenderer.Content(title, text, timestamp, number);
+    }
+
+    @NonNull
+    private Notification buildOngoingNotification(@NonNull OngoingNotificationRenderer.Content content) {
+        NotificationCompat.Builder builder = getOngoingNotificationBuilder();
+        builder.setContentTitle(content.getTitle());
+        builder.setContentText(content.getText());
+        builder.setNumber(content.getNumber());
+        if (content.getTimestamp() > 0) {
+            builder.setWhen(content.getTimestamp());
         }
         return builder.build();
     }
@@ -414,30 +482,31 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
         // Deliver notification
         Notification n = eventsNotificationCompatBuilder.build();
 
+        transitionEventLog.add(when, title, text);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            sendEventStackNotification(title, text, when);
+            sendEventStackNotification();
         } else {
             notificationManagerCompat.notify(notificationEventsID++, n);
         }
     }
 
     @RequiresApi(23)
-    private void sendEventStackNotification(String title, String text, long when) {
+    private void sendEventStackNotification() {
         Timber.v("SDK_INT >= 23, building stack notification");
 
-        String whenStr = DateFormatter.formatDate(TimeUnit.MILLISECONDS.toSeconds((when)));
-
-        Spannable newLine = new SpannableString(String.format("%s %s %s", whenStr, title, text));
-        newLine.setSpan(new StyleSpan(Typeface.BOLD), 0, whenStr.length() + 1, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-        activeNotifications.push(newLine);
-        Timber.v("groupedNotifications: %s", activeNotifications.size());
-        String summary = getResources().getQuantityString(R.plurals.notificationEventsTitle, activeNotifications.size(), activeNotifications.size());
+        int unseen = transitionEventLog.getUnseenCount();
+        Timber.v("groupedNotifications: %s", unseen);
+        String summary = getResources().getQuantityString(R.plurals.notificationEventsTitle, unseen, unseen);
 
         NotificationCompat.InboxStyle inbox = new NotificationCompat.InboxStyle();
         inbox.setSummaryText(summary);
 
-        for (Spannable n : activeNotifications) {
-            inbox.addLine(n);
+        // Only the latest few lines are ever shown, so there's no point rendering the rest
+        for (TransitionEventLog.Event event : transitionEventLog.recent(Math.min(unseen, NOTIFICATION_EVENT_GROUP_MAX_LINES))) {
+            String whenStr = DateFormatter.formatDate(TimeUnit.MILLISECONDS.toSeconds(event.getTimestamp()));
+            Spannable line = new SpannableString(String.format("%s %s %s", whenStr, event.getTitle(), event.getText()));
+            line.setSpan(new StyleSpan(Typeface.BOLD), 0, whenStr.length() + 1, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            inbox.addLine(line);
         }
 
         NotificationCompat.Builder builder = new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_EVENTS)
@@ -451,9 +520,9 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
                 .setSmallIcon(R.drawable.ic_owntracks_80)
                 .setLocalOnly(true)
                 .setDefaults(Notification.DEFAULT_ALL)
-                .setNumber(activeNotifications.size())
+                .setNumber(unseen)
                 .setStyle(inbox)
-                .setContentIntent(PendingIntent.getActivity(this, (int) System.currentTimeMillis() / 1000, new Intent(this, MapActivity.class), PendingIntent.FLAG_ONE_SHOT))
+                .setContentIntent(PendingIntent.getActivity(this, (int) System.currentTimeMillis() / 1000, new Intent(this, TransitionEventsActivity.class), PendingIntent.FLAG_ONE_SHOT))
                 .setDeleteIntent(PendingIntent.getService(this, INTENT_REQUEST_CODE_CLEAR_EVENTS, (new Intent(this, BackgroundService.class)).setAction(INTENT_ACTION_CLEAR_NOTIFICATIONS), PendingIntent.FLAG_ONE_SHOT));
 
         Notification stackNotification = builder.build();
@@ -463,7 +532,7 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
 
     private void clearEventStackNotification() {
         Timber.v("clearing notification stack");
-        activeNotifications.clear();
+        transitionEventLog.markSeen();
     }
 
     private void onGeofencingEvent(@Nullable final GeofencingEvent event) {
@@ -474,6 +543,9 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
 
         if (event.hasError()) {
             Timber.e("geofencingEvent hasError: %s", event.getErrorCode());
+            // Most likely location has been turned off and the geofences have been dropped, so they
+            // need registering again from scratch next time round
+            geofenceReconciler.reset();
             return;
         }
 
@@ -484,7 +556,7 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
                 Timber.e("waypoint id %s not found for geofence event", event.getTriggeringGeofences().get(index).getRequestId());
                 continue;
             }
-            locationProcessor.onWaypointTransition(w, event.getTriggeringLocation(), transition, MessageTransition.TRIGGER_CIRCULAR);
+            locationPipeline.submitTransition(w, event.getTriggeringLocation(), transition, MessageTransition.TRIGGER_CIRCULAR);
         }
     }
 
@@ -494,11 +566,38 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
             return;
         }
         Timber.v("location update received: tst:%s, acc:%s, lat:%s, lon:%s type:%s", location.getTime(), location.getAccuracy(), location.getLatitude(), location.getLongitude(), reportType);
+        geofenceReconciler.onLocation(location.getLatitude(), location.getLongitude());
+        updateMotion(location);
+        locationPipeline.submit(location, reportType);
+    }
 
-        if (location.getTime() > locationRepo.getCurrentLocationTime()) {
-            locationProcessor.onLocationChanged(location, reportType);
-        } else {
-            Timber.v("Not re-sending message with same timestamp as last");
+    private void onLocationsChanged(@NonNull List<Location> locations, @Nullable String reportType) {
+        Timber.v("batch of %d location updates received", locations.size());
+        Location latest = locations.get(locations.size() - 1);
+        geofenceReconciler.onLocation(latest.getLatitude(), latest.getLongitude());
+        for (Location location : locations) {
+            updateMotion(location);
+        }
+        locationPipeline.submitAll(locations, reportType);
+    }
+
+    /**
+     * In move mode, the location request follows how the device is moving
+     */
+    private void updateMotion(@NonNull Location location) {
+        if (preferences.getMonitoring() != LocationProcessor.MONITORING_MOVE) {
+            return;
+        }
+        if (samplingController.onLocation(location.getLatitude(), location.getLongitude(), location.getAccuracy(), location.hasSpeed() ? location.getSpeed() : null, location.getTime())) {
+            Timber.d("Motion changed to %s", samplingController.getMotion());
+            setupLocationRequest();
+        }
+    }
+
+    private void onMotionDetected() {
+        if (samplingController.onMotionDetected()) {
+            Timber.d("Motion sensor woke location updates");
+            setupLocationRequest();
         }
     }
 
@@ -548,10 +647,20 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
                 request.setPriority(getLocationRequestPriority());
                 break;
             case LocationProcessor.MONITORING_MOVE:
-                request.setInterval(TimeUnit.SECONDS.toMillis(preferences.getMoveModeLocatorInterval()));
-                request.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+                AdaptiveSamplingController.Profile profile = samplingController.profile(TimeUnit.SECONDS.toMillis(preferences.getMoveModeLocatorInterval()), motionSensor.isAvailable());
+                request.setInterval(profile.getInterval());
+                request.setPriority(profile.getPriority());
+                request.setSmallestDisplacement(profile.getSmallestDisplacement());
+                if (preferences.isExperimentalFeatureEnabled(Preferences.EXPERIMENTAL_FEATURE_BATCH_MOVE_MODE_LOCATIONS)) {
+                    request.setMaxWaitTime(profile.getInterval() * MOVE_MODE_BATCH_SIZE);
+                }
                 break;
         }
+        if (monitoring == LocationProcessor.MONITORING_MOVE && samplingController.getMotion() == AdaptiveSamplingController.Motion.STATIONARY) {
+            motionSensor.arm();
+        } else {
+            motionSensor.disarm();
+        }
         Timber.d("Location update request params: %s", request);
         locationProviderClient.flushLocations();
         locationProviderClient.requestLocationUpdates(request, locationCallback, runThingsOnOtherThreads.getBackgroundLooper());
@@ -587,16 +696,16 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
         Timber.d("loader thread:%s, isMain:%s", Looper.myLooper(), Looper.myLooper() == Looper.getMainLooper());
 
         LinkedList<Geofence> geofences = new LinkedList<>();
-        List<WaypointModel> loadedWaypoints = waypointsRepo.getAllWithGeofences();
-
+        WaypointsSnapshot loadedWaypoints = waypointsRepo.getGeofenceSnapshot();
 
-        for (WaypointModel w : loadedWaypoints) {
+        for (int i = 0; i < loadedWaypoints.getSize(); i++) {
+            WaypointModel w = loadedWaypoints.getWaypoint(i);
             Timber.d("id:%s, desc:%s, lat:%s, lon:%s, rad:%s", w.getId(), w.getDescription(), w.getGeofenceLatitude(), w.getGeofenceLongitude(), w.getGeofenceRadius());
 
             try {
                 geofences.add(
                         new Geofence(
-                                Long.toString(w.getId()),
+                                Long.toString(w.getTst()),
                                 Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT,
                                 (int) TimeUnit.MINUTES.toMillis(2),
                                 w.getGeofenceLatitude(),
@@ -611,9 +720,11 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
             }
         }
 
-        if (geofences.size() > 0) {
-            GeofencingRequest request = new GeofencingRequest(Geofence.GEOFENCE_TRANSITION_ENTER, geofences);
-            geofencingClient.addGeofences(request, getGeofencePendingIntent());
+        Location currentLocation = locationRepo.getCurrentLocation();
+        if (currentLocation != null) {
+            geofenceReconciler.setGeofences(geofences, currentLocation.getLatitude(), currentLocation.getLongitude());
+        } else {
+            geofenceReconciler.setGeofences(geofences, null, null);
         }
     }
 
@@ -621,15 +732,10 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
         return ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_DENIED;
     }
 
-    private void removeGeofences() {
-        geofencingClient.removeGeofences(getGeofencePendingIntent());
-    }
-
     @Subscribe(threadMode = ThreadMode.BACKGROUND)
     public void onEvent(Events.WaypointAdded e) {
         locationProcessor.publishWaypointMessage(e.getWaypointModel()); // TODO: move to waypointsRepo
         if (e.getWaypointModel().hasGeofence()) {
-            removeGeofences();
             setupGeofences();
         }
     }
@@ -637,21 +743,26 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
     @Subscribe(threadMode = ThreadMode.BACKGROUND)
     public void onEvent(Events.WaypointUpdated e) {
         locationProcessor.publishWaypointMessage(e.getWaypointModel()); // TODO: move to waypointsRepo
-        removeGeofences();
         setupGeofences();
     }
 
     @Subscribe(threadMode = ThreadMode.BACKGROUND)
     public void onEvent(Events.WaypointRemoved e) {
         if (e.getWaypointModel().hasGeofence()) {
-            removeGeofences();
             setupGeofences();
         }
     }
 
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onEvent(Events.WaypointsBulkChanged e) {
+        for (WaypointModel waypointModel : e.getAdded()) {
+            locationProcessor.publishWaypointMessage(waypointModel);
+        }
+        setupGeofences();
+    }
+
     @Subscribe(threadMode = ThreadMode.BACKGROUND)
     public void onEvent(Events.ModeChanged e) {
-        removeGeofences();
         setupGeofences();
         setupLocationRequest();
         updateOngoingNotification();
@@ -659,6 +770,7 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
 
     @Subscribe(threadMode = ThreadMode.BACKGROUND)
     public void onEvent(Events.MonitoringChanged e) {
+        samplingController.reset();
         setupLocationRequest();
         updateOngoingNotification();
     }
@@ -670,8 +782,7 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
             sendEventNotification(message);
     }
 
-    @Subscribe(threadMode = ThreadMode.BACKGROUND)
-    public void onEvent(Location location) {
+    private void onLocation(Location location) {
         MessageLocation messageLocation = MessageLocation.fromLocation(location);
         if (lastLocationMessage == null || lastLocationMessage.getTimestamp() < messageLocation.getTimestamp()) {
             this.lastLocationMessage = messageLocation;
@@ -685,23 +796,21 @@ public class BackgroundService extends Service implements OnModeChangedPreferenc
         }
     }
 
-    @Subscribe(sticky = true)
-    public void onEvent(MessageProcessor.EndpointState state) {
+    private void onEndpointState(MessageProcessor.EndpointState state) {
         Timber.d(state.getError(), "endpoint state changed %s. Message: %s", state.getLabel(this), state.getMessage());
         this.lastEndpointState = state;
         updateOngoingNotification();
     }
 
-    @Subscribe(sticky = true)
-    public void onEvent(Events.QueueChanged e) {
-        this.lastQueueLength = e.getNewLength();
+    private void onQueueLength(int queueLength) {
+        this.lastQueueLength = queueLength;
         updateOngoingNotification();
     }
 
     @Subscribe(sticky = true, threadMode = ThreadMode.BACKGROUND)
     public void onEvent(Events.PermissionGranted event) {
         Timber.d("location permission granted");
-        removeGeofences();
+        geofenceReconciler.reset();
         setupGeofences();
         Timber.d("Getting last location");
         Location lastLocation = locationProviderClient.getLastLocation();
@@ -0,0 +1,150 @@
+package org.owntracks.android.services
+
+import android.location.Location
+import org.owntracks.android.data.WaypointModel
+import org.owntracks.android.data.repos.LocationRepo
+import org.owntracks.android.model.messages.MessageLocation
+import timber.log.Timber
+import java.util.ArrayDeque
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Hands fixes over to the [LocationProcessor] on a dedicated worker thread, so that location
+ * callbacks and the UI never wait on filtering, region evaluation, message building or queueing.
+ *
+ * Work is held in a queue, drained in order by a single consumer. If the worker falls far enough
+ * behind for the queue to fill up, the oldest single fix is dropped to make room. Anything else that
+ * evaluates regions or publishes locations (batches, pings, platform geofence transitions) goes
+ * through the same queue, so that it's never done alongside the processing of a fix, but is never
+ * dropped: if there's no single fix left to drop, the queue grows instead.
+ */
+@Singleton
+class LocationPipeline internal constructor(
+    private val locationProcessor: LocationProcessor,
+    private val locationRepo: LocationRepo,
+    private val worker: Executor
+) {
+    @Inject
+    constructor(locationProcessor: LocationProcessor, locationRepo: LocationRepo) : this(
+        locationProcessor,
+        locationRepo,
+        Executors.newSingleThreadExecutor { Thread(it, THREAD_NAME) }
+    )
+
+    private sealed class Task {
+        abstract val trigger: String?
+
+        class Fix(val location: Location, override val trigger: String?) : Task()
+        class Batch(val locations: List<Location>, override val trigger: String?) : Task()
+        class CurrentLocation(override val trigger: String?) : Task()
+        class WaypointTransition(
+            val waypoint: WaypointModel,
+            val location: Location,
+            val transition: Int,
+            override val trigger: String
+        ) : Task()
+    }
+
+    private val tasks = ArrayDeque<Task>(CAPACITY)
+    private var draining = false
+    private var dropped = 0
+
+    /**
+     * Queues a fix for processing, and returns straight away.
+     */
+    fun submit(location: Location, trigger: String?) {
+        enqueue(Task.Fix(location, trigger))
+    }
+
+    /**
+     * Queues a batch of fixes, oldest first, to be processed together.
+     */
+    fun submitAll(locations: List<Location>, trigger: String?) {
+        if (locations.isNotEmpty()) {
+            enqueue(Task.Batch(ArrayList(locations), trigger))
+        }
+    }
+
+    /**
+     * Queues publishing the current location again, e.g. for a ping.
+     */
+    fun submit(trigger: String?) {
+        enqueue(Task.CurrentLocation(trigger))
+    }
+
+    /**
+     * Queues a transition reported by the platform's geofencing.
+     */
+    fun submitTransition(waypoint: WaypointModel, location: Location, transition: Int, trigger: String) {
+        enqueue(Task.WaypointTransition(waypoint, location, transition, trigger))
+    }
+
+    private fun enqueue(task: Task) {
+        val startWorker: Boolean
+        synchronized(this) {
+            if (tasks.size >= CAPACITY) {
+                val oldestFix = tasks.iterator()
+                while (oldestFix.hasNext()) {
+                    if (oldestFix.next() is Task.Fix) {
+                        oldestFix.remove()
+                        dropped++
+                        break
+                    }
+                }
+            }
+            tasks.addLast(task)
+            startWorker = !draining
+            draining = true
+        }
+        if (startWorker) {
+            worker.execute(this::drain)
+        }
+    }
+
+    private fun drain() {
+        while (true) {
+            val task: Task
+            synchronized(this) {
+                if (dropped > 0) {
+                    Timber.w("Location pipeline full, dropped %d fixes", dropped)
+                    dropped = 0
+                }
+                if (tasks.isEmpty()) {
+                    draining = false
+                    return
+                }
+                task = tasks.removeFirst()
+            }
+            try {
+                process(task)
+            } catch (e: Exception) {
+                Timber.e(e, "Error processing location")
+            }
+        }
+    }
+
+    private fun process(task: Task) {
+        when (task) {
+            is Task.Fix -> {
+                // A user asking to send their location again should get what they asked for
+                if (task.trigger != MessageLocation.REPORT_TYPE_USER && task.location.time <= locationRepo.currentLocationTime) {
+                    Timber.v("Not re-sending message with same timestamp as last")
+                    return
+                }
+                locationProcessor.onLocationChanged(task.location, task.trigger)
+            }
+            is Task.Batch -> locationProcessor.onLocationsChanged(task.locations, task.trigger)
+            is Task.CurrentLocation -> locationProcessor.publishLocationMessage(task.trigger)
+            is Task.WaypointTransition ->
+                locationProcessor.onWaypointTransition(task.waypoint, task.location, task.transition, task.trigger)
+        }
+    }
+
+    companion object {
+        internal const val CAPACITY = 64
+        private const val THREAD_NAME = "locationPipeline"
+    }
+}
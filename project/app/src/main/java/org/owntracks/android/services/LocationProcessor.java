@@ -8,17 +8,20 @@ import androidx.annotation.Nullable;
 import org.owntracks.android.data.WaypointModel;
 import org.owntracks.android.data.repos.LocationRepo;
 import org.owntracks.android.data.repos.WaypointsRepo;
+import org.owntracks.android.data.repos.WaypointsSnapshot;
+import org.owntracks.android.location.LocationFilter;
 import org.owntracks.android.location.geofencing.Geofence;
 import org.owntracks.android.model.messages.MessageLocation;
 import org.owntracks.android.model.messages.MessageTransition;
 import org.owntracks.android.model.messages.MessageWaypoint;
 import org.owntracks.android.model.messages.MessageWaypoints;
-import org.owntracks.android.support.DeviceMetricsProvider;
+import org.owntracks.android.support.DeviceStateSnapshot;
 import org.owntracks.android.support.MessageWaypointCollection;
 import org.owntracks.android.support.Preferences;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -32,8 +35,8 @@ public class LocationProcessor {
     private final Preferences preferences;
     private final LocationRepo locationRepo;
     private final WaypointsRepo waypointsRepo;
-    private final DeviceMetricsProvider deviceMetricsProvider;
-    private final WifiInfoProvider wifiInfoProvider;
+    private final DeviceStateSnapshot deviceState;
+    private final LocationFilter locationFilter = new LocationFilter();
 
     public static final int MONITORING_QUIET = -1;
     public static final int MONITORING_MANUAL = 0;
@@ -42,13 +45,12 @@ public class LocationProcessor {
 
 
     @Inject
-    public LocationProcessor(MessageProcessor messageProcessor, Preferences preferences, LocationRepo locationRepo, WaypointsRepo waypointsRepo, DeviceMetricsProvider deviceMetricsProvider, WifiInfoProvider wifiInfoProvider) {
+    public LocationProcessor(MessageProcessor messageProcessor, Preferences preferences, LocationRepo locationRepo, WaypointsRepo waypointsRepo, DeviceStateSnapshot deviceState) {
         this.messageProcessor = messageProcessor;
         this.preferences = preferences;
-        this.deviceMetricsProvider = deviceMetricsProvider;
+        this.deviceState = deviceState;
         this.locationRepo = locationRepo;
         this.waypointsRepo = waypointsRepo;
-        this.wifiInfoProvider = wifiInfoProvider;
     }
 
     private boolean ignoreLowAccuracy(@NonNull Location l) {
@@ -56,6 +58,39 @@ public class LocationProcessor {
         return threshold > 0 && l.getAccuracy() > threshold;
     }
 
+    private boolean isFiltered(@NonNull Location l, @Nullable String reportType) {
+        return Objects.equals(reportType, MessageLocation.REPORT_TYPE_DEFAULT) && !ignoreLowAccuracy(l);
+    }
+
+    /**
+     * Runs a fix through the pre-publish filter. Only regular location updates are filtered, as any
+     * other report was explicitly asked for.
+     */
+    @NonNull
+    private LocationFilter.Verdict filterLocation(@NonNull Location l, @Nullable String reportType) {
+        if (!isFiltered(l, reportType)) {
+            return LocationFilter.Verdict.ACCEPT;
+        }
+        locationFilter.configure(preferences.getLocationFilterMinDistance(), preferences.getLocationFilterMinInterval(), preferences.getLocationFilterMaxSpeed(), preferences.getLocationFilterSmoothing());
+        return locationFilter.filter(l.getLatitude(), l.getLongitude(), l.getAccuracy(), l.getTime());
+    }
+
+    /**
+     * The location to publish for a fix that's just been through {@link #filterLocation}: a copy
+     * moved to the smoothed position if smoothing is enabled, otherwise the fix itself. The fix is
+     * never changed, as it's shared with everything else that uses it.
+     */
+    @NonNull
+    private Location smoothed(@NonNull Location l, @Nullable String reportType) {
+        if (!preferences.getLocationFilterSmoothing() || !isFiltered(l, reportType)) {
+            return l;
+        }
+        Location smoothed = new Location(l);
+        smoothed.setLatitude(locationFilter.getLatitude());
+        smoothed.setLongitude(locationFilter.getLongitude());
+        return smoothed;
+    }
+
     public void publishLocationMessage(@Nullable String trigger) {
         Timber.v("trigger: %s. ThreadID: %s", trigger, Thread.currentThread());
         if (!locationRepo.hasLocation()) {
@@ -64,61 +99,122 @@ public class LocationProcessor {
         }
 
         Location currentLocation = locationRepo.getCurrentLocation();
-        List<WaypointModel> loadedWaypoints = waypointsRepo.getAllWithGeofences();
 
         assert currentLocation != null;
+        publishLocationMessage(currentLocation, currentLocation, trigger);
+    }
+
+    /**
+     * @param published what to publish for the current location, which may be smoothed
+     */
+    private void publishLocationMessage(@NonNull Location currentLocation, @NonNull Location published, @Nullable String trigger) {
         if (ignoreLowAccuracy(currentLocation)) {
             return;
         }
 
+        detectRegionTransitions(currentLocation, trigger);
+
+        if (isSuppressedByMonitoring(trigger)) {
+            return;
+        }
+
+        // Fetched again, as any transitions above will have replaced the snapshot
+        messageProcessor.queueMessageForSending(createLocationMessage(published, trigger, waypointsRepo.getGeofenceSnapshot().getInregions(), true));
+    }
+
+    private void detectRegionTransitions(@NonNull Location currentLocation, @Nullable String trigger) {
+        WaypointsSnapshot waypoints = waypointsRepo.getGeofenceSnapshot();
+
         // Check if publish would trigger a region if fusedRegionDetection is enabled
-        if (loadedWaypoints.size() > 0 && preferences.getFusedRegionDetection() && !MessageLocation.REPORT_TYPE_CIRCULAR.equals(trigger)) {
-            for (WaypointModel waypoint : loadedWaypoints) {
-                onWaypointTransition(waypoint, currentLocation, currentLocation.distanceTo(waypoint.getLocation()) <= waypoint.getGeofenceRadius() ? Geofence.GEOFENCE_TRANSITION_ENTER : Geofence.GEOFENCE_TRANSITION_EXIT, MessageTransition.TRIGGER_LOCATION);
+        // Only waypoints whose state has changed are handed on, as the rest would be ignored as duplicates anyway
+        if (waypoints.getSize() > 0 && preferences.getFusedRegionDetection() && !MessageLocation.REPORT_TYPE_CIRCULAR.equals(trigger)) {
+            float[] distance = new float[1];
+            for (int i = 0; i < waypoints.getSize(); i++) {
+                int transition = waypoints.contains(i, currentLocation, distance) ? Geofence.GEOFENCE_TRANSITION_ENTER : Geofence.GEOFENCE_TRANSITION_EXIT;
+                if (transition != waypoints.getLastTransition(i)) {
+                    onWaypointTransition(waypoints.getWaypoint(i), currentLocation, transition, MessageTransition.TRIGGER_LOCATION);
+                }
             }
         }
+    }
 
+    private boolean isSuppressedByMonitoring(@Nullable String trigger) {
         if (preferences.getMonitoring() == MONITORING_QUIET && !MessageLocation.REPORT_TYPE_USER.equals(trigger)) {
             Timber.v("message suppressed by monitoring settings: quiet");
-            return;
+            return true;
         }
 
         if (preferences.getMonitoring() == MONITORING_MANUAL && (!MessageLocation.REPORT_TYPE_USER.equals(trigger) && !MessageLocation.REPORT_TYPE_CIRCULAR.equals(trigger))) {
             Timber.v("message suppressed by monitoring settings: manual");
-            return;
+            return true;
         }
+        return false;
+    }
 
-        MessageLocation message;
-
-        if (preferences.getPubLocationExtendedData()) {
-            message = MessageLocation.fromLocationAndWifiInfo(currentLocation, wifiInfoProvider);
-            message.setBattery(deviceMetricsProvider.getBatteryLevel());
-            message.setBatteryStatus(deviceMetricsProvider.getBatteryStatus());
-            message.setConn(deviceMetricsProvider.getConnectionType());
-        } else {
-            message = MessageLocation.fromLocation(currentLocation);
-        }
+    /**
+     * @param withDeviceState whether to attach the current WiFi, battery and connection state, which
+     *                        only describe the device now, so are left off older batched locations
+     */
+    @NonNull
+    private MessageLocation createLocationMessage(@NonNull Location location, @Nullable String trigger, @NonNull List<String> inregions, boolean withDeviceState) {
+        MessageLocation message = withDeviceState && preferences.getPubLocationExtendedData()
+                ? MessageLocation.fromLocationAndDeviceState(location, deviceState)
+                : MessageLocation.fromLocation(location);
         message.setTrigger(trigger);
         message.setTrackerId(preferences.getTrackerId(true));
-        message.setInregions(calculateInregions(loadedWaypoints));
-
-        messageProcessor.queueMessageForSending(message);
+        message.setInregions(inregions);
+        return message;
     }
 
-    //TODO: refactor to use ObjectBox query directly
-    private List<String> calculateInregions(List<WaypointModel> loadedWaypoints) {
-        LinkedList<String> l = new LinkedList<>();
-        for (WaypointModel w : loadedWaypoints) {
-            if (w.getLastTransition() == Geofence.GEOFENCE_TRANSITION_ENTER)
-                l.add(w.getDescription());
-
+    public void onLocationChanged(@NonNull Location l, @Nullable String reportType) {
+        LocationFilter.Verdict verdict = filterLocation(l, reportType);
+        if (verdict == LocationFilter.Verdict.OUTLIER) {
+            Timber.d("ignoring location: implied speed too high");
+            return;
+        }
+        locationRepo.setCurrentLocation(l);
+        if (verdict == LocationFilter.Verdict.ACCEPT) {
+            publishLocationMessage(l, smoothed(l, reportType), reportType);
+        } else {
+            // Not worth publishing, but still good enough to tell whether we've entered or left a region
+            Timber.v("location not published: %s", verdict);
+            if (!ignoreLowAccuracy(l)) {
+                detectRegionTransitions(l, reportType);
+            }
         }
-        return l;
     }
 
-    public void onLocationChanged(@NonNull Location l, @Nullable String reportType) {
-        locationRepo.setCurrentLocation(l);
-        publishLocationMessage(reportType);
+    /**
+     * Handles a batch of fixes delivered together, oldest first. The earlier fixes are queued as plain
+     * location messages in one pass, and only the most recent is handled as the current location, so
+     * region detection runs once, against where the device is now.
+     */
+    public void onLocationsChanged(@NonNull List<Location> locations, @Nullable String reportType) {
+        long lastTime = locationRepo.getCurrentLocationTime();
+        List<Location> fresh = new ArrayList<>(locations.size());
+        for (Location l : locations) {
+            if (l.getTime() > lastTime && !ignoreLowAccuracy(l)) {
+                fresh.add(l);
+                lastTime = l.getTime();
+            }
+        }
+        if (fresh.isEmpty()) {
+            Timber.v("No new locations in batch of %d", locations.size());
+            return;
+        }
+        Location latest = fresh.remove(fresh.size() - 1);
+        if (!fresh.isEmpty() && !isSuppressedByMonitoring(reportType)) {
+            List<String> inregions = waypointsRepo.getGeofenceSnapshot().getInregions();
+            int published = 0;
+            for (Location l : fresh) {
+                if (filterLocation(l, reportType) == LocationFilter.Verdict.ACCEPT) {
+                    messageProcessor.queueMessageForSending(createLocationMessage(smoothed(l, reportType), reportType, inregions, false));
+                    published++;
+                }
+            }
+            Timber.v("Published %d of %d batched locations", published, fresh.size());
+        }
+        onLocationChanged(latest, reportType);
     }
 
 
@@ -135,13 +231,13 @@ public class LocationProcessor {
         if (((transition == waypointModel.getLastTransition()) || (waypointModel.isUnknown() && transition == Geofence.GEOFENCE_TRANSITION_EXIT))) {
             Timber.d("ignoring initial or duplicate transition: %s", waypointModel.getDescription());
             waypointModel.setLastTransition(transition);
-            waypointsRepo.update(waypointModel, false);
+            waypointsRepo.updateTransitionState(waypointModel);
             return;
         }
 
         waypointModel.setLastTransition(transition);
         waypointModel.setLastTriggeredNow();
-        waypointsRepo.update(waypointModel, false);
+        waypointsRepo.updateTransitionState(waypointModel);
 
         if (preferences.getMonitoring() == MONITORING_QUIET) {
             Timber.v("message suppressed by monitoring settings: %s", preferences.getMonitoring());
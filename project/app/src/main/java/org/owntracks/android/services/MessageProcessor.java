@@ -19,6 +19,7 @@ import org.owntracks.android.model.messages.MessageLocation;
 import org.owntracks.android.model.messages.MessageTransition;
 import org.owntracks.android.model.messages.MessageUnknown;
 import org.owntracks.android.services.worker.Scheduler;
+import org.owntracks.android.support.EventChannels;
 import org.owntracks.android.support.Events;
 import org.owntracks.android.support.Parser;
 import org.owntracks.android.support.Preferences;
@@ -27,14 +28,9 @@ import org.owntracks.android.support.ServiceBridge;
 import org.owntracks.android.support.interfaces.ConfigurationIncompleteException;
 import org.owntracks.android.support.interfaces.StatefulServiceMessageProcessor;
 
-import java.io.IOException;
 import java.util.Locale;
 import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -54,7 +50,7 @@ public class MessageProcessor {
     private final Scheduler scheduler;
     private final Lazy<LocationProcessor> locationProcessorLazy;
 
-    private final Events.QueueChanged queueEvent = new Events.QueueChanged();
+    private final EventChannels eventChannels;
     private final ServiceBridge serviceBridge;
     private final CountingIdlingResource outgoingQueueIdlingResource;
     private final RunThingsOnOtherThreads runThingsOnOtherThreads;
@@ -62,10 +58,7 @@ public class MessageProcessor {
 
     private boolean acceptMessages = false;
     private final BlockingDeque<MessageBase> outgoingQueue;
-    private Thread backgroundDequeueThread;
-
-    private static final long SEND_FAILURE_BACKOFF_INITIAL_WAIT = TimeUnit.SECONDS.toMillis(1);
-    private static final long SEND_FAILURE_BACKOFF_MAX_WAIT = TimeUnit.MINUTES.toMillis(2);
+    private final OutgoingMessageSender outgoingMessageSender;
 
     private boolean initialized = false;
 
@@ -81,7 +74,8 @@ public class MessageProcessor {
             ServiceBridge serviceBridge,
             RunThingsOnOtherThreads runThingsOnOtherThreads,
             CountingIdlingResource outgoingQueueIdlingResource,
-            Lazy<LocationProcessor> locationProcessorLazy
+            Lazy<LocationProcessor> locationProcessorLazy,
+            EventChannels eventChannels
     ) {
         this.applicationContext = applicationContext;
         this.preferences = preferences;
@@ -93,6 +87,7 @@ public class MessageProcessor {
         this.locationProcessorLazy = locationProcessorLazy;
         this.serviceBridge = serviceBridge;
         this.outgoingQueueIdlingResource = outgoingQueueIdlingResource;
+        this.eventChannels = eventChannels;
         this.eventBus.register(this);
         this.runThingsOnOtherThreads = runThingsOnOtherThreads;
 
@@ -102,6 +97,7 @@ public class MessageProcessor {
                 outgoingQueueIdlingResource.increment();
             }
         }
+        outgoingMessageSender = new OutgoingMessageSender(outgoingQueue, outgoingQueueIdlingResource, runThingsOnOtherThreads.getNetworkDispatcher());
     }
 
     synchronized public void initialize() {
@@ -177,10 +173,12 @@ public class MessageProcessor {
     private void loadOutgoingMessageProcessor() {
         Timber.d("Reloading outgoing message processor. ThreadID: %s", Thread.currentThread());
         if (endpoint != null) {
+            // Stop sending through the old endpoint before it goes away
+            outgoingMessageSender.stop();
             endpoint.onDestroy();
         }
 
-        eventBus.postSticky(queueEvent.withNewLength(outgoingQueue.size()));
+        eventChannels.getQueueLength().post(outgoingQueue.size());
 
         switch (preferences.getMode()) {
             case MessageProcessorEndpointHttp.MODE_ID:
@@ -192,11 +190,7 @@ public class MessageProcessor {
 
         }
 
-        if (backgroundDequeueThread == null || !backgroundDequeueThread.isAlive()) {
-            // Create the background thread that will handle outbound msgs
-            backgroundDequeueThread = new Thread(this::sendAvailableMessages, "backgroundDequeueThread");
-            backgroundDequeueThread.start();
-        }
+        outgoingMessageSender.start(this.endpoint);
 
         this.endpoint.onCreateFromProcessor();
         acceptMessages = true;
@@ -215,97 +209,8 @@ public class MessageProcessor {
                 }
             }
         }
-        eventBus.postSticky(queueEvent.withNewLength(outgoingQueue.size()));
-    }
-
-    // Should be on the background thread here, because we block
-    private void sendAvailableMessages() {
-        Timber.d("Starting outbound message loop. ThreadID: %s", Thread.currentThread());
-        boolean previousMessageFailed = false;
-        int retriesToGo = 0;
-        long retryWait = SEND_FAILURE_BACKOFF_INITIAL_WAIT;
-        while (true) {
-            try {
-                MessageBase message;
-                message = this.outgoingQueue.take(); // <--- blocks
-                if (!previousMessageFailed) {
-                    retriesToGo = message.getNumberOfRetries();
-                }
-
-                /*
-                We need to run the actual network sending part on a different thread because the
-                implementation might not be thread-safe. So we wrap `sendMessage()` up in a callable
-                and a FutureTask and then dispatch it off to the network thread, and block on the
-                return, handling any exceptions that might have been thrown.
-                */
-                Callable<Void> sendMessageCallable = () -> {
-                    this.endpoint.sendMessage(message);
-                    return null;
-                };
-                FutureTask<Void> futureTask = new FutureTask<>(sendMessageCallable);
-                runThingsOnOtherThreads.postOnNetworkHandlerDelayed(futureTask, 1);
-                try {
-                    try {
-                        futureTask.get();
-                    } catch (ExecutionException e) {
-                        if (e.getCause() != null) {
-                            throw e.getCause();
-                        } else {
-                            throw new Exception("sendMessage failed, but no exception actually given");
-                        }
-                    }
-                    previousMessageFailed = false;
-                    retryWait = SEND_FAILURE_BACKOFF_INITIAL_WAIT;
-                } catch (OutgoingMessageSendingException | ConfigurationIncompleteException e) {
-                    Timber.w(("Error sending message. Re-queueing"));
-                    // Let's do a little dance to hammer this failed message back onto the head of the
-                    // queue. If someone's queued something on the tail in the meantime and the queue
-                    // is now empty, then throw that latest message away.
-                    synchronized (this.outgoingQueue) {
-                        if (!this.outgoingQueue.offerFirst(message)) {
-                            MessageBase tailMessage = this.outgoingQueue.removeLast();
-                            Timber.w("Queue full when trying to re-queue failed message. Dropping last message: %s", tailMessage);
-                            if (!this.outgoingQueue.offerFirst(message)) {
-                                Timber.e("Couldn't restore failed message back onto the head of the queue, dropping: %s", message);
-                            }
-                        }
-                    }
-                    previousMessageFailed = true;
-                    retriesToGo -= 1;
-                } catch (IOException e) {
-                    retryWait = SEND_FAILURE_BACKOFF_INITIAL_WAIT;
-                    previousMessageFailed = false;
-                    // Deserialization failure, drop and move on
-                } catch (Throwable e) {
-                    Timber.e(e, "Unhandled exception in sending message");
-                    previousMessageFailed = false;
-                }
-
-                if (previousMessageFailed && retriesToGo <= 0) {
-                    previousMessageFailed = false;
-                }
-
-                if (previousMessageFailed) {
-                    Timber.i("Waiting for %s s before retrying", retryWait / 1000);
-                    Thread.sleep(retryWait);
-                    retryWait = Math.min(2 * retryWait, SEND_FAILURE_BACKOFF_MAX_WAIT);
-                } else {
-                    synchronized (outgoingQueueIdlingResource) {
-                        try {
-                            if (!outgoingQueueIdlingResource.isIdleNow()) {
-                                outgoingQueueIdlingResource.decrement();
-                            }
-                        } catch (IllegalStateException e) {
-                            Timber.w(e, "outgoingQueueIdlingResource is invalid");
-                        }
-                    }
-                }
-            } catch (InterruptedException e) {
-                Timber.i(e, "Outgoing message loop interrupted");
-                break;
-            }
-        }
-        Timber.w("Exiting outgoingmessage loop");
+        outgoingMessageSender.onMessageQueued();
+        eventChannels.getQueueLength().post(outgoingQueue.size());
     }
 
     @SuppressWarnings("UnusedParameters")
@@ -324,23 +229,23 @@ public class MessageProcessor {
 
     void onMessageDelivered(MessageBase messageBase) {
         Timber.d("onMessageDelivered in MessageProcessor Noop. ThreadID: %s", Thread.currentThread());
-        eventBus.postSticky(queueEvent.withNewLength(outgoingQueue.size()));
+        eventChannels.getQueueLength().post(outgoingQueue.size());
         eventBus.post(messageBase);
     }
 
     void onMessageDeliveryFailedFinal(String messageId) {
         Timber.e("Message delivery failed, not retryable. :%s", messageId);
-        eventBus.postSticky(queueEvent.withNewLength(outgoingQueue.size()));
+        eventChannels.getQueueLength().post(outgoingQueue.size());
     }
 
     void onMessageDeliveryFailed(String messageId) {
         Timber.e("Message delivery failed. queueLength: %s, messageId: %s", outgoingQueue.size() + 1, messageId);
-        eventBus.postSticky(queueEvent.withNewLength(outgoingQueue.size() + 1)); // Failed message hasn't been re-queued yet, so add 1
+        eventChannels.getQueueLength().post(outgoingQueue.size() + 1); // Failed message hasn't been re-queued yet, so add 1
     }
 
     void onEndpointStateChanged(EndpointState newState) {
         Timber.d("message:%s, ", newState.getMessage());
-        eventBus.postSticky(newState);
+        eventChannels.getEndpointState().post(newState);
     }
 
     public void processIncomingMessage(MessageBase message) {
@@ -454,8 +359,8 @@ public class MessageProcessor {
     }
 
     public void stopSendingMessages() {
-        Timber.d("Interrupting background sending thread");
-        backgroundDequeueThread.interrupt();
+        Timber.d("Stopping outgoing message loop");
+        outgoingMessageSender.stop();
     }
 
     public enum EndpointState {
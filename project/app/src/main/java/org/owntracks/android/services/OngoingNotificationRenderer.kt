@@ -0,0 +1,85 @@
+package org.owntracks.android.services
+
+import android.app.Notification
+import android.app.NotificationManager
+import android.os.Handler
+import android.os.SystemClock
+
+/**
+ * Posts updates to an ongoing notification, skipping any that wouldn't change what it shows and
+ * holding back the rest so that it's posted at most once every [minIntervalMillis]. When updates
+ * arrive faster than that, only the latest is posted, once the interval is up.
+ */
+class OngoingNotificationRenderer(
+    private val notificationManager: NotificationManager,
+    private val notificationId: Int,
+    private val minIntervalMillis: Long,
+    private val handler: Handler,
+    private val builder: NotificationBuilder
+) {
+    /**
+     * Everything the notification shows that can change. Compared by value, so identical updates can
+     * be told apart from real changes without building a notification.
+     */
+    data class Content(val title: String?, val text: String?, val timestamp: Long, val number: Int)
+
+    fun interface NotificationBuilder {
+        fun build(content: Content): Notification
+    }
+
+    private var posted: Content? = null
+    private var pending: Content? = null
+    private var lastPostedAt = 0L
+
+    private val postPending = Runnable {
+        synchronized(this) {
+            val content = pending ?: return@Runnable
+            pending = null
+            if (content != posted) {
+                post(content)
+            }
+        }
+    }
+
+    /**
+     * Builds the notification for [content] without posting it, for use with startForeground, and
+     * records it as the one being shown.
+     */
+    @Synchronized
+    fun render(content: Content): Notification {
+        posted = content
+        lastPostedAt = SystemClock.uptimeMillis()
+        return builder.build(content)
+    }
+
+    @Synchronized
+    fun update(content: Content) {
+        if (pending != null) {
+            // Already waiting for the interval to be up, and this is now the latest
+            pending = content
+            return
+        }
+        if (content == posted) {
+            return
+        }
+        val due = lastPostedAt + minIntervalMillis
+        if (SystemClock.uptimeMillis() < due) {
+            pending = content
+            handler.postAtTime(postPending, due)
+            return
+        }
+        post(content)
+    }
+
+    @Synchronized
+    fun cancel() {
+        handler.removeCallbacks(postPending)
+        pending = null
+    }
+
+    private fun post(content: Content) {
+        posted = content
+        lastPostedAt = SystemClock.uptimeMillis()
+        notificationManager.notify(notificationId, builder.build(content))
+    }
+}
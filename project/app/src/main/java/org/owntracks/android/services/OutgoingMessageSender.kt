@@ -0,0 +1,160 @@
+package org.owntracks.android.services
+
+import androidx.test.espresso.idling.CountingIdlingResource
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import org.owntracks.android.model.messages.MessageBase
+import org.owntracks.android.support.interfaces.ConfigurationIncompleteException
+import timber.log.Timber
+import java.io.IOException
+import java.util.concurrent.BlockingDeque
+import java.util.concurrent.TimeUnit
+
+/**
+ * Takes messages off the outgoing queue and sends them through the endpoint, one at a time.
+ *
+ * The loop is a coroutine confined to the network [dispatcher], so a message is sent on the same thread
+ * that takes it off the queue, and waiting for the next message or for a retry suspends rather than
+ * holding a thread. Each endpoint gets its own loop, which is cancelled when the endpoint is replaced or
+ * sending is stopped.
+ */
+class OutgoingMessageSender(
+    private val outgoingQueue: BlockingDeque<MessageBase>,
+    private val outgoingQueueIdlingResource: CountingIdlingResource,
+    private val dispatcher: CoroutineDispatcher
+) {
+    private val scope = CoroutineScope(SupervisorJob() + dispatcher)
+    private val messagesAvailable = Channel<Unit>(Channel.CONFLATED)
+    private var job: Job? = null
+
+    /**
+     * Starts sending queued messages through [endpoint], replacing any previous loop
+     */
+    @Synchronized
+    fun start(endpoint: MessageProcessorEndpoint) {
+        job?.cancel()
+        job = scope.launch { sendAvailableMessages(endpoint) }
+    }
+
+    @Synchronized
+    fun stop() {
+        job?.cancel()
+        job = null
+    }
+
+    /**
+     * Wakes the loop up if it's waiting for something to send
+     */
+    fun onMessageQueued() {
+        messagesAvailable.offer(Unit)
+    }
+
+    private suspend fun sendAvailableMessages(endpoint: MessageProcessorEndpoint) {
+        Timber.d("Starting outbound message loop. ThreadID: %s", Thread.currentThread())
+        var previousMessageFailed = false
+        var retriesToGo = 0
+        var retryWait = SEND_FAILURE_BACKOFF_INITIAL_WAIT
+        try {
+            while (true) {
+                val message = outgoingQueue.poll()
+                if (message == null) {
+                    messagesAvailable.receive()
+                    continue
+                }
+                if (!previousMessageFailed) {
+                    retriesToGo = message.numberOfRetries
+                }
+
+                try {
+                    endpoint.send(message, dispatcher)
+                    previousMessageFailed = false
+                    retryWait = SEND_FAILURE_BACKOFF_INITIAL_WAIT
+                } catch (e: CancellationException) {
+                    // Stopped between taking the message and sending it, so put it back for the next
+                    // loop. If it was sent after all, it'll be sent again, which is better than losing it.
+                    requeueAtHead(message)
+                    throw e
+                } catch (e: Exception) {
+                    when (e) {
+                        is OutgoingMessageSendingException, is ConfigurationIncompleteException -> {
+                            retriesToGo -= 1
+                            if (retriesToGo > 0) {
+                                Timber.w("Error sending message. Re-queueing")
+                                requeueAtHead(message)
+                                previousMessageFailed = true
+                            } else {
+                                Timber.w("Error sending message, and out of retries. Dropping %s", message)
+                                retryWait = SEND_FAILURE_BACKOFF_INITIAL_WAIT
+                                previousMessageFailed = false
+                            }
+                        }
+                        is IOException -> {
+                            // Deserialization failure, drop and move on
+                            retryWait = SEND_FAILURE_BACKOFF_INITIAL_WAIT
+                            previousMessageFailed = false
+                        }
+                        else -> {
+                            Timber.e(e, "Unhandled exception in sending message")
+                            previousMessageFailed = false
+                        }
+                    }
+                }
+
+                if (previousMessageFailed) {
+                    Timber.i("Waiting for %s s before retrying", retryWait / 1000)
+                    delay(retryWait)
+                    retryWait = minOf(2 * retryWait, SEND_FAILURE_BACKOFF_MAX_WAIT)
+                } else {
+                    decrementIdlingResource()
+                    // Lets anything else waiting on the network thread run before the next message
+                    if (outgoingQueue.isNotEmpty()) {
+                        yield()
+                    }
+                }
+            }
+        } finally {
+            Timber.w("Exiting outgoing message loop")
+        }
+    }
+
+    /**
+     * Hammers a failed message back onto the head of the queue. If someone's queued something on the
+     * tail in the meantime and the queue is now full, then that latest message is thrown away.
+     */
+    private fun requeueAtHead(message: MessageBase) {
+        synchronized(outgoingQueue) {
+            if (!outgoingQueue.offerFirst(message)) {
+                val tailMessage = outgoingQueue.removeLast()
+                Timber.w("Queue full when trying to re-queue failed message. Dropping last message: %s", tailMessage)
+                if (!outgoingQueue.offerFirst(message)) {
+                    Timber.e("Couldn't restore failed message back onto the head of the queue, dropping: %s", message)
+                }
+            }
+        }
+    }
+
+    private fun decrementIdlingResource() {
+        synchronized(outgoingQueueIdlingResource) {
+            try {
+                if (!outgoingQueueIdlingResource.isIdleNow) {
+                    outgoingQueueIdlingResource.decrement()
+                }
+            } catch (e: IllegalStateException) {
+                Timber.w(e, "outgoingQueueIdlingResource is invalid")
+            }
+        }
+    }
+
+    companion object {
+        private val SEND_FAILURE_BACKOFF_INITIAL_WAIT = TimeUnit.SECONDS.toMillis(1)
+        private val SEND_FAILURE_BACKOFF_MAX_WAIT = TimeUnit.MINUTES.toMillis(2)
+    }
+}
+
+/**
+ * Sends [message] through this endpoint on [dispatcher], suspending the caller rather than blocking it.
+ * Endpoints aren't necessarily thread-safe, so everything should send through the same single-thread
+ * dispatcher.
+ */
+suspend fun MessageProcessorEndpoint.send(message: MessageBase, dispatcher: CoroutineDispatcher) =
+    withContext(dispatcher) { sendMessage(message) }
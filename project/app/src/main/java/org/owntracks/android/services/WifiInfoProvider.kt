@@ -16,7 +16,11 @@ class WifiInfoProvider @Inject constructor(@ApplicationContext context: Context)
     fun getBSSID(): String? = wifiManager.connectionInfo.bssid
 
     // WifiInfo::getSSID returns the SSID quoted for some reason
-    fun getSSID(): String = wifiManager.connectionInfo.ssid.replace(Regex("^\"(.*)\"$"), "$1")
+    fun getSSID(): String = wifiManager.connectionInfo.ssid.replace(QUOTED_SSID, "$1")
 
     fun isConnected(): Boolean = getBSSID() != null
+
+    companion object {
+        private val QUOTED_SSID = Regex("^\"(.*)\"$")
+    }
 }
@@ -8,15 +8,18 @@ import org.owntracks.android.services.MessageProcessor
 import timber.log.Timber
 import javax.inject.Inject
 
-class MQTTMaybeReconnectAndPingWorker @Inject constructor(context: Context, workerParams: WorkerParameters, private val messageProcessor: MessageProcessor) : Worker(context, workerParams) {
+class MQTTMaybeReconnectAndPingWorker @Inject constructor(context: Context, workerParams: WorkerParameters, private val messageProcessor: MessageProcessor, private val scheduler: Scheduler) : Worker(context, workerParams) {
     override fun doWork(): Result {
         Timber.tag("MQTT").d("MQTTMaybeReconnectAndPingWorker doing work on threadID: %s", Thread.currentThread())
         if (!messageProcessor.isEndpointConfigurationComplete) return Result.failure()
+        if (scheduler.isMqttKeepaliveOnSchedule) {
+            Timber.tag("MQTT").d("Keepalive already sent by precise timer")
+            return Result.success()
+        }
         return if (messageProcessor.statefulReconnectAndSendKeepalive()) Result.success() else Result.retry()
     }
 
-    class Factory @Inject constructor(private val messageProcessor: MessageProcessor) : ChildWorkerFactory {
-        override fun create(appContext: Context, params: WorkerParameters): ListenableWorker = MQTTMaybeReconnectAndPingWorker(appContext, params, messageProcessor)
+    class Factory @Inject constructor(private val messageProcessor: MessageProcessor, private val scheduler: Scheduler) : ChildWorkerFactory {
+        override fun create(appContext: Context, params: WorkerParameters): ListenableWorker = MQTTMaybeReconnectAndPingWorker(appContext, params, messageProcessor, scheduler)
     }
 }
-
@@ -9,8 +9,14 @@ import timber.log.Timber
 import java.util.concurrent.Semaphore
 import javax.inject.Inject
 
-class MQTTReconnectWorker(context: Context, workerParams: WorkerParameters, private val messageProcessor: MessageProcessor) : Worker(context, workerParams) {
+class MQTTReconnectWorker(
+    context: Context,
+    workerParams: WorkerParameters,
+    private val messageProcessor: MessageProcessor,
+    private val scheduler: Scheduler
+) : Worker(context, workerParams) {
     override fun doWork(): Result {
+        scheduler.onMqttReconnectStarted()
         Timber.i("MQTTReconnectWorker Doing work on threadID: %s", Thread.currentThread())
         if (!messageProcessor.isEndpointConfigurationComplete) return Result.failure()
         // We're going to try and call messagePrcessor.reconnect() here, which may reinvoke itself on
@@ -27,7 +33,7 @@ class MQTTReconnectWorker(context: Context, workerParams: WorkerParameters, priv
         }
     }
 
-    class Factory @Inject constructor(private val messageProcessor: MessageProcessor) : ChildWorkerFactory {
-        override fun create(appContext: Context, params: WorkerParameters): ListenableWorker = MQTTReconnectWorker(appContext, params, messageProcessor)
+    class Factory @Inject constructor(private val messageProcessor: MessageProcessor, private val scheduler: Scheduler) : ChildWorkerFactory {
+        override fun create(appContext: Context, params: WorkerParameters): ListenableWorker = MQTTReconnectWorker(appContext, params, messageProcessor, scheduler)
     }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package org.owntracks.android.services.worker
+
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.SystemClock
+import timber.log.Timber
+
+/**
+ * Runs tasks at a fixed rate on its own thread, for as long as the process is alive. Unlike periodic
+ * work there's no minimum interval, and nothing is written to WorkManager's database on each run.
+ *
+ * Timers don't run while the device is in deep sleep, and don't survive the process, so anything
+ * scheduled here should also have a WorkManager fallback that checks [isOnSchedule] before doing
+ * the same work again.
+ */
+class PreciseTimer(threadName: String) {
+    private val handler: Handler
+    private val tasks = mutableMapOf<String, Task>()
+
+    init {
+        val thread = HandlerThread(threadName)
+        thread.start()
+        handler = Handler(thread.looper)
+    }
+
+    private inner class Task(
+        val tag: String,
+        val intervalMillis: Long,
+        private val work: Runnable
+    ) : Runnable {
+        private var nextRunAt = SystemClock.uptimeMillis() + intervalMillis
+
+        // Counted from when it's scheduled, so that the fallback doesn't jump in before the first run
+        @Volatile
+        var lastRunAt = SystemClock.elapsedRealtime()
+            private set
+
+        fun start() {
+            handler.postAtTime(this, tag, nextRunAt)
+        }
+
+        override fun run() {
+            lastRunAt = SystemClock.elapsedRealtime()
+            try {
+                work.run()
+            } catch (e: Exception) {
+                Timber.e(e, "Error running scheduled task %s", tag)
+            }
+            // Fixed rate, so the schedule doesn't drift by however long the work took
+            val now = SystemClock.uptimeMillis()
+            nextRunAt += intervalMillis
+            if (nextRunAt <= now) {
+                nextRunAt = now + intervalMillis
+            }
+            synchronized(tasks) {
+                if (tasks[tag] === this) {
+                    start()
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs [work] every [intervalMillis], starting one interval from now. Replaces anything already
+     * scheduled with the same [tag], unless it has the same interval, in which case that's left alone.
+     */
+    fun schedule(tag: String, intervalMillis: Long, work: Runnable) {
+        synchronized(tasks) {
+            val existing = tasks[tag]
+            if (existing != null && existing.intervalMillis == intervalMillis) {
+                return
+            }
+            handler.removeCallbacksAndMessages(tag)
+            tasks[tag] = Task(tag, intervalMillis, work).also { it.start() }
+        }
+    }
+
+    fun cancel(tag: String) {
+        synchronized(tasks) {
+            tasks.remove(tag)
+            handler.removeCallbacksAndMessages(tag)
+        }
+    }
+
+    fun cancelAll() {
+        synchronized(tasks) {
+            tasks.keys.toList().forEach(::cancel)
+        }
+    }
+
+    /**
+     * Whether a task is scheduled under [tag] and hasn't missed a run, so there's no need for anything
+     * else to do its work
+     */
+    fun isOnSchedule(tag: String): Boolean {
+        val task = synchronized(tasks) { tasks[tag] } ?: return false
+        return SystemClock.elapsedRealtime() - task.lastRunAt < task.intervalMillis * 2
+    }
+}
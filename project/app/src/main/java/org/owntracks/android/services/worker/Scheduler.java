@@ -4,22 +4,39 @@ import android.content.Context;
 
 import androidx.work.BackoffPolicy;
 import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
 import androidx.work.NetworkType;
 import androidx.work.OneTimeWorkRequest;
 import androidx.work.PeriodicWorkRequest;
 import androidx.work.WorkManager;
-import androidx.work.WorkRequest;
 
+import org.owntracks.android.model.messages.MessageLocation;
+import org.owntracks.android.services.LocationPipeline;
+import org.owntracks.android.services.MessageProcessor;
 import org.owntracks.android.support.Preferences;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import dagger.Lazy;
 import dagger.hilt.android.qualifiers.ApplicationContext;
 import timber.log.Timber;
 
+/**
+ * Schedules the app's periodic and retried work. Periodic work normally goes to WorkManager, which
+ * can't run it more often than every 15 minutes. Where a shorter interval is needed, or precise
+ * scheduling is enabled, it's also run on a {@link PreciseTimer} while the process is alive, with
+ * the WorkManager task left in place as a fallback for when it isn't.
+ *
+ * Each task is enqueued as unique work, named after its tag. Every enqueue and cancel is a write to
+ * WorkManager's database, so the scheduler also remembers what this process last asked for, and skips
+ * asking again for something that's already in place.
+ */
 @Singleton
 public class Scheduler {
     public static final long MIN_PERIODIC_INTERVAL_MILLIS = PeriodicWorkRequest.MIN_PERIODIC_INTERVAL_MILLIS;
@@ -29,6 +46,11 @@ public class Scheduler {
     private static final String PERIODIC_TASK_MQTT_KEEPALIVE = "PERIODIC_TASK_MQTT_KEEPALIVE";
     private static final String ONETIME_TASK_MQTT_RECONNECT = "PERIODIC_TASK_MQTT_RECONNECT";
     private final Context context;
+    private final Lazy<LocationPipeline> locationPipeline;
+    private final Lazy<MessageProcessor> messageProcessor;
+    private final PreciseTimer preciseTimer = new PreciseTimer("preciseScheduler");
+    // Unique work name -> what this process last asked for. Absent if not known
+    private final Map<String, WorkState> enqueued = new HashMap<>();
     private final Constraints anyNetworkConstraint = new Constraints.Builder()
             .setRequiredNetworkType(NetworkType.CONNECTED)
             .build();
@@ -36,63 +58,180 @@ public class Scheduler {
     Preferences preferences;
 
     @Inject
-    public Scheduler(@ApplicationContext Context context) {
+    public Scheduler(@ApplicationContext Context context, Lazy<LocationPipeline> locationPipeline, Lazy<MessageProcessor> messageProcessor) {
         this.context = context;
+        this.locationPipeline = locationPipeline;
+        this.messageProcessor = messageProcessor;
     }
 
     public void cancelAllTasks() {
         cancelMqttTasks();
         cancelHttpTasks();
-        WorkManager.getInstance(this.context).cancelAllWorkByTag(PERIODIC_TASK_SEND_LOCATION_PING);
+        preciseTimer.cancel(PERIODIC_TASK_SEND_LOCATION_PING);
+        cancelWork(PERIODIC_TASK_SEND_LOCATION_PING);
+    }
+
+    /**
+     * What this process last asked WorkManager for under a unique work name
+     */
+    private static final class WorkState {
+        enum Kind {PERIODIC, ONE_TIME, CANCELLED}
+
+        static final WorkState ONE_TIME = new WorkState(Kind.ONE_TIME, 0);
+        static final WorkState CANCELLED = new WorkState(Kind.CANCELLED, 0);
+
+        final Kind kind;
+        // Only set for periodic work
+        final long interval;
+
+        private WorkState(Kind kind, long interval) {
+            this.kind = kind;
+            this.interval = interval;
+        }
+
+        static WorkState periodic(long interval) {
+            return new WorkState(Kind.PERIODIC, interval);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WorkState)) {
+                return false;
+            }
+            WorkState other = (WorkState) o;
+            return kind == other.kind && interval == other.interval;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * kind.hashCode() + (int) (interval ^ (interval >>> 32));
+        }
+    }
+
+    /**
+     * @return false if this process has already asked for the given unique work in the same state
+     */
+    private boolean shouldEnqueue(String name, WorkState state) {
+        synchronized (enqueued) {
+            if (state.equals(enqueued.get(name))) {
+                return false;
+            }
+            enqueued.put(name, state);
+            return true;
+        }
+    }
+
+    /**
+     * Cancels by tag rather than unique name, so that work enqueued before it was unique is cancelled too
+     */
+    private void cancelWork(String name) {
+        if (!shouldEnqueue(name, WorkState.CANCELLED)) {
+            return;
+        }
+        Timber.tag("MQTT").d("Cancelling task tag %s threadID: %s", name, Thread.currentThread());
+        WorkManager.getInstance(this.context).cancelAllWorkByTag(name);
+    }
+
+    private boolean usePreciseTimer(long intervalMillis) {
+        return intervalMillis < MIN_PERIODIC_INTERVAL_MILLIS || preferences.isExperimentalFeatureEnabled(Preferences.EXPERIMENTAL_FEATURE_PRECISE_SCHEDULING);
+    }
+
+    /**
+     * Whether the location ping is being run by the precise timer, so the fallback worker has nothing to do
+     */
+    public boolean isLocationPingOnSchedule() {
+        return preciseTimer.isOnSchedule(PERIODIC_TASK_SEND_LOCATION_PING);
+    }
+
+    /**
+     * Whether the MQTT keepalive is being run by the precise timer, so the fallback worker has nothing to do
+     */
+    public boolean isMqttKeepaliveOnSchedule() {
+        return preciseTimer.isOnSchedule(PERIODIC_TASK_MQTT_KEEPALIVE);
     }
 
     public void cancelHttpTasks() {
         Timber.tag("MQTT").d("canceling tasks");
-        WorkManager.getInstance(this.context).cancelAllWorkByTag(ONEOFF_TASK_SEND_MESSAGE_HTTP);
+        cancelWork(ONEOFF_TASK_SEND_MESSAGE_HTTP);
     }
 
     public void cancelMqttTasks() {
-        Timber.tag("MQTT").d("Cancelling task tag (all mqtt tasks) %s", ONEOFF_TASK_SEND_MESSAGE_MQTT);
-        WorkManager.getInstance(this.context).cancelAllWorkByTag(ONEOFF_TASK_SEND_MESSAGE_MQTT);
-        Timber.tag("MQTT").d("Cancelling task tag (all mqtt tasks) %s", PERIODIC_TASK_MQTT_KEEPALIVE);
-        WorkManager.getInstance(this.context).cancelAllWorkByTag(PERIODIC_TASK_MQTT_KEEPALIVE);
-        Timber.tag("MQTT").d("Cancelling task tag (all mqtt tasks) %s", ONETIME_TASK_MQTT_RECONNECT);
-        WorkManager.getInstance(this.context).cancelAllWorkByTag(ONETIME_TASK_MQTT_RECONNECT);
+        Timber.tag("MQTT").d("Cancelling all mqtt tasks");
+        cancelWork(ONEOFF_TASK_SEND_MESSAGE_MQTT);
+        preciseTimer.cancel(PERIODIC_TASK_MQTT_KEEPALIVE);
+        cancelWork(PERIODIC_TASK_MQTT_KEEPALIVE);
+        cancelWork(ONETIME_TASK_MQTT_RECONNECT);
     }
 
     public void scheduleMqttMaybeReconnectAndPing(long keepAliveSeconds) {
+        long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAliveSeconds);
+        if (usePreciseTimer(keepAliveMillis)) {
+            Timber.tag("MQTT").d("Precise timer task %s with interval %s", PERIODIC_TASK_MQTT_KEEPALIVE, keepAliveSeconds);
+            preciseTimer.schedule(PERIODIC_TASK_MQTT_KEEPALIVE, keepAliveMillis, this::sendMqttKeepalive);
+        } else {
+            preciseTimer.cancel(PERIODIC_TASK_MQTT_KEEPALIVE);
+        }
         if (keepAliveSeconds < TimeUnit.MILLISECONDS.toSeconds(MIN_PERIODIC_INTERVAL_MILLIS)) {
-            Timber.tag("MQTT").i("MQTT Keepalive interval is smaller than most granular workmanager interval, setting to 900 seconds");
+            Timber.tag("MQTT").i("MQTT Keepalive interval is smaller than most granular workmanager interval, setting fallback to 900 seconds");
             keepAliveSeconds = TimeUnit.MILLISECONDS.toSeconds(MIN_PERIODIC_INTERVAL_MILLIS);
         }
-        WorkRequest mqttPingWorkRequest = new PeriodicWorkRequest.Builder(MQTTMaybeReconnectAndPingWorker.class, keepAliveSeconds, TimeUnit.SECONDS)
+        if (!shouldEnqueue(PERIODIC_TASK_MQTT_KEEPALIVE, WorkState.periodic(keepAliveSeconds))) {
+            Timber.tag("MQTT").d("WorkManager task %s already queued with interval %s", PERIODIC_TASK_MQTT_KEEPALIVE, keepAliveSeconds);
+            return;
+        }
+        PeriodicWorkRequest mqttPingWorkRequest = new PeriodicWorkRequest.Builder(MQTTMaybeReconnectAndPingWorker.class, keepAliveSeconds, TimeUnit.SECONDS)
                 .addTag(PERIODIC_TASK_MQTT_KEEPALIVE)
                 .setConstraints(anyNetworkConstraint)
                 .setBackoffCriteria(BackoffPolicy.LINEAR, 30, TimeUnit.SECONDS)
                 .build();
         Timber.tag("MQTT").d("WorkManager queue task %s as %s with interval %s", PERIODIC_TASK_MQTT_KEEPALIVE, mqttPingWorkRequest.getId(), keepAliveSeconds);
-        WorkManager.getInstance(this.context).cancelAllWorkByTag(PERIODIC_TASK_MQTT_KEEPALIVE);
-        WorkManager.getInstance(this.context).enqueue(mqttPingWorkRequest);
+        WorkManager.getInstance(this.context).enqueueUniquePeriodicWork(PERIODIC_TASK_MQTT_KEEPALIVE, ExistingPeriodicWorkPolicy.REPLACE, mqttPingWorkRequest);
+    }
+
+    private void sendMqttKeepalive() {
+        MessageProcessor processor = messageProcessor.get();
+        if (processor.isEndpointConfigurationComplete()) {
+            processor.statefulReconnectAndSendKeepalive();
+        }
     }
 
     public void cancelMqttPing() {
-        Timber.tag("MQTT").d("Cancelling task tag %s threadID: %s", PERIODIC_TASK_MQTT_KEEPALIVE, Thread.currentThread());
-        WorkManager.getInstance(this.context).cancelAllWorkByTag(PERIODIC_TASK_MQTT_KEEPALIVE);
+        preciseTimer.cancel(PERIODIC_TASK_MQTT_KEEPALIVE);
+        cancelWork(PERIODIC_TASK_MQTT_KEEPALIVE);
     }
 
     public void scheduleLocationPing() {
-        WorkRequest pingWorkRequest =
-                new PeriodicWorkRequest.Builder(SendLocationPingWorker.class, preferences.getPing(), TimeUnit.MINUTES)
+        long pingMillis = TimeUnit.MINUTES.toMillis(preferences.getPing());
+        if (usePreciseTimer(pingMillis)) {
+            Timber.d("Precise timer task %s with interval %s minutes", PERIODIC_TASK_SEND_LOCATION_PING, preferences.getPing());
+            preciseTimer.schedule(PERIODIC_TASK_SEND_LOCATION_PING, pingMillis, () -> locationPipeline.get().submit(MessageLocation.REPORT_TYPE_PING));
+        } else {
+            preciseTimer.cancel(PERIODIC_TASK_SEND_LOCATION_PING);
+        }
+        long fallbackMillis = Math.max(pingMillis, MIN_PERIODIC_INTERVAL_MILLIS);
+        if (!shouldEnqueue(PERIODIC_TASK_SEND_LOCATION_PING, WorkState.periodic(fallbackMillis))) {
+            Timber.tag("MQTT").d("WorkManager task %s already queued with interval %s minutes", PERIODIC_TASK_SEND_LOCATION_PING, preferences.getPing());
+            return;
+        }
+        PeriodicWorkRequest pingWorkRequest =
+                new PeriodicWorkRequest.Builder(SendLocationPingWorker.class, fallbackMillis, TimeUnit.MILLISECONDS)
                         .addTag(PERIODIC_TASK_SEND_LOCATION_PING)
                         .setConstraints(anyNetworkConstraint)
                         .build();
         Timber.tag("MQTT").d("WorkManager queue task %s as %s with interval %s minutes", PERIODIC_TASK_SEND_LOCATION_PING, pingWorkRequest.getId(), preferences.getPing());
-        WorkManager.getInstance(this.context).cancelAllWorkByTag(PERIODIC_TASK_SEND_LOCATION_PING);
-        WorkManager.getInstance(this.context).enqueue(pingWorkRequest);
+        WorkManager.getInstance(this.context).enqueueUniquePeriodicWork(PERIODIC_TASK_SEND_LOCATION_PING, ExistingPeriodicWorkPolicy.REPLACE, pingWorkRequest);
     }
 
+    /**
+     * Queues a reconnect, unless one is already waiting to run, in which case that's left to get on with it.
+     * One that's already running may be about to give up, so a new one is queued to follow it.
+     */
     public void scheduleMqttReconnect() {
-        WorkRequest mqttReconnectWorkRequest =
+        if (!shouldEnqueue(ONETIME_TASK_MQTT_RECONNECT, WorkState.ONE_TIME)) {
+            Timber.tag("MQTT").d("WorkManager task %s already queued", ONETIME_TASK_MQTT_RECONNECT);
+            return;
+        }
+        OneTimeWorkRequest mqttReconnectWorkRequest =
                 new OneTimeWorkRequest.Builder(MQTTReconnectWorker.class)
                         .addTag(ONETIME_TASK_MQTT_RECONNECT)
                         .setBackoffCriteria(BackoffPolicy.LINEAR, 5, TimeUnit.SECONDS)
@@ -100,12 +239,20 @@ public class Scheduler {
                         .build();
 
         Timber.tag("MQTT").d("WorkManager queue task %s as %s", ONETIME_TASK_MQTT_RECONNECT, mqttReconnectWorkRequest.getId());
-        WorkManager.getInstance(this.context).cancelAllWorkByTag(ONETIME_TASK_MQTT_RECONNECT);
-        WorkManager.getInstance(this.context).enqueue(mqttReconnectWorkRequest);
+        WorkManager.getInstance(this.context).enqueueUniqueWork(ONETIME_TASK_MQTT_RECONNECT, ExistingWorkPolicy.APPEND_OR_REPLACE, mqttReconnectWorkRequest);
+    }
+
+    /**
+     * Called when the reconnect worker starts a run, so that a reconnect asked for from then on is
+     * queued afresh rather than assumed to be covered by this one
+     */
+    public void onMqttReconnectStarted() {
+        synchronized (enqueued) {
+            enqueued.remove(ONETIME_TASK_MQTT_RECONNECT);
+        }
     }
 
     public void cancelMqttReconnect() {
-        Timber.tag("MQTT").d("Cancelling task tag %s threadID: %s", ONETIME_TASK_MQTT_RECONNECT, Thread.currentThread());
-        WorkManager.getInstance(this.context).cancelAllWorkByTag(ONETIME_TASK_MQTT_RECONNECT);
+        cancelWork(ONETIME_TASK_MQTT_RECONNECT);
     }
 }
@@ -5,18 +5,22 @@ import androidx.work.ListenableWorker
 import androidx.work.Worker
 import androidx.work.WorkerParameters
 import org.owntracks.android.model.messages.MessageLocation
-import org.owntracks.android.services.LocationProcessor
+import org.owntracks.android.services.LocationPipeline
 import timber.log.Timber
 import javax.inject.Inject
 
-class SendLocationPingWorker @Inject constructor(context: Context, workerParams: WorkerParameters, private val locationProcessor: LocationProcessor) : Worker(context, workerParams) {
+class SendLocationPingWorker @Inject constructor(context: Context, workerParams: WorkerParameters, private val locationPipeline: LocationPipeline, private val scheduler: Scheduler) : Worker(context, workerParams) {
     override fun doWork(): Result {
         Timber.tag("MQTT").d("SendLocationPingWorker doing work. ThreadID: %s", Thread.currentThread())
-        locationProcessor.publishLocationMessage(MessageLocation.REPORT_TYPE_PING)
+        if (scheduler.isLocationPingOnSchedule) {
+            Timber.tag("MQTT").d("Location ping already sent by precise timer")
+            return Result.success()
+        }
+        locationPipeline.submit(MessageLocation.REPORT_TYPE_PING)
         return Result.success()
     }
 
-    class Factory @Inject constructor(private val locationProcessor: LocationProcessor) : ChildWorkerFactory {
-        override fun create(appContext: Context, params: WorkerParameters): ListenableWorker = SendLocationPingWorker(appContext, params, locationProcessor)
+    class Factory @Inject constructor(private val locationPipeline: LocationPipeline, private val scheduler: Scheduler) : ChildWorkerFactory {
+        override fun create(appContext: Context, params: WorkerParameters): ListenableWorker = SendLocationPingWorker(appContext, params, locationPipeline, scheduler)
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package org.owntracks.android.support
+
+import android.view.Choreographer
+import org.owntracks.android.model.FusedContact
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Collects contact updates from whichever thread they arrive on and hands them to the main thread as
+ * a single batch on [EventChannels.contactsUpdated] per display frame. A contact that's updated many
+ * times before the next flush is only delivered once.
+ *
+ * [scheduleFlush] is given the flush to run once the current burst of updates is over; outside of
+ * tests, that's on the next frame.
+ */
+@Singleton
+class ContactUpdateCoalescer internal constructor(
+    private val eventChannels: EventChannels,
+    private val scheduleFlush: (Runnable) -> Unit
+) {
+    @Inject
+    constructor(eventChannels: EventChannels, runThingsOnOtherThreads: RunThingsOnOtherThreads) :
+        this(eventChannels, { flush ->
+            runThingsOnOtherThreads.postOnMainHandlerDelayed({
+                Choreographer.getInstance().postFrameCallback { flush.run() }
+            }, 0)
+        })
+
+    private val pending = LinkedHashSet<FusedContact>()
+    private var flushScheduled = false
+
+    fun offer(contact: FusedContact) {
+        synchronized(pending) {
+            pending.add(contact)
+            if (flushScheduled) {
+                return
+            }
+            flushScheduled = true
+        }
+        scheduleFlush(Runnable { flush() })
+    }
+
+    /**
+     * Drops any pending update for the contact, so that a removed contact doesn't get its marker
+     * re-added by a flush that happens after the removal.
+     */
+    fun cancel(contact: FusedContact) {
+        synchronized(pending) {
+            pending.remove(contact)
+        }
+    }
+
+    fun clear() {
+        synchronized(pending) {
+            pending.clear()
+        }
+    }
+
+    private fun flush() {
+        val batch = synchronized(pending) {
+            flushScheduled = false
+            pending.toList().also { pending.clear() }
+        }
+        if (batch.isNotEmpty()) {
+            eventChannels.contactsUpdated.post(batch)
+        }
+    }
+}
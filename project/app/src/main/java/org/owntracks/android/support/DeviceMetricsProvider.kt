@@ -17,20 +17,12 @@ class DeviceMetricsProvider @Inject internal constructor(@ApplicationContext pri
     val batteryLevel: Int
         get() {
             val intentFilter = IntentFilter(Intent.ACTION_BATTERY_CHANGED)
-            val batteryStatus = context.registerReceiver(null, intentFilter)
-            return batteryStatus?.getIntExtra(BatteryManager.EXTRA_LEVEL, 0) ?: 0
+            return batteryLevelOf(context.registerReceiver(null, intentFilter))
         }
     val batteryStatus: BatteryStatus
         get() {
             val intentFilter = IntentFilter(Intent.ACTION_BATTERY_CHANGED)
-            val batteryStatus = context.registerReceiver(null, intentFilter)
-            return when (batteryStatus?.getIntExtra(BatteryManager.EXTRA_STATUS, 0)) {
-                BatteryManager.BATTERY_STATUS_FULL -> BatteryStatus.FULL
-                BatteryManager.BATTERY_STATUS_CHARGING -> BatteryStatus.CHARGING
-                BatteryManager.BATTERY_STATUS_DISCHARGING -> BatteryStatus.UNPLUGGED
-                BatteryManager.BATTERY_STATUS_NOT_CHARGING -> BatteryStatus.UNKNOWN
-                else -> BatteryStatus.UNKNOWN
-            }
+            return batteryStatusOf(context.registerReceiver(null, intentFilter))
         }
     @Suppress("DEPRECATION")
     val connectionType: String?
@@ -64,4 +56,18 @@ class DeviceMetricsProvider @Inject internal constructor(@ApplicationContext pri
                 }
             }
         }
-}
\ No newline at end of file
+
+    companion object {
+        fun batteryLevelOf(batteryChanged: Intent?): Int =
+            batteryChanged?.getIntExtra(BatteryManager.EXTRA_LEVEL, 0) ?: 0
+
+        fun batteryStatusOf(batteryChanged: Intent?): BatteryStatus =
+            when (batteryChanged?.getIntExtra(BatteryManager.EXTRA_STATUS, 0)) {
+                BatteryManager.BATTERY_STATUS_FULL -> BatteryStatus.FULL
+                BatteryManager.BATTERY_STATUS_CHARGING -> BatteryStatus.CHARGING
+                BatteryManager.BATTERY_STATUS_DISCHARGING -> BatteryStatus.UNPLUGGED
+                BatteryManager.BATTERY_STATUS_NOT_CHARGING -> BatteryStatus.UNKNOWN
+                else -> BatteryStatus.UNKNOWN
+            }
+    }
+}
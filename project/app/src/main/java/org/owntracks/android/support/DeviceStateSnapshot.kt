@@ -0,0 +1,145 @@
+package org.owntracks.android.support
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.net.ConnectivityManager
+import android.net.Network
+import android.net.NetworkCapabilities
+import android.net.wifi.WifiManager
+import android.os.Build
+import dagger.hilt.android.qualifiers.ApplicationContext
+import org.owntracks.android.model.BatteryStatus
+import org.owntracks.android.services.WifiInfoProvider
+import timber.log.Timber
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * The battery, connectivity and WiFi state to report with each location. Rather than querying the
+ * system for each fix, this is kept current by the sticky battery broadcast and connectivity
+ * callbacks, so reading it is just a few field reads.
+ *
+ * Starts listening the first time it's read, and carries on for the life of the process.
+ */
+@Singleton
+class DeviceStateSnapshot @Inject constructor(
+    @ApplicationContext private val context: Context,
+    private val deviceMetricsProvider: DeviceMetricsProvider,
+    private val wifiInfoProvider: WifiInfoProvider
+) {
+    @Volatile
+    private var started = false
+
+    @Volatile
+    var batteryLevel: Int = 0
+        get() {
+            start()
+            return field
+        }
+        private set
+
+    @Volatile
+    var batteryStatus: BatteryStatus = BatteryStatus.UNKNOWN
+        get() {
+            start()
+            return field
+        }
+        private set
+
+    @Volatile
+    var connectionType: String? = null
+        get() {
+            start()
+            return field
+        }
+        private set
+
+    /** Only set when connected to WiFi */
+    @Volatile
+    var ssid: String? = null
+        get() {
+            start()
+            return field
+        }
+        private set
+
+    /** Only set when connected to WiFi */
+    @Volatile
+    var bssid: String? = null
+        get() {
+            start()
+            return field
+        }
+        private set
+
+    private val receiver = object : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            when (intent.action) {
+                Intent.ACTION_BATTERY_CHANGED -> updateBattery(intent)
+                WifiManager.NETWORK_STATE_CHANGED_ACTION -> updateWifi()
+                @Suppress("DEPRECATION")
+                ConnectivityManager.CONNECTIVITY_ACTION -> updateConnectivity()
+            }
+        }
+    }
+
+    private val networkCallback = object : ConnectivityManager.NetworkCallback() {
+        override fun onCapabilitiesChanged(network: Network, networkCapabilities: NetworkCapabilities) {
+            updateConnectivity()
+        }
+
+        override fun onLost(network: Network) {
+            updateConnectivity()
+        }
+    }
+
+    private fun start() {
+        if (started) {
+            return
+        }
+        synchronized(this) {
+            if (started) {
+                return
+            }
+            // Battery changes are sticky, so the current state comes straight back
+            updateBattery(context.registerReceiver(receiver, IntentFilter(Intent.ACTION_BATTERY_CHANGED)))
+            // Roaming between access points of the same network doesn't change the default network
+            context.registerReceiver(receiver, IntentFilter(WifiManager.NETWORK_STATE_CHANGED_ACTION))
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+                @Suppress("DEPRECATION")
+                context.registerReceiver(receiver, IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION))
+            }
+            updateConnectivity()
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                try {
+                    (context.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager)
+                        .registerDefaultNetworkCallback(networkCallback)
+                } catch (e: RuntimeException) {
+                    Timber.e(e, "Unable to register network callback")
+                }
+            }
+            started = true
+        }
+    }
+
+    private fun updateBattery(batteryChanged: Intent?) {
+        if (batteryChanged == null) {
+            return
+        }
+        batteryLevel = DeviceMetricsProvider.batteryLevelOf(batteryChanged)
+        batteryStatus = DeviceMetricsProvider.batteryStatusOf(batteryChanged)
+    }
+
+    private fun updateConnectivity() {
+        connectionType = deviceMetricsProvider.connectionType
+        updateWifi()
+    }
+
+    private fun updateWifi() {
+        val currentBssid = wifiInfoProvider.getBSSID()
+        ssid = if (currentBssid != null) wifiInfoProvider.getSSID() else null
+        bssid = currentBssid
+    }
+}
@@ -0,0 +1,28 @@
+package org.owntracks.android.support
+
+import kotlin.math.*
+
+/**
+ * Distances on the Earth's surface, treated as a sphere of the mean radius. Everything that works in
+ * meters from latitudes and longitudes goes through here, so they all agree with each other.
+ */
+object Distance {
+    const val EARTH_RADIUS_METERS = 6_371_008.8
+
+    /**
+     * Meters per degree of latitude, and of longitude at the equator
+     */
+    const val METERS_PER_DEGREE = EARTH_RADIUS_METERS * PI / 180
+
+    /**
+     * Great-circle distance between two points, in meters
+     */
+    fun meters(latitude1: Double, longitude1: Double, latitude2: Double, longitude2: Double): Double {
+        val deltaLatitude = Math.toRadians(latitude2 - latitude1)
+        val deltaLongitude = Math.toRadians(longitude2 - longitude1)
+        val a = sin(deltaLatitude / 2).pow(2) +
+                cos(Math.toRadians(latitude1)) * cos(Math.toRadians(latitude2)) *
+                sin(deltaLongitude / 2).pow(2)
+        return 2 * EARTH_RADIUS_METERS * asin(min(1.0, sqrt(a)))
+    }
+}
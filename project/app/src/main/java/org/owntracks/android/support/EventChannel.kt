@@ -0,0 +1,131 @@
+package org.owntracks.android.support
+
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.collect
+import timber.log.Timber
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A typed event stream for a single kind of event, backed by a [MutableSharedFlow]. Posting never
+ * blocks and never takes a lock shared with other event types.
+ *
+ * A conflated channel behaves like a sticky EventBus event: it remembers the latest value, hands it to
+ * new subscribers, and a subscriber that falls behind only sees the latest value. A non-conflated
+ * channel buffers up to [BUFFER_CAPACITY] events, so every subscriber sees every event unless it falls
+ * that far behind, in which case the oldest are dropped.
+ *
+ * Each channel counts what's posted to it and times each subscriber's handler, logging a warning
+ * whenever a handler is slow and a summary when the subscription is cancelled.
+ */
+class EventChannel<T : Any>(val name: String, conflated: Boolean) {
+    private val flow = if (conflated) {
+        MutableSharedFlow<T>(replay = 1, onBufferOverflow = BufferOverflow.DROP_OLDEST)
+    } else {
+        MutableSharedFlow(extraBufferCapacity = BUFFER_CAPACITY, onBufferOverflow = BufferOverflow.DROP_OLDEST)
+    }
+    private val scope = CoroutineScope(SupervisorJob())
+    private val createdAt = System.nanoTime()
+    private val postCount = AtomicLong()
+    private val subscribers = CopyOnWriteArrayList<SubscriberStats>()
+
+    fun interface Subscriber<T> {
+        fun onEvent(value: T)
+    }
+
+    fun interface Subscription {
+        fun cancel()
+    }
+
+    /**
+     * The most recently posted value, if this channel is conflated
+     */
+    val latest: T?
+        get() = flow.replayCache.lastOrNull()
+
+    fun post(value: T) {
+        postCount.incrementAndGet()
+        flow.tryEmit(value)
+    }
+
+    fun subscribe(
+        subscriberName: String,
+        dispatcher: CoroutineDispatcher,
+        subscriber: Subscriber<T>
+    ): Subscription {
+        val stats = SubscriberStats(subscriberName)
+        subscribers.add(stats)
+        // Started undispatched so that the subscription is in place before this returns, and nothing
+        // posted straight afterwards is missed. Events are still handled on the dispatcher.
+        val job = scope.launch(dispatcher, CoroutineStart.UNDISPATCHED) {
+            var dispatched = false
+            flow.collect { value ->
+                if (!dispatched) {
+                    dispatched = true
+                    yield()
+                }
+                val start = System.nanoTime()
+                try {
+                    subscriber.onEvent(value)
+                } catch (e: Exception) {
+                    Timber.e(e, "$subscriberName failed handling $name event")
+                }
+                stats.record(System.nanoTime() - start)
+            }
+        }
+        return Subscription {
+            job.cancel()
+            subscribers.remove(stats)
+            Timber.d(describe(stats))
+        }
+    }
+
+    /**
+     * Events posted per second since this channel was created
+     */
+    val postRate: Double
+        get() = postCount.get() * 1e9 / (System.nanoTime() - createdAt).coerceAtLeast(1)
+
+    fun describe(): String =
+        "$name: ${postCount.get()} posted (%.2f/s), ${subscribers.size} subscribers".format(postRate) +
+                subscribers.joinToString("") { "\n  ${it.describe()}" }
+
+    private fun describe(stats: SubscriberStats) = "$name: ${stats.describe()}"
+
+    private inner class SubscriberStats(val subscriberName: String) {
+        private val handled = AtomicLong()
+        private val totalNanos = AtomicLong()
+        private val maxNanos = AtomicLong()
+
+        fun record(elapsedNanos: Long) {
+            handled.incrementAndGet()
+            totalNanos.addAndGet(elapsedNanos)
+            // accumulateAndGet needs API 24
+            var max = maxNanos.get()
+            while (elapsedNanos > max && !maxNanos.compareAndSet(max, elapsedNanos)) {
+                max = maxNanos.get()
+            }
+            if (elapsedNanos > SLOW_HANDLER_THRESHOLD_NANOS) {
+                Timber.w(
+                    "$subscriberName took ${TimeUnit.NANOSECONDS.toMillis(elapsedNanos)}ms to handle $name event"
+                )
+            }
+        }
+
+        fun describe(): String {
+            val count = handled.get()
+            val meanMicros = if (count > 0) TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / count) else 0
+            return "$subscriberName handled $count, mean ${meanMicros}us, max ${
+                TimeUnit.NANOSECONDS.toMicros(maxNanos.get())
+            }us"
+        }
+    }
+
+    companion object {
+        const val BUFFER_CAPACITY = 256
+        private val SLOW_HANDLER_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(16)
+    }
+}
@@ -0,0 +1,25 @@
+package org.owntracks.android.support
+
+import android.location.Location
+import org.owntracks.android.model.FusedContact
+import org.owntracks.android.services.MessageProcessor.EndpointState
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Dedicated channels for the high-volume events, so that they don't contend with each other (or with
+ * everything else) on the [org.greenrobot.eventbus.EventBus].
+ */
+@Singleton
+class EventChannels @Inject constructor() {
+    val location = EventChannel<Location>("location", conflated = true)
+    val contactsUpdated = EventChannel<List<FusedContact>>("contactsUpdated", conflated = false)
+    val queueLength = EventChannel<Int>("queueLength", conflated = true)
+    val endpointState = EventChannel<EndpointState>("endpointState", conflated = true)
+
+    /**
+     * Post rates and subscriber timings for every channel, for the log
+     */
+    fun describe(): String =
+        listOf(location, contactsUpdated, queueLength, endpointState).joinToString("\n") { it.describe() }
+}
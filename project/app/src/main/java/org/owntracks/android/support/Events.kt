@@ -14,18 +14,16 @@ class Events {
     class EndpointChanged : E()
     class PermissionGranted(val permission: String) : E()
     class ServiceStarted : E()
-    class QueueChanged : E() {
-        var newLength = 0
-        fun withNewLength(length: Int): QueueChanged {
-            newLength = length
-            return this
-        }
-    }
 
     open class WaypointEvent internal constructor(val waypointModel: WaypointModel) : E()
     class WaypointAdded(m: WaypointModel) : WaypointEvent(m)
     class WaypointUpdated(m: WaypointModel) : WaypointEvent(m)
     class WaypointRemoved(m: WaypointModel) : WaypointEvent(m)
+
+    /**
+     * Posted once for a bulk import in place of a [WaypointAdded] and [WaypointRemoved] per waypoint
+     */
+    class WaypointsBulkChanged(val added: List<WaypointModel>, val removed: List<WaypointModel>) : E()
     class FusedContactAdded(val contact: FusedContact) : E()
     class FusedContactRemoved(val contact: FusedContact) : E()
     class RestartApp : E()
@@ -342,12 +342,13 @@ class Preferences @Inject constructor(
         }
 
     // Unit is minutes
-    // Unit is minutes
+    // Precise scheduling isn't bound by WorkManager's minimum interval
     @get:Export(keyResId = R.string.preferenceKeyPing, exportModeMqtt = true, exportModeHttp = true)
     @set:Import(keyResId = R.string.preferenceKeyPing)
     var ping: Int
         get() = getIntOrDefault(R.string.preferenceKeyPing, R.integer.valPing).coerceAtLeast(
-            TimeUnit.MILLISECONDS.toMinutes(Scheduler.MIN_PERIODIC_INTERVAL_MILLIS).toInt()
+            if (isExperimentalFeatureEnabled(EXPERIMENTAL_FEATURE_PRECISE_SCHEDULING)) 1
+            else TimeUnit.MILLISECONDS.toMinutes(Scheduler.MIN_PERIODIC_INTERVAL_MILLIS).toInt()
         )
         set(anInt) {
             setInt(R.string.preferenceKeyPing, anInt)
@@ -397,6 +398,36 @@ class Preferences @Inject constructor(
             setString(R.string.preferenceKeyIgnoreStaleLocations, days.toString())
         }
 
+    @get:Export(
+        keyResId = R.string.preferenceKeyContactsIdleHours,
+        exportModeMqtt = true,
+        exportModeHttp = true
+    )
+    @set:Import(keyResId = R.string.preferenceKeyContactsIdleHours)
+    var contactsIdleHours: Int
+        get() = getIntOrDefault(
+            R.string.preferenceKeyContactsIdleHours,
+            R.integer.valContactsIdleHours
+        )
+        set(hours) {
+            setInt(R.string.preferenceKeyContactsIdleHours, hours)
+        }
+
+    @get:Export(
+        keyResId = R.string.preferenceKeyContactsMaxCount,
+        exportModeMqtt = true,
+        exportModeHttp = true
+    )
+    @set:Import(keyResId = R.string.preferenceKeyContactsMaxCount)
+    var contactsMaxCount: Int
+        get() = getIntOrDefault(
+            R.string.preferenceKeyContactsMaxCount,
+            R.integer.valContactsMaxCount
+        )
+        set(count) {
+            setInt(R.string.preferenceKeyContactsMaxCount, count)
+        }
+
     @get:Export(
         keyResId = R.string.preferenceKeyIgnoreInaccurateLocations,
         exportModeMqtt = true,
@@ -412,6 +443,66 @@ class Preferences @Inject constructor(
             setInt(R.string.preferenceKeyIgnoreInaccurateLocations, meters)
         }
 
+    @get:Export(
+        keyResId = R.string.preferenceKeyLocationFilterMaxSpeed,
+        exportModeMqtt = true,
+        exportModeHttp = true
+    )
+    @set:Import(keyResId = R.string.preferenceKeyLocationFilterMaxSpeed)
+    var locationFilterMaxSpeed: Int
+        get() = getIntOrDefault(
+            R.string.preferenceKeyLocationFilterMaxSpeed,
+            R.integer.valLocationFilterMaxSpeed
+        )
+        set(metersPerSecond) {
+            setInt(R.string.preferenceKeyLocationFilterMaxSpeed, metersPerSecond)
+        }
+
+    @get:Export(
+        keyResId = R.string.preferenceKeyLocationFilterSmoothing,
+        exportModeMqtt = true,
+        exportModeHttp = true
+    )
+    @set:Import(keyResId = R.string.preferenceKeyLocationFilterSmoothing)
+    var locationFilterSmoothing: Boolean
+        get() = getBooleanOrDefault(
+            R.string.preferenceKeyLocationFilterSmoothing,
+            R.bool.valFalse
+        )
+        set(enabled) {
+            setBoolean(R.string.preferenceKeyLocationFilterSmoothing, enabled)
+        }
+
+    @get:Export(
+        keyResId = R.string.preferenceKeyLocationFilterMinInterval,
+        exportModeMqtt = true,
+        exportModeHttp = true
+    )
+    @set:Import(keyResId = R.string.preferenceKeyLocationFilterMinInterval)
+    var locationFilterMinInterval: Int
+        get() = getIntOrDefault(
+            R.string.preferenceKeyLocationFilterMinInterval,
+            R.integer.valLocationFilterMinInterval
+        )
+        set(seconds) {
+            setInt(R.string.preferenceKeyLocationFilterMinInterval, seconds)
+        }
+
+    @get:Export(
+        keyResId = R.string.preferenceKeyLocationFilterMinDistance,
+        exportModeMqtt = true,
+        exportModeHttp = true
+    )
+    @set:Import(keyResId = R.string.preferenceKeyLocationFilterMinDistance)
+    var locationFilterMinDistance: Int
+        get() = getIntOrDefault(
+            R.string.preferenceKeyLocationFilterMinDistance,
+            R.integer.valLocationFilterMinDistance
+        )
+        set(meters) {
+            setInt(R.string.preferenceKeyLocationFilterMinDistance, meters)
+        }
+
 
     @get:Export(keyResId = R.string.preferenceKeyClientId, exportModeMqtt = true)
     @set:Import(keyResId = R.string.preferenceKeyClientId)
@@ -1126,22 +1217,28 @@ class Preferences @Inject constructor(
         const val EXPERIMENTAL_FEATURE_USE_OSM_MAP = "useOSMMap"
         const val EXPERIMENTAL_FEATURE_BEARING_ARROW_FOLLOWS_DEVICE_ORIENTATION =
             "bearingArrowFollowsDeviceOrientation"
+        const val EXPERIMENTAL_FEATURE_BATCH_MOVE_MODE_LOCATIONS = "batchMoveModeLocations"
+        const val EXPERIMENTAL_FEATURE_PRECISE_SCHEDULING = "preciseScheduling"
 
         internal val EXPERIMENTAL_FEATURES = setOf(
             EXPERIMENTAL_FEATURE_SHOW_EXPERIMENTAL_PREFERENCE_UI,
             EXPERIMENTAL_FEATURE_ALLOW_SMALL_KEEPALIVE,
             EXPERIMENTAL_FEATURE_USE_OSM_MAP,
             EXPERIMENTAL_FEATURE_USE_AOSP_LOCATION_PROVIDER,
-            EXPERIMENTAL_FEATURE_BEARING_ARROW_FOLLOWS_DEVICE_ORIENTATION
+            EXPERIMENTAL_FEATURE_BEARING_ARROW_FOLLOWS_DEVICE_ORIENTATION,
+            EXPERIMENTAL_FEATURE_BATCH_MOVE_MODE_LOCATIONS,
+            EXPERIMENTAL_FEATURE_PRECISE_SCHEDULING
 
         )
         const val REVERSE_GEOCODE_PROVIDER_NONE = "None"
         const val REVERSE_GEOCODE_PROVIDER_DEVICE = "Device"
         const val REVERSE_GEOCODE_PROVIDER_OPENCAGE = "OpenCage"
+        const val REVERSE_GEOCODE_PROVIDER_OFFLINE = "Offline"
         val REVERSE_GEOCODE_PROVIDERS = setOf(
             REVERSE_GEOCODE_PROVIDER_NONE,
             REVERSE_GEOCODE_PROVIDER_DEVICE,
-            REVERSE_GEOCODE_PROVIDER_OPENCAGE
+            REVERSE_GEOCODE_PROVIDER_OPENCAGE,
+            REVERSE_GEOCODE_PROVIDER_OFFLINE
         )
 
         const val NIGHT_MODE_DISABLE = 0
@@ -5,6 +5,8 @@ import android.os.Handler
 import android.os.HandlerThread
 import android.os.Looper
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.android.asCoroutineDispatcher
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -14,6 +16,12 @@ class RunThingsOnOtherThreads @Inject constructor(@ApplicationContext appContext
     private val mainHandler: Handler
     private val networkHandler: Handler
 
+    /**
+     * Runs coroutines on the network thread, alongside anything posted with [postOnNetworkHandlerDelayed],
+     * so work on an endpoint stays confined to the one thread
+     */
+    val networkDispatcher: CoroutineDispatcher
+
     init {
         val serviceHandlerThread = HandlerThread(BACKGROUND_HANDLER_THREAD_NAME)
         serviceHandlerThread.start()
@@ -22,6 +30,7 @@ class RunThingsOnOtherThreads @Inject constructor(@ApplicationContext appContext
         networkHandlerThread.start()
 
         networkHandler = Handler(networkHandlerThread.looper)
+        networkDispatcher = networkHandler.asCoroutineDispatcher(NETWORK_HANDLER_THREAD_NAME)
         backgroundHandler = Handler(serviceHandlerThread.looper)
         mainHandler = Handler(appContext.mainLooper)
     }
@@ -30,6 +39,10 @@ class RunThingsOnOtherThreads @Inject constructor(@ApplicationContext appContext
         return backgroundHandler.looper
     }
 
+    fun postOnBackgroundHandlerDelayed(r: Runnable, delayMilliseconds: Long) {
+        backgroundHandler.postDelayed(r, delayMilliseconds)
+    }
+
     fun postOnMainHandlerDelayed(r: Runnable, delayMilliseconds: Long) {
         mainHandler.postDelayed(r, delayMilliseconds)
     }
@@ -26,9 +26,9 @@ class ContactsViewModel @Inject constructor(
 
         Timber.tag("399845").i("Refreshing contacts geocodes")
         mainScope.launch {
-            contactsRepo.all.value?.forEach {
-                it.value.messageLocation?.run { geocoderProvider.resolve(this) }
-            }
+            contactsRepo.all.value?.values
+                ?.mapNotNull { it.messageLocation }
+                ?.run { geocoderProvider.resolveAll(this) }
         }
     }
 
@@ -36,6 +36,7 @@ import kotlinx.coroutines.launch
 import org.greenrobot.eventbus.EventBus
 import org.owntracks.android.BuildConfig.FLAVOR
 import org.owntracks.android.R
+import org.owntracks.android.data.repos.ContactLocationHistory
 import org.owntracks.android.data.repos.LocationRepo
 import org.owntracks.android.databinding.UiMapBinding
 import org.owntracks.android.geocoding.GeocoderProvider
@@ -61,6 +62,7 @@ import org.owntracks.android.ui.map.osm.OSMMapFragment
 import org.owntracks.android.ui.welcome.WelcomeActivity
 import timber.log.Timber
 import javax.inject.Inject
+import kotlin.math.abs
 
 @AndroidEntryPoint
 class MapActivity : BaseActivity<UiMapBinding?, MapMvvm.ViewModel<MapMvvm.View?>?>(), MapMvvm.View,
@@ -68,6 +70,7 @@ class MapActivity : BaseActivity<UiMapBinding?, MapMvvm.ViewModel<MapMvvm.View?>
     lateinit var locationLifecycleObserver: LocationLifecycleObserver
     private var bottomSheetBehavior: BottomSheetBehavior<LinearLayoutCompat>? = null
     private var menu: Menu? = null
+    private var trackZoom = 0.0
     private var locationProviderClient: LocationProviderClient? = null
     private lateinit var mapFragment: MapFragment
     private var sensorManager: SensorManager? = null
@@ -99,6 +102,9 @@ class MapActivity : BaseActivity<UiMapBinding?, MapMvvm.ViewModel<MapMvvm.View?>
     @Inject
     lateinit var requirementsChecker: RequirementsChecker
 
+    @Inject
+    lateinit var contactLocationHistory: ContactLocationHistory
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         if (!preferences.isSetupCompleted) {
@@ -282,6 +288,12 @@ class MapActivity : BaseActivity<UiMapBinding?, MapMvvm.ViewModel<MapMvvm.View?>
         handleIntentExtras(intent)
         updateMonitoringModeMenu()
         viewModel?.refreshMarkers()
+        viewModel?.startContactUpdates()
+    }
+
+    override fun onPause() {
+        viewModel?.stopContactUpdates()
+        super.onPause()
     }
 
     private fun handleIntentExtras(intent: Intent) {
@@ -394,6 +406,7 @@ class MapActivity : BaseActivity<UiMapBinding?, MapMvvm.ViewModel<MapMvvm.View?>
 
     override fun removeMarker(contact: FusedContact) {
         mapFragment.removeMarker(contact.id)
+        mapFragment.removeTrack(contact.id)
     }
 
     override fun updateMarker(contact: FusedContact) {
@@ -403,6 +416,7 @@ class MapActivity : BaseActivity<UiMapBinding?, MapMvvm.ViewModel<MapMvvm.View?>
         }
         Timber.v("updating marker for contact: %s", contact.id)
         mapFragment.updateMarker(contact.id, contact.latLng!!)
+        updateTrack(contact)
         GlobalScope.launch(Dispatchers.Main) {
             contactImageBindingAdapter.run {
                 mapFragment.setMarkerImage(contact.id, getBitmapFromCache(contact))
@@ -410,6 +424,24 @@ class MapActivity : BaseActivity<UiMapBinding?, MapMvvm.ViewModel<MapMvvm.View?>
         }
     }
 
+    override fun updateTrack(contact: FusedContact) {
+        val zoom = mapFragment.currentZoom()
+        trackZoom = zoom
+        GlobalScope.launch(Dispatchers.Main) {
+            mapFragment.updateTrack(contact.id, contactLocationHistory.track(contact.id, zoom))
+        }
+    }
+
+    /**
+     * Tracks are simplified for the zoom level they're drawn at, so redraw them once the zoom has
+     * changed by enough to make a visible difference
+     */
+    fun onMapZoomChanged(zoom: Double) {
+        if (abs(zoom - trackZoom) >= TRACK_REDRAW_ZOOM_CHANGE) {
+            viewModel?.refreshTracks()
+        }
+    }
+
     fun onMarkerClicked(id: String) {
         viewModel?.onMarkerClick(id)
     }
@@ -549,5 +581,6 @@ class MapActivity : BaseActivity<UiMapBinding?, MapMvvm.ViewModel<MapMvvm.View?>
         const val STARTING_LATITUDE = 48.856826
         const val STARTING_LONGITUDE = 2.292713
         private const val PERMISSIONS_REQUEST_CODE = 1
+        private const val TRACK_REDRAW_ZOOM_CHANGE = 0.5
     }
 }
\ No newline at end of file
@@ -10,5 +10,8 @@ abstract class MapFragment : Fragment() {
     abstract fun updateMarker(id:String, latLng: LatLng)
     abstract fun removeMarker(id:String)
     abstract fun setMarkerImage(id: String, bitmap: Bitmap)
+    abstract fun updateTrack(id: String, track: List<LatLng>)
+    abstract fun removeTrack(id: String)
+    abstract fun currentZoom(): Double
     abstract fun locationPermissionGranted()
 }
\ No newline at end of file
@@ -16,6 +16,7 @@ interface MapMvvm {
         fun setBottomSheetHidden()
         fun updateMarker(contact: FusedContact)
         fun removeMarker(contact: FusedContact)
+        fun updateTrack(contact: FusedContact)
         fun clearMarkers()
         fun updateMonitoringModeMenu()
     }
@@ -34,6 +35,9 @@ interface MapMvvm {
         fun restore(contactId: String?)
         fun onMapReady()
         fun refreshMarkers()
+        fun refreshTracks()
+        fun startContactUpdates()
+        fun stopContactUpdates()
         val contact: LiveData<FusedContact?>
         val bottomSheetHidden: LiveData<Boolean>
         val mapCenter: LiveData<LatLng>
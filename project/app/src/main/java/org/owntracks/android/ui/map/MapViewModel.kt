@@ -9,19 +9,23 @@ import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
 import com.google.android.gms.maps.LocationSource.OnLocationChangedListener
 import dagger.hilt.android.scopes.ActivityScoped
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.MainScope
 import kotlinx.coroutines.launch
 import org.greenrobot.eventbus.Subscribe
 import org.greenrobot.eventbus.ThreadMode
 import org.owntracks.android.data.repos.ContactsRepo
+import org.owntracks.android.geocoding.CoalescingGeocoder
 import org.owntracks.android.geocoding.GeocoderProvider
 import org.owntracks.android.location.*
 import org.owntracks.android.model.FusedContact
 import org.owntracks.android.model.messages.MessageClear
 import org.owntracks.android.model.messages.MessageLocation.Companion.REPORT_TYPE_USER
-import org.owntracks.android.services.LocationProcessor
+import org.owntracks.android.services.LocationPipeline
 import org.owntracks.android.services.MessageProcessor
 import org.owntracks.android.services.MessageProcessorEndpointHttp
+import org.owntracks.android.support.EventChannel
+import org.owntracks.android.support.EventChannels
 import org.owntracks.android.support.Events.*
 import org.owntracks.android.support.Preferences
 import org.owntracks.android.support.SimpleIdlingResource
@@ -34,10 +38,11 @@ import kotlin.math.roundToInt
 @ActivityScoped
 class MapViewModel @Inject constructor(
     private val contactsRepo: ContactsRepo,
-    private val locationProcessor: LocationProcessor,
+    private val locationPipeline: LocationPipeline,
     private val messageProcessor: MessageProcessor,
     private val geocoderProvider: GeocoderProvider,
-    private val preferences: Preferences
+    private val preferences: Preferences,
+    private val eventChannels: EventChannels
 ) : BaseViewModel<MapMvvm.View>(), MapMvvm.ViewModel<MapMvvm.View> {
     private var onLocationChangedListener: OnLocationChangedListener? = null
 
@@ -46,6 +51,7 @@ class MapViewModel @Inject constructor(
     private val liveCamera = MutableLiveData<LatLng>()
     private val liveLocation = MutableLiveData<Location?>()
     private val mainScope = MainScope()
+    private var contactUpdatesSubscription: EventChannel.Subscription? = null
 
     private val mutableContactDistance = MutableLiveData(0f)
     private val mutableContactDistanceUnit = MutableLiveData("m")
@@ -96,6 +102,12 @@ class MapViewModel @Inject constructor(
         }
     }
 
+    override fun refreshTracks() {
+        for (c in contactsRepo.all.value!!.values) {
+            view!!.updateTrack(c)
+        }
+    }
+
     override val mapLocationUpdateCallback: LocationCallback = object : LocationCallback {
         override fun onLocationResult(locationResult: LocationResult) {
             Timber.d("Foreground location result $locationResult")
@@ -117,14 +129,16 @@ class MapViewModel @Inject constructor(
     override fun refreshGeocodeForActiveContact() {
         mutableLiveContact.value?.also {
             mainScope.launch {
-                it.messageLocation?.run { geocoderProvider.resolve(this) }
+                it.messageLocation?.run {
+                    geocoderProvider.resolve(this, CoalescingGeocoder.Priority.HIGH)
+                }
             }
         }
     }
 
     override fun sendLocation() {
         currentLocation.value?.run {
-            locationProcessor.onLocationChanged(this, REPORT_TYPE_USER)
+            locationPipeline.submit(this, REPORT_TYPE_USER)
         }
     }
 
@@ -192,7 +206,7 @@ class MapViewModel @Inject constructor(
 
     @Subscribe(threadMode = ThreadMode.MAIN)
     fun onEvent(e: FusedContactAdded) {
-        onEvent(e.contact)
+        onContactUpdated(e.contact)
     }
 
     @Subscribe(threadMode = ThreadMode.MAIN)
@@ -204,8 +218,20 @@ class MapViewModel @Inject constructor(
         view!!.removeMarker(c.contact)
     }
 
-    @Subscribe(threadMode = ThreadMode.MAIN)
-    fun onEvent(c: FusedContact) {
+    override fun startContactUpdates() {
+        contactUpdatesSubscription?.cancel()
+        contactUpdatesSubscription =
+            eventChannels.contactsUpdated.subscribe("MapViewModel", Dispatchers.Main) { contacts ->
+                contacts.forEach { onContactUpdated(it) }
+            }
+    }
+
+    override fun stopContactUpdates() {
+        contactUpdatesSubscription?.cancel()
+        contactUpdatesSubscription = null
+    }
+
+    private fun onContactUpdated(c: FusedContact) {
         view!!.updateMarker(c)
         if (c == mutableLiveContact.value) {
             mutableLiveContact.postValue(c)
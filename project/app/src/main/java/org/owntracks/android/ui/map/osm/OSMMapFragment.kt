@@ -7,15 +7,21 @@ import android.view.LayoutInflater
 import android.view.MotionEvent.ACTION_BUTTON_RELEASE
 import android.view.View
 import android.view.ViewGroup
+import androidx.core.content.ContextCompat
 import androidx.databinding.DataBindingUtil
 import androidx.preference.PreferenceManager
 import dagger.hilt.android.AndroidEntryPoint
 import org.osmdroid.config.Configuration
+import org.osmdroid.events.DelayedMapListener
+import org.osmdroid.events.MapListener
+import org.osmdroid.events.ScrollEvent
+import org.osmdroid.events.ZoomEvent
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory
 import org.osmdroid.util.GeoPoint
 import org.osmdroid.views.CustomZoomButtonsController
 import org.osmdroid.views.MapView
 import org.osmdroid.views.overlay.Marker
+import org.osmdroid.views.overlay.Polyline
 import org.osmdroid.views.overlay.TilesOverlay
 import org.osmdroid.views.overlay.mylocation.MyLocationNewOverlay
 import org.owntracks.android.R
@@ -76,6 +82,15 @@ class OSMMapFragment internal constructor() : MapFragment() {
 
 
             setMultiTouchControls(true)
+            // Delayed, so that a pinch only redraws the tracks once it's finished
+            addMapListener(DelayedMapListener(object : MapListener {
+                override fun onScroll(event: ScrollEvent?): Boolean = false
+
+                override fun onZoom(event: ZoomEvent?): Boolean {
+                    event?.run { (activity as MapActivity).onMapZoomChanged(zoomLevel) }
+                    return false
+                }
+            }, TRACK_REDRAW_DELAY_MILLIS))
             setOnClickListener {
                 (activity as MapActivity).onMapClick()
             }
@@ -149,6 +164,39 @@ class OSMMapFragment internal constructor() : MapFragment() {
         }
     }
 
+    override fun updateTrack(id: String, track: List<LatLng>) {
+        if (track.size < 2) {
+            removeTrack(id)
+            return
+        }
+        mapView?.run {
+            val points = track.map { it.toGeoPoint() }
+            val existingTrack: Polyline? =
+                overlays.firstOrNull { it is Polyline && it.id == id } as Polyline?
+            if (existingTrack != null) {
+                existingTrack.setPoints(points)
+            } else {
+                // Tracks go underneath everything else so they don't obscure the markers
+                overlays.add(0, Polyline(this).apply {
+                    this.id = id
+                    setPoints(points)
+                    infoWindow = null
+                    outlinePaint.color = ContextCompat.getColor(context, R.color.contact_track)
+                    outlinePaint.strokeWidth = TRACK_WIDTH
+                })
+            }
+            invalidate()
+        }
+    }
+
+    override fun removeTrack(id: String) {
+        mapView?.run {
+            overlays.removeAll { it is Polyline && it.id == id }
+        }
+    }
+
+    override fun currentZoom(): Double = mapView?.zoomLevelDouble ?: ZOOM_STREET_LEVEL
+
     override fun locationPermissionGranted() {
         Timber.i("OSM Location permission granted")
     }
@@ -171,5 +219,7 @@ class OSMMapFragment internal constructor() : MapFragment() {
 
     companion object {
         private const val ZOOM_STREET_LEVEL: Double = 16.0
+        private const val TRACK_WIDTH: Float = 8f
+        private const val TRACK_REDRAW_DELAY_MILLIS = 250L
     }
 }
\ No newline at end of file
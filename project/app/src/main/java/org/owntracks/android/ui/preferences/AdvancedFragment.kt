@@ -1,18 +1,31 @@
 package org.owntracks.android.ui.preferences
 
+import android.net.Uri
 import android.os.Build
 import android.os.Bundle
+import android.widget.Toast
+import androidx.activity.result.contract.ActivityResultContracts
+import androidx.lifecycle.lifecycleScope
 import androidx.preference.EditTextPreference
 import androidx.preference.ListPreference
 import androidx.preference.Preference
 import androidx.preference.SwitchPreferenceCompat
 import dagger.hilt.android.AndroidEntryPoint
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import org.owntracks.android.R
+import org.owntracks.android.geocoding.OfflineGeocoder
 import org.owntracks.android.support.Preferences
+import timber.log.Timber
+import java.io.IOException
 import javax.inject.Inject
 
 @AndroidEntryPoint
 class AdvancedFragment @Inject constructor() : AbstractPreferenceFragment() {
+    private val gazetteerPicker =
+        registerForActivityResult(ActivityResultContracts.GetContent()) { uri -> uri?.run(::importGazetteer) }
+
     override fun onCreatePreferencesFix(savedInstanceState: Bundle?, rootKey: String?) {
         super.onCreatePreferencesFix(savedInstanceState, rootKey)
         setPreferencesFromResource(R.xml.preferences_advanced, rootKey)
@@ -44,6 +57,11 @@ class AdvancedFragment @Inject constructor() : AbstractPreferenceFragment() {
         }
         setOpenCageAPIKeyPreferenceVisibility()
 
+        findPreference<Preference>(getString(R.string.preferenceKeyImportGazetteer))?.setOnPreferenceClickListener {
+            gazetteerPicker.launch("*/*")
+            true
+        }
+
         findPreference<EditTextPreference>(getString(R.string.preferenceKeyOpencageGeocoderApiKey))?.setOnPreferenceChangeListener { preference, newValue ->
             val trimmed = (newValue as String).trim()
             preferences.openCageGeocoderApiKey = trimmed
@@ -58,5 +76,25 @@ class AdvancedFragment @Inject constructor() : AbstractPreferenceFragment() {
     private fun setOpenCageAPIKeyPreferenceVisibility() {
         findPreference<EditTextPreference>(getString(R.string.preferenceKeyOpencageGeocoderApiKey))?.isVisible =
             preferences.reverseGeocodeProvider == Preferences.REVERSE_GEOCODE_PROVIDER_OPENCAGE
+        findPreference<Preference>(getString(R.string.preferenceKeyImportGazetteer))?.isVisible =
+            preferences.reverseGeocodeProvider == Preferences.REVERSE_GEOCODE_PROVIDER_OFFLINE
+    }
+
+    private fun importGazetteer(uri: Uri) {
+        val context = requireContext().applicationContext
+        lifecycleScope.launch(Dispatchers.IO) {
+            val message = try {
+                val size = context.contentResolver.openInputStream(uri)?.use {
+                    OfflineGeocoder.import(context, it)
+                } ?: throw IOException("Unable to open $uri")
+                context.getString(R.string.gazetteerImported, size)
+            } catch (e: IOException) {
+                Timber.e(e, "Unable to import gazetteer from $uri")
+                context.getString(R.string.gazetteerImportFailed, e.message)
+            }
+            withContext(Dispatchers.Main) {
+                Toast.makeText(context, message, Toast.LENGTH_LONG).show()
+            }
+        }
     }
 }
\ No newline at end of file
@@ -14,17 +14,23 @@ import androidx.databinding.Bindable;
 import org.greenrobot.eventbus.Subscribe;
 import org.owntracks.android.BR;
 import org.owntracks.android.services.MessageProcessor;
+import org.owntracks.android.support.EventChannel;
+import org.owntracks.android.support.EventChannels;
 import org.owntracks.android.support.Events;
 import org.owntracks.android.ui.base.viewmodel.BaseViewModel;
+import org.owntracks.android.ui.status.events.TransitionEventsActivity;
 import org.owntracks.android.ui.status.logs.LogViewerActivity;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import dagger.hilt.android.qualifiers.ApplicationContext;
 import dagger.hilt.android.scopes.ActivityScoped;
+import kotlinx.coroutines.Dispatchers;
 import timber.log.Timber;
 
 
@@ -38,13 +44,29 @@ public class StatusViewModel extends BaseViewModel<StatusMvvm.View> implements S
     private long locationUpdated;
     private int queueLength;
 
+    private final EventChannels eventChannels;
+    private final List<EventChannel.Subscription> channelSubscriptions = new ArrayList<>();
+
     @Inject
-    public StatusViewModel(@ApplicationContext Context context) {
+    public StatusViewModel(@ApplicationContext Context context, EventChannels eventChannels) {
         this.context = context;
+        this.eventChannels = eventChannels;
     }
 
     public void attachView(@Nullable Bundle savedInstanceState, @NonNull StatusMvvm.View view) {
         super.attachView(savedInstanceState, view);
+        channelSubscriptions.add(eventChannels.getEndpointState().subscribe("StatusViewModel", Dispatchers.getMain(), this::onEndpointState));
+        channelSubscriptions.add(eventChannels.getLocation().subscribe("StatusViewModel", Dispatchers.getMain(), this::onLocation));
+        channelSubscriptions.add(eventChannels.getQueueLength().subscribe("StatusViewModel", Dispatchers.getMain(), this::onQueueLength));
+    }
+
+    @Override
+    public void detachView() {
+        for (EventChannel.Subscription subscription : channelSubscriptions) {
+            subscription.cancel();
+        }
+        channelSubscriptions.clear();
+        super.detachView();
     }
 
     @Override
@@ -83,8 +105,7 @@ public class StatusViewModel extends BaseViewModel<StatusMvvm.View> implements S
         return locationUpdated;
     }
 
-    @Subscribe(sticky = true)
-    public void onEvent(MessageProcessor.EndpointState e) {
+    private void onEndpointState(MessageProcessor.EndpointState e) {
         this.endpointState = e;
         this.endpointMessage = e.getMessage();
         notifyPropertyChanged(BR.endpointState);
@@ -97,21 +118,26 @@ public class StatusViewModel extends BaseViewModel<StatusMvvm.View> implements S
         notifyPropertyChanged(BR.serviceStarted);
     }
 
-    @Subscribe(sticky = true)
-    public void onEvent(Location l) {
+    private void onLocation(Location l) {
         this.locationUpdated = TimeUnit.MILLISECONDS.toSeconds(l.getTime());
         notifyPropertyChanged(BR.locationUpdated);
     }
 
-    @Subscribe(sticky = true)
-    public void onEvent(Events.QueueChanged e) {
-        Timber.v("queue changed %s", e.getNewLength());
-        this.queueLength = e.getNewLength();
+    private void onQueueLength(int length) {
+        Timber.v("queue changed %s", length);
+        this.queueLength = length;
         notifyPropertyChanged(BR.endpointQueue);
     }
 
     public void viewLogs() {
+        // Written just before the log is shown, so the current figures are at the bottom of it
+        Timber.i("Event channels:\n%s", eventChannels.describe());
         Intent intent = new Intent(context, LogViewerActivity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         context.startActivity(intent);
     }
+
+    public void viewEvents() {
+        Intent intent = new Intent(context, TransitionEventsActivity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        context.startActivity(intent);
+    }
 }
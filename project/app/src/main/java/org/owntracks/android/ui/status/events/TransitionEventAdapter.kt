@@ -0,0 +1,44 @@
+package org.owntracks.android.ui.status.events
+
+import android.view.LayoutInflater
+import android.view.View
+import android.view.ViewGroup
+import android.widget.TextView
+import androidx.recyclerview.widget.RecyclerView
+import org.owntracks.android.R
+import org.owntracks.android.data.repos.TransitionEventLog
+import org.owntracks.android.support.DateFormatter
+import java.util.concurrent.TimeUnit
+
+/**
+ * RecyclerView Adapter that shows the logged transition events, newest first.
+ */
+class TransitionEventAdapter : RecyclerView.Adapter<TransitionEventAdapter.ViewHolder>() {
+    private val events = arrayListOf<TransitionEventLog.Event>()
+
+    class ViewHolder(layout: View) : RecyclerView.ViewHolder(layout) {
+        val title: TextView = layout.findViewById(R.id.event_title)
+        val text: TextView = layout.findViewById(R.id.event_text)
+    }
+
+    fun setEvents(newEvents: Collection<TransitionEventLog.Event>) {
+        events.clear()
+        events.addAll(newEvents)
+        notifyDataSetChanged()
+    }
+
+    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ViewHolder =
+        ViewHolder(LayoutInflater.from(parent.context).inflate(R.layout.transition_event_entry, parent, false))
+
+    override fun onBindViewHolder(holder: ViewHolder, position: Int) {
+        val event = events[position]
+        holder.title.text = event.title
+        holder.text.text = String.format(
+            "%s %s",
+            DateFormatter.formatDate(TimeUnit.MILLISECONDS.toSeconds(event.timestamp)),
+            event.text
+        )
+    }
+
+    override fun getItemCount(): Int = events.size
+}
@@ -0,0 +1,88 @@
+package org.owntracks.android.ui.status.events
+
+import android.os.Bundle
+import android.view.Menu
+import android.view.MenuItem
+import android.view.View
+import androidx.recyclerview.widget.LinearLayoutManager
+import dagger.hilt.android.AndroidEntryPoint
+import kotlinx.coroutines.*
+import org.owntracks.android.R
+import org.owntracks.android.data.repos.TransitionEventLog
+import org.owntracks.android.databinding.UiStatusEventsBinding
+import org.owntracks.android.ui.base.BaseActivity
+import org.owntracks.android.ui.base.view.MvvmView
+import org.owntracks.android.ui.base.viewmodel.NoOpViewModel
+import javax.inject.Inject
+
+/**
+ * Shows the region transitions received from contacts, as kept by the [TransitionEventLog]
+ */
+@AndroidEntryPoint
+class TransitionEventsActivity : BaseActivity<UiStatusEventsBinding, NoOpViewModel>(), MvvmView {
+    @Inject
+    lateinit var transitionEventLog: TransitionEventLog
+
+    private val eventAdapter = TransitionEventAdapter()
+    private val coroutineScope = CoroutineScope(Dispatchers.Main)
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        bindAndAttachContentView(R.layout.ui_status_events, savedInstanceState)
+        setSupportToolbar(binding.appbar.toolbar)
+        setHasEventBus(false)
+
+        binding.recyclerView.apply {
+            layoutManager = LinearLayoutManager(context)
+            adapter = eventAdapter
+        }
+    }
+
+    override fun onResume() {
+        super.onResume()
+        refresh()
+    }
+
+    override fun onCreateOptionsMenu(menu: Menu?): Boolean {
+        menuInflater.inflate(R.menu.transition_events, menu)
+        return true
+    }
+
+    override fun onOptionsItemSelected(item: MenuItem): Boolean {
+        return when (item.itemId) {
+            android.R.id.home -> {
+                finish()
+                true
+            }
+            R.id.refresh_events -> {
+                refresh()
+                true
+            }
+            R.id.clear_events -> {
+                coroutineScope.launch {
+                    withContext(Dispatchers.IO) { transitionEventLog.clear() }
+                    refresh()
+                }
+                true
+            }
+            else -> super.onOptionsItemSelected(item)
+        }
+    }
+
+    override fun onDestroy() {
+        super.onDestroy()
+        coroutineScope.cancel()
+    }
+
+    private fun refresh() {
+        coroutineScope.launch {
+            // The log is read from disk the first time it's used
+            val events = withContext(Dispatchers.IO) {
+                transitionEventLog.markSeen()
+                transitionEventLog.recent()
+            }
+            eventAdapter.setEvents(events)
+            binding.placeholder.visibility = if (events.isEmpty()) View.VISIBLE else View.GONE
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.owntracks.android.data.repos
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+class LocationHistoryRingTest {
+    @Test
+    fun `Given a full ring, when adding a new fix, then the oldest fix is evicted`() {
+        val ring = LocationHistoryRing(5)
+        (1..6).forEach { ring.add(it.toDouble(), it.toDouble(), it.toLong(), it) }
+        val latitudes = DoubleArray(5)
+        val longitudes = DoubleArray(5)
+        assertEquals(5, ring.copyCoordinatesInto(latitudes, longitudes))
+        assertEquals(2.0, latitudes.first(), 0.0)
+        assertEquals(6.0, latitudes.last(), 0.0)
+        assertEquals(6L, ring.latestTimestamp)
+    }
+
+    @Test
+    fun `Given a ring with a fix, when adding an older fix, then it is not added`() {
+        val ring = LocationHistoryRing(5)
+        ring.add(1.0, 1.0, 100, 10)
+        assertFalse(ring.add(2.0, 2.0, 50, 10))
+        assertEquals(1, ring.size)
+    }
+
+    @Test
+    fun `Given a ring that has wrapped, when written and read back, then the fixes are in the same order`() {
+        val ring = LocationHistoryRing(3)
+        (1..5).forEach { ring.add(it.toDouble(), -it.toDouble(), it.toLong(), it) }
+        val bytes = ByteArrayOutputStream().also { ring.writeTo(DataOutputStream(it)) }.toByteArray()
+        val restored = LocationHistoryRing.readFrom(DataInputStream(ByteArrayInputStream(bytes)), 3)
+        assertEquals(3, restored.size)
+        assertEquals(3L, restored.timestampAt(0))
+        assertEquals(5L, restored.timestampAt(2))
+        assertEquals(4, restored.accuracyAt(1))
+    }
+}
@@ -7,17 +7,26 @@ import androidx.arch.core.executor.testing.InstantTaskExecutorRule
 import com.nhaarman.mockitokotlin2.any
 import com.nhaarman.mockitokotlin2.doReturn
 import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.timeout
+import com.nhaarman.mockitokotlin2.verify
 import org.greenrobot.eventbus.EventBus
 import org.junit.Assert.*
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
+import org.owntracks.android.model.FusedContact
 import org.owntracks.android.model.messages.MessageCard
 import org.owntracks.android.model.messages.MessageLocation
 import org.owntracks.android.support.ContactBitmapAndName
 import org.owntracks.android.support.ContactBitmapAndNameMemoryCache
+import org.owntracks.android.support.ContactUpdateCoalescer
 import org.owntracks.android.support.Events.EndpointChanged
+import org.owntracks.android.support.Events.FusedContactAdded
+import org.owntracks.android.support.Events.FusedContactRemoved
 import org.owntracks.android.support.Events.ModeChanged
+import org.owntracks.android.support.Preferences
+import java.util.concurrent.TimeUnit
 
 class MemoryContactsRepoTest {
 
@@ -29,6 +38,10 @@ class MemoryContactsRepoTest {
     private lateinit var messageLocation: MessageLocation
     private lateinit var eventBus: EventBus
     private lateinit var contactBitmapAndNameMemoryCache: ContactBitmapAndNameMemoryCache
+    private lateinit var contactsStore: ContactsStore
+    private lateinit var contactLocationHistory: ContactLocationHistory
+    private lateinit var preferences: Preferences
+    private lateinit var contactUpdateCoalescer: ContactUpdateCoalescer
     private var contactsRepo: ContactsRepo? = null
 
     @Before
@@ -56,7 +69,22 @@ class MemoryContactsRepoTest {
 
         contactBitmapAndNameMemoryCache = ContactBitmapAndNameMemoryCache()
 
-        contactsRepo = MemoryContactsRepo(eventBus, contactBitmapAndNameMemoryCache)
+        contactsStore = mock {}
+        contactLocationHistory = mock {}
+        preferences = mock {
+            on { contactsIdleHours } doReturn 24
+            on { contactsMaxCount } doReturn 500
+        }
+        contactUpdateCoalescer = mock {}
+
+        contactsRepo = MemoryContactsRepo(
+            eventBus,
+            contactBitmapAndNameMemoryCache,
+            contactsStore,
+            contactLocationHistory,
+            preferences,
+            contactUpdateCoalescer
+        )
     }
 
     @Test
@@ -110,6 +138,74 @@ class MemoryContactsRepoTest {
         assertNull(contactsRepo!!.getById(CONTACT_ID))
     }
 
+    @Test
+    fun `given an empty repo, when updating a contact with a location, then the location is persisted`() {
+        contactsRepo!!.update(CONTACT_ID, messageLocation)
+        verify(contactsStore).putLocation(CONTACT_ID, messageLocation)
+    }
+
+    @Test
+    fun `given a non-empty repo, when removing a contact, then that contact is removed from the store`() {
+        contactsRepo!!.update(CONTACT_ID, messageLocation)
+        contactsRepo!!.remove(CONTACT_ID)
+        verify(contactsStore).remove(CONTACT_ID)
+    }
+
+    @Test
+    fun `given a contact not seen within the stale window, when evicting, then the contact is removed`() {
+        contactsRepo!!.update(CONTACT_ID, messageLocation)
+        (contactsRepo as MemoryContactsRepo).evictStaleContacts(
+            System.currentTimeMillis() + TimeUnit.DAYS.toMillis(2)
+        )
+        assertNull(contactsRepo!!.getById(CONTACT_ID))
+        verify(eventBus).post(any<FusedContactRemoved>())
+        verify(contactsStore, never()).remove(CONTACT_ID)
+        verify(contactLocationHistory, never()).remove(CONTACT_ID)
+    }
+
+    @Test
+    fun `given a persisted contact with only a card, when evicting after loading, then the contact is kept`() {
+        val cardOnly = FusedContact(CONTACT_ID).apply { messageCard = MessageCard().apply { name = "TestName" } }
+        val hydratedRepo = MemoryContactsRepo(
+            eventBus,
+            contactBitmapAndNameMemoryCache,
+            mock { on { loadAll() } doReturn listOf(cardOnly) },
+            contactLocationHistory,
+            preferences,
+            contactUpdateCoalescer
+        )
+        verify(eventBus, timeout(1000)).post(any<FusedContactAdded>())
+        hydratedRepo.evictStaleContacts()
+        assertNotNull(hydratedRepo.getById(CONTACT_ID))
+    }
+
+    @Test
+    fun `given a recently seen contact, when evicting, then the contact is kept`() {
+        contactsRepo!!.update(CONTACT_ID, messageLocation)
+        (contactsRepo as MemoryContactsRepo).evictStaleContacts()
+        assertNotNull(contactsRepo!!.getById(CONTACT_ID))
+    }
+
+    @Test
+    fun `given more contacts than the maximum, when evicting, then the least recently seen are removed`() {
+        val limitedRepo = MemoryContactsRepo(
+            eventBus,
+            contactBitmapAndNameMemoryCache,
+            contactsStore,
+            contactLocationHistory,
+            mock {
+                on { contactsIdleHours } doReturn 0
+                on { contactsMaxCount } doReturn 1
+            },
+            contactUpdateCoalescer
+        )
+        limitedRepo.update(CONTACT_ID, messageLocation)
+        limitedRepo.update("other", messageLocation)
+        limitedRepo.evictStaleContacts()
+        assertNull(limitedRepo.getById(CONTACT_ID))
+        assertNotNull(limitedRepo.getById("other"))
+    }
+
     @Test
     fun `given a non-empty repo, when the mode change event is called, the repo is emptied`() {
         contactsRepo!!.update(CONTACT_ID, messageLocation)
@@ -0,0 +1,86 @@
+package org.owntracks.android.data.repos
+
+import android.content.Context
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.mock
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class TransitionEventLogTest {
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val context: Context by lazy {
+        mock { on { filesDir } doReturn folder.root }
+    }
+
+    @Test
+    fun `Given more events than fit, when counting the unseen ones, then the count is capped at the capacity`() {
+        val log = TransitionEventLog(context, mock {})
+        (1..TransitionEventLog.CAPACITY + 5).forEach { log.add(it.toLong(), "title", "text") }
+        assertEquals(TransitionEventLog.CAPACITY, log.unseenCount)
+    }
+
+    @Test
+    fun `Given a log not yet read from disk, when marking it seen, then the file is read on the background thread first`() {
+        val log = TransitionEventLog(context, mock {})
+        log.add(1, "title", "text")
+        log.flush()
+
+        val posted = mutableListOf<Runnable>()
+        val restored = TransitionEventLog(context, mock {
+            on { postOnBackgroundHandlerDelayed(any(), any()) } doAnswer {
+                posted.add(it.getArgument(0))
+                Unit
+            }
+        })
+        restored.markSeen()
+        assertEquals(2, posted.size)
+        posted.forEach { it.run() }
+        assertEquals(0, restored.unseenCount)
+        assertEquals(1, restored.recent().size)
+    }
+
+    @Test
+    fun `Given a full log, when adding an event, then the oldest is evicted and the newest comes first`() {
+        val log = TransitionEventLog(context, mock {})
+        (1..TransitionEventLog.CAPACITY + 1).forEach { log.add(it.toLong(), "title $it", "text $it") }
+        val events = log.recent()
+        assertEquals(TransitionEventLog.CAPACITY, events.size)
+        assertEquals("title ${TransitionEventLog.CAPACITY + 1}", events.first().title)
+        assertEquals("title 2", events.last().title)
+    }
+
+    @Test
+    fun `Given some events, when asking for a few, then only the most recent are returned`() {
+        val log = TransitionEventLog(context, mock {})
+        (1..10).forEach { log.add(it.toLong(), "title $it", "text $it") }
+        assertEquals(listOf(10L, 9L, 8L), log.recent(3).map { it.timestamp })
+    }
+
+    @Test
+    fun `Given unseen events, when marking them seen, then the unseen count is reset`() {
+        val log = TransitionEventLog(context, mock {})
+        (1..3).forEach { log.add(it.toLong(), "title", "text") }
+        assertEquals(3, log.unseenCount)
+        log.markSeen()
+        assertEquals(0, log.unseenCount)
+        log.add(4, "title", "text")
+        assertEquals(1, log.unseenCount)
+    }
+
+    @Test
+    fun `Given a flushed log, when read by a new instance, then the events and unseen count are restored`() {
+        val log = TransitionEventLog(context, mock {})
+        (1..3).forEach { log.add(it * 1000L, "title $it", "text $it") }
+        log.flush()
+
+        val restored = TransitionEventLog(context, mock {})
+        assertEquals(log.recent(), restored.recent())
+        assertEquals(3, restored.unseenCount)
+    }
+}
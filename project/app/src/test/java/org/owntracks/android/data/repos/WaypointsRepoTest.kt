@@ -0,0 +1,192 @@
+package org.owntracks.android.data.repos
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.argumentCaptor
+import com.nhaarman.mockitokotlin2.atLeastOnce
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.verify
+import io.objectbox.android.ObjectBoxLiveData
+import io.objectbox.query.Query
+import org.greenrobot.eventbus.EventBus
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.owntracks.android.data.WaypointModel
+import org.owntracks.android.location.geofencing.Geofence
+import org.owntracks.android.model.messages.MessageWaypoint
+import org.owntracks.android.support.Events
+import org.owntracks.android.support.MessageWaypointCollection
+import org.owntracks.android.support.RunThingsOnOtherThreads
+
+class WaypointsRepoTest {
+    /**
+     * Keeps waypoints in a map, and records every batch of transition states written
+     */
+    private class FakeWaypointsRepo(eventBus: EventBus, runThingsOnOtherThreads: RunThingsOnOtherThreads) :
+        WaypointsRepo(eventBus, runThingsOnOtherThreads) {
+        val stored = mutableMapOf<Long, WaypointModel>()
+        val writes = mutableListOf<Map<Long, WaypointModel>>()
+        var imports = 0
+        private var nextId = 100L
+        var duringWrite: (() -> Unit)? = null
+
+        override fun get(tst: Long): WaypointModel? =
+            withPendingTransitionState(stored.values.firstOrNull { it.tst == tst }?.let(::copyOf))
+
+        override fun getAll(): MutableList<WaypointModel> =
+            withPendingTransitionStates(stored.values.map(::copyOf).toMutableList())
+
+        override fun getAllWithGeofences(): MutableList<WaypointModel> = getAll()
+        override fun getAllLive_impl(): ObjectBoxLiveData<WaypointModel> = mock {}
+        override fun getAllQuery_impl(): Query<WaypointModel> = mock {}
+
+        override fun insert_impl(w: WaypointModel) {
+            stored[w.id] = copyOf(w)
+        }
+
+        override fun update_impl(w: WaypointModel) {
+            stored[w.id] = copyOf(w)
+        }
+
+        override fun delete_impl(w: WaypointModel) {
+            stored.remove(w.id)
+        }
+
+        override fun updateTransitionStates_impl(states: MutableMap<Long, WaypointModel>) {
+            duringWrite?.invoke()
+            writes.add(states.toMap())
+            states.forEach { (id, state) -> stored[id]?.copyTransitionStateFrom(state) }
+        }
+
+        override fun importAll_impl(waypoints: MutableCollection<WaypointModel>): MutableList<WaypointModel> {
+            imports++
+            val tsts = waypoints.map { it.tst }.toSet()
+            val replaced = stored.values.filter { it.tst in tsts }.toMutableList()
+            replaced.forEach { stored.remove(it.id) }
+            waypoints.forEach {
+                it.id = nextId++
+                stored[it.id] = copyOf(it)
+            }
+            return replaced
+        }
+
+        private fun copyOf(w: WaypointModel) = WaypointModel(
+            w.id,
+            w.tst,
+            w.description,
+            w.geofenceLatitude,
+            w.geofenceLongitude,
+            w.geofenceRadius,
+            w.lastTransition,
+            w.lastTriggered
+        )
+    }
+
+    private val posted = mutableListOf<Runnable>()
+    private lateinit var eventBus: EventBus
+    private lateinit var repo: FakeWaypointsRepo
+
+    @Before
+    fun setup() {
+        posted.clear()
+        eventBus = mock {}
+        repo = FakeWaypointsRepo(eventBus, mock {
+            on { postOnBackgroundHandlerDelayed(any(), any()) } doAnswer {
+                posted.add(it.getArgument(0))
+                Unit
+            }
+        })
+        repo.insert(WaypointModel(1, 100, "home", 51.0, 0.0, 50, 0, 0))
+    }
+
+    private fun entered() = repo.get(100)!!.apply {
+        lastTransition = Geofence.GEOFENCE_TRANSITION_ENTER
+        setLastTriggeredNow()
+    }
+
+    @Test
+    fun `given a transition state update, when reading the waypoint before a flush, then the pending state is applied`() {
+        repo.updateTransitionState(entered())
+
+        assertEquals(0, repo.writes.size)
+        assertEquals(0, repo.stored[1]!!.lastTransition)
+        assertEquals(Geofence.GEOFENCE_TRANSITION_ENTER, repo.get(100)!!.lastTransition)
+    }
+
+    @Test
+    fun `given several transition state updates, when the scheduled flush runs, then they are written once together`() {
+        repo.updateTransitionState(entered())
+        repo.updateTransitionState(entered().apply { lastTransition = Geofence.GEOFENCE_TRANSITION_EXIT })
+
+        assertEquals(1, posted.size)
+        posted.single().run()
+
+        assertEquals(1, repo.writes.size)
+        assertEquals(Geofence.GEOFENCE_TRANSITION_EXIT, repo.stored[1]!!.lastTransition)
+    }
+
+    @Test
+    fun `given a state replaced while a flush is writing, when the flush finishes, then the newer state stays pending`() {
+        repo.updateTransitionState(entered())
+        repo.duringWrite = {
+            repo.duringWrite = null
+            repo.updateTransitionState(entered().apply { lastTransition = Geofence.GEOFENCE_TRANSITION_EXIT })
+        }
+        repo.flushTransitionStates()
+
+        assertEquals(Geofence.GEOFENCE_TRANSITION_ENTER, repo.stored[1]!!.lastTransition)
+        assertEquals(Geofence.GEOFENCE_TRANSITION_EXIT, repo.get(100)!!.lastTransition)
+        repo.flushTransitionStates()
+        assertEquals(2, repo.writes.size)
+        assertEquals(Geofence.GEOFENCE_TRANSITION_EXIT, repo.stored[1]!!.lastTransition)
+    }
+
+    @Test
+    fun `given a pending transition state, when the UI asks for a query, then the state is written first`() {
+        repo.updateTransitionState(entered())
+
+        repo.getAllQuery()
+
+        assertEquals(Geofence.GEOFENCE_TRANSITION_ENTER, repo.stored[1]!!.lastTransition)
+    }
+
+    @Test
+    fun `given a pending transition state, when the waypoint is deleted, then nothing is left pending for it`() {
+        repo.updateTransitionState(entered())
+        repo.delete(repo.get(100)!!)
+
+        repo.flushTransitionStates()
+
+        assertEquals(0, repo.writes.size)
+    }
+
+    @Test
+    fun `given waypoints sharing a tst with a stored one, when importing them, then they replace it in one write with one event`() {
+        val waypoints = MessageWaypointCollection().apply {
+            add(MessageWaypoint().apply {
+                timestamp = 100
+                description = "new home"
+                latitude = 51.1
+                longitude = 0.1
+                radius = 20
+            })
+            add(MessageWaypoint().apply {
+                timestamp = 200
+                description = "work"
+                latitude = 52.0
+                longitude = 0.0
+            })
+        }
+
+        repo.importFromMessage(waypoints)
+
+        assertEquals(1, repo.imports)
+        assertEquals(listOf("new home", "work"), repo.getAll().sortedBy { it.tst }.map { it.description })
+        val events = argumentCaptor<Any>()
+        verify(eventBus, atLeastOnce()).post(events.capture())
+        val changed = events.allValues.filterIsInstance<Events.WaypointsBulkChanged>().single()
+        assertEquals(2, changed.added.size)
+        assertEquals(listOf(1L), changed.removed.map { it.id })
+    }
+}
@@ -0,0 +1,88 @@
+package org.owntracks.android.geocoding
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.atomic.AtomicInteger
+
+class CoalescingGeocoderTest {
+    private class SlowGeocoder : Geocoder {
+        val lookups = AtomicInteger()
+        val concurrent = AtomicInteger()
+        var maxConcurrent = 0
+
+        override fun reverse(latitude: Double, longitude: Double, accuracy: Int): GeocodeResult {
+            lookups.incrementAndGet()
+            synchronized(this) { maxConcurrent = maxOf(maxConcurrent, concurrent.incrementAndGet()) }
+            Thread.sleep(100)
+            concurrent.decrementAndGet()
+            return GeocodeResult.Formatted("$latitude,$longitude")
+        }
+    }
+
+    @Test
+    fun `Given concurrent requests for the same location, when geocoding, then only one lookup is made`() {
+        val upstream = SlowGeocoder()
+        val geocoder = CoalescingGeocoder(upstream)
+        val results = runBlocking {
+            (1..5).map {
+                async { geocoder.reverse(51.0, 0.0, 10, CoalescingGeocoder.Priority.NORMAL) }
+            }.awaitAll()
+        }
+        assertEquals(1, upstream.lookups.get())
+        assertEquals(1, results.distinct().size)
+    }
+
+    @Test
+    fun `Given concurrent requests for different locations, when geocoding, then parallel lookups are capped`() {
+        val upstream = SlowGeocoder()
+        val geocoder = CoalescingGeocoder(upstream, maxParallelLookups = 2)
+        runBlocking {
+            (1..6).map {
+                async { geocoder.reverse(51.0 + it, 0.0, 10, CoalescingGeocoder.Priority.NORMAL) }
+            }.awaitAll()
+        }
+        assertEquals(6, upstream.lookups.get())
+        assertEquals(2, upstream.maxConcurrent)
+    }
+
+    @Test
+    fun `Given a batch with repeated locations, when geocoding, then each cell is looked up once and results keep their order`() {
+        val upstream = SlowGeocoder()
+        val geocoder = CoalescingGeocoder(upstream, maxParallelLookups = 2)
+        val locations = listOf(51.0, 52.0, 51.0, 53.0, 52.0).map {
+            CoalescingGeocoder.Location(it, 0.0, 10)
+        }
+        val results = runBlocking { geocoder.reverseAll(locations, CoalescingGeocoder.Priority.LOW) }
+        assertEquals(3, upstream.lookups.get())
+        assertEquals(2, upstream.maxConcurrent)
+        assertEquals(
+            listOf(51.0, 52.0, 51.0, 53.0, 52.0).map { GeocodeResult.Formatted("$it,0.0") },
+            results
+        )
+    }
+
+    @Test
+    fun `Given lookups in flight and waiting, when the geocoder is closed, then no results are delivered`() {
+        val upstream = SlowGeocoder()
+        val geocoder = CoalescingGeocoder(upstream, maxParallelLookups = 1)
+        val results = runBlocking {
+            val requests = (1..3).map {
+                async(Dispatchers.Default) {
+                    runCatching { geocoder.reverse(51.0 + it, 0.0, 10, CoalescingGeocoder.Priority.NORMAL) }
+                }
+            }
+            delay(50)
+            geocoder.close()
+            requests.awaitAll()
+        }
+        assertTrue(results.all { it.exceptionOrNull() is CancellationException })
+        assertEquals(1, upstream.lookups.get())
+    }
+}
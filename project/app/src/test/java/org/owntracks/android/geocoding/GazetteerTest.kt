@@ -0,0 +1,64 @@
+package org.owntracks.android.geocoding
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+
+class GazetteerTest {
+    private val places = listOf(
+        Gazetteer.Place(51.9607, 7.6261, "Münster"),
+        Gazetteer.Place(51.9625, 7.6256, "Prinzipalmarkt"),
+        Gazetteer.Place(-33.8688, 151.2093, "Sydney"),
+        Gazetteer.Place(40.7128, -74.0060, "New York"),
+        Gazetteer.Place(51.9620, 7.6280, "Salzstraße", Gazetteer.KIND_STREET)
+    )
+
+    private fun gazetteer(): Gazetteer =
+        ByteArrayOutputStream().also { Gazetteer.write(places, it) }
+            .toByteArray()
+            .let { Gazetteer.fromBuffer(ByteBuffer.wrap(it)) }
+
+    @Test
+    fun `Given a gazetteer, when looking up a point near a place, then the nearest place is returned`() {
+        assertEquals("Prinzipalmarkt", gazetteer().nearest(51.9624, 7.6257, 1000.0))
+        assertEquals("Sydney", gazetteer().nearest(-33.87, 151.21, 1000.0))
+        assertEquals("New York", gazetteer().nearest(40.713, -74.006, 1000.0))
+    }
+
+    @Test
+    fun `Given a gazetteer with streets, when looking up a kind, then only that kind is returned`() {
+        assertEquals("Salzstraße", gazetteer().nearest(51.9620, 7.6279, 1000.0, Gazetteer.KIND_STREET))
+        assertEquals("Münster", gazetteer().nearest(51.9609, 7.6263, 1000.0, Gazetteer.KIND_PLACE))
+        assertNull(gazetteer().nearest(40.713, -74.006, 1000.0, Gazetteer.KIND_STREET))
+    }
+
+    @Test(expected = IOException::class)
+    fun `Given a file that isn't a gazetteer, when opening it, then an IOException is thrown`() {
+        Gazetteer.fromBuffer(ByteBuffer.wrap(byteArrayOf(1, 2, 3)))
+    }
+
+    @Test(expected = IOException::class)
+    fun `Given a truncated gazetteer, when opening it, then an IOException is thrown`() {
+        val bytes = ByteArrayOutputStream().also { Gazetteer.write(places, it) }.toByteArray()
+        Gazetteer.fromBuffer(ByteBuffer.wrap(bytes.copyOf(bytes.size - 4)))
+    }
+
+    @Test(expected = IOException::class)
+    fun `Given a gazetteer cut off within its places, when opening it, then an IOException is thrown`() {
+        val bytes = ByteArrayOutputStream().also { Gazetteer.write(places, it) }.toByteArray()
+        Gazetteer.fromBuffer(ByteBuffer.wrap(bytes.copyOf(40)))
+    }
+
+    @Test
+    fun `Given a gazetteer, when looking up a point far from any place, then nothing is returned`() {
+        assertNull(gazetteer().nearest(0.0, 0.0, 1000.0))
+    }
+
+    @Test
+    fun `Given a gazetteer, when reading its size, then all places are counted`() {
+        assertEquals(5, gazetteer().size)
+    }
+}
@@ -0,0 +1,45 @@
+package org.owntracks.android.geocoding
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class GeocodeSpatialCacheTest {
+    private val home = GeocodeResult.Formatted("Home")
+    private val work = GeocodeResult.Formatted("Work")
+
+    @Test
+    fun `Given a cached result, when looking up a point within the radius, then the cached result is returned`() {
+        val cache = GeocodeSpatialCache(10)
+        cache.put(51.0, 0.0, home)
+        // ~11m north
+        assertEquals(home, cache.get(51.0001, 0.0, 20.0))
+    }
+
+    @Test
+    fun `Given a cached result, when looking up a point outside the radius, then nothing is returned`() {
+        val cache = GeocodeSpatialCache(10)
+        cache.put(51.0, 0.0, home)
+        // ~55m north
+        assertNull(cache.get(51.0005, 0.0, 20.0))
+    }
+
+    @Test
+    fun `Given results in neighbouring cells, when looking up a point, then the nearest result is returned`() {
+        val cache = GeocodeSpatialCache(10)
+        cache.put(50.9995, 0.0, home)
+        cache.put(51.0012, 0.0, work)
+        assertEquals(work, cache.get(51.001, 0.0, 100.0))
+    }
+
+    @Test
+    fun `Given a full cache, when adding a result, then the least recently used result is evicted`() {
+        val cache = GeocodeSpatialCache(2)
+        cache.put(51.0, 0.0, home)
+        cache.put(52.0, 0.0, work)
+        cache.get(51.0, 0.0, 20.0)
+        cache.put(53.0, 0.0, GeocodeResult.Empty)
+        assertEquals(home, cache.get(51.0, 0.0, 20.0))
+        assertNull(cache.get(52.0, 0.0, 20.0))
+    }
+}
@@ -0,0 +1,58 @@
+package org.owntracks.android.location
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.owntracks.android.location.AdaptiveSamplingController.Motion
+import java.util.concurrent.TimeUnit
+
+class AdaptiveSamplingControllerTest {
+    @Test
+    fun `Given fixes that stay put for a few minutes, when sampling, then the device is considered stationary`() {
+        val controller = AdaptiveSamplingController()
+        (0..10).forEach {
+            controller.onLocation(51.0 + (it % 2) * 5 * meter, 0.0, 10f, 0f, it * 30 * second)
+        }
+        assertEquals(Motion.STATIONARY, controller.motion)
+        val profile = controller.profile(10 * second, true)
+        assertEquals(TimeUnit.MINUTES.toMillis(5), profile.interval)
+        assertEquals(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY, profile.priority)
+    }
+
+    @Test
+    fun `Given a stationary device, when fixes start moving, then the configured interval is used again`() {
+        val controller = AdaptiveSamplingController()
+        (0..10).forEach { controller.onLocation(51.0, 0.0, 10f, 0f, it * 30 * second) }
+        assertTrue(controller.onLocation(51.0 + 200 * meter, 0.0, 10f, 1f, 330 * second))
+        assertEquals(Motion.SLOW, controller.motion)
+        assertEquals(10 * second, controller.profile(10 * second, true).interval)
+        assertEquals(LocationRequest.PRIORITY_HIGH_ACCURACY, controller.profile(10 * second, true).priority)
+    }
+
+    @Test
+    fun `Given fixes moving at driving speed, when sampling, then motion is fast with no displacement filter`() {
+        val controller = AdaptiveSamplingController()
+        (0..10).forEach { controller.onLocation(51.0 + it * 150 * meter, 0.0, 10f, null, it * 10 * second) }
+        assertEquals(Motion.FAST, controller.motion)
+        assertEquals(0f, controller.profile(10 * second, true).smallestDisplacement)
+    }
+
+    @Test
+    fun `Given jittery fixes within their accuracy and no speed, when sampling, then the device is considered stationary`() {
+        val controller = AdaptiveSamplingController()
+        (0..20).forEach {
+            controller.onLocation(51.0 + (it % 2) * 25 * meter, 0.0, 25f, null, it * 10 * second)
+        }
+        assertEquals(Motion.STATIONARY, controller.motion)
+    }
+
+    @Test
+    fun `Given a stationary device, when a motion sensor fires, then motion is slow until fixes say otherwise`() {
+        val controller = AdaptiveSamplingController()
+        (0..10).forEach { controller.onLocation(51.0, 0.0, 10f, 0f, it * 30 * second) }
+        assertTrue(controller.onMotionDetected())
+        assertEquals(Motion.SLOW, controller.motion)
+        assertFalse(controller.onMotionDetected())
+    }
+}
@@ -0,0 +1,30 @@
+package org.owntracks.android.location
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class DouglasPeuckerTest {
+    @Test
+    fun `Given points on a straight line, when simplifying, then only the ends are kept`() {
+        val latitudes = doubleArrayOf(51.0, 51.001, 51.002, 51.003, 51.004)
+        val longitudes = doubleArrayOf(0.0, 0.0, 0.0, 0.0, 0.0)
+        assertArrayEquals(intArrayOf(0, 4), DouglasPeucker.simplify(latitudes, longitudes, 5, 1.0))
+    }
+
+    @Test
+    fun `Given a track with a detour larger than the tolerance, when simplifying, then the detour is kept`() {
+        // The middle point is ~70m off the line between the ends
+        val latitudes = doubleArrayOf(51.0, 51.001, 51.002)
+        val longitudes = doubleArrayOf(0.0, 0.001, 0.0)
+        assertArrayEquals(intArrayOf(0, 1, 2), DouglasPeucker.simplify(latitudes, longitudes, 3, 10.0))
+        assertArrayEquals(intArrayOf(0, 2), DouglasPeucker.simplify(latitudes, longitudes, 3, 100.0))
+    }
+
+    @Test
+    fun `Given a higher zoom level, when calculating the tolerance, then it is smaller`() {
+        val street = DouglasPeucker.toleranceForZoom(0.0, 16.0)
+        val city = DouglasPeucker.toleranceForZoom(0.0, 12.0)
+        assertEquals(16.0, city / street, 0.0001)
+    }
+}
@@ -0,0 +1,75 @@
+package org.owntracks.android.location
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.owntracks.android.location.LocationFilter.Verdict
+import kotlin.math.abs
+
+class LocationFilterTest {
+    @Test
+    fun `Given a disabled filter, when fixes arrive, then they are all accepted as reported`() {
+        val filter = LocationFilter()
+        filter.configure(0, 0, 0, false)
+        assertEquals(Verdict.ACCEPT, filter.filter(51.0, 0.0, 10f, 0))
+        assertEquals(Verdict.ACCEPT, filter.filter(52.0, 0.0, 10f, second))
+        assertEquals(52.0, filter.latitude, 0.0)
+    }
+
+    @Test
+    fun `Given a maximum speed, when a fix implies moving faster than that, then it is rejected as an outlier`() {
+        val filter = LocationFilter()
+        filter.configure(0, 0, 50, false)
+        assertEquals(Verdict.ACCEPT, filter.filter(51.0, 0.0, 10f, 0))
+        assertEquals(Verdict.OUTLIER, filter.filter(51.0 + 5000 * meter, 0.0, 10f, 10 * second))
+        assertEquals(Verdict.ACCEPT, filter.filter(51.0 + 300 * meter, 0.0, 10f, 20 * second))
+    }
+
+    @Test
+    fun `Given a maximum speed, when fixes keep disagreeing with the last good one, then they are eventually accepted`() {
+        val filter = LocationFilter()
+        filter.configure(0, 0, 50, false)
+        filter.filter(51.0, 0.0, 10f, 0)
+        val verdicts = (1..4).map { filter.filter(52.0, 0.0, 10f, it * second) }
+        assertEquals(listOf(Verdict.OUTLIER, Verdict.OUTLIER, Verdict.OUTLIER, Verdict.ACCEPT), verdicts)
+        assertEquals(Verdict.ACCEPT, filter.filter(52.0 + 10 * meter, 0.0, 10f, 5 * second))
+    }
+
+    @Test
+    fun `Given a minimum interval, when a fix arrives too soon after the last published one, then it is not published`() {
+        val filter = LocationFilter()
+        filter.configure(0, 30, 0, false)
+        assertEquals(Verdict.ACCEPT, filter.filter(51.0, 0.0, 10f, 0))
+        assertEquals(Verdict.TOO_SOON, filter.filter(51.1, 0.0, 10f, 10 * second))
+        assertEquals(Verdict.ACCEPT, filter.filter(51.2, 0.0, 10f, 30 * second))
+    }
+
+    @Test
+    fun `Given a minimum distance, when a fix is close to the last published one, then it is not published`() {
+        val filter = LocationFilter()
+        filter.configure(100, 0, 0, false)
+        assertEquals(Verdict.ACCEPT, filter.filter(51.0, 0.0, 10f, 0))
+        assertEquals(Verdict.TOO_CLOSE, filter.filter(51.0 + 60 * meter, 0.0, 10f, 10 * second))
+        assertEquals(Verdict.ACCEPT, filter.filter(51.0 + 120 * meter, 0.0, 10f, 20 * second))
+    }
+
+    @Test
+    fun `Given smoothing, when an inaccurate fix jumps away, then the position moves less than the fix did`() {
+        val filter = LocationFilter()
+        filter.configure(0, 0, 0, true)
+        filter.filter(51.0, 0.0, 5f, 0)
+        filter.filter(51.0, 0.0, 5f, second)
+        filter.filter(51.0 + 100 * meter, 0.0, 100f, 2 * second)
+        val moved = (filter.latitude - 51.0) / meter
+        assertTrue("Moved $moved meters", moved > 0 && moved < 10)
+    }
+
+    @Test
+    fun `Given smoothing, when an accurate fix arrives, then the position follows it closely`() {
+        val filter = LocationFilter()
+        filter.configure(0, 0, 0, true)
+        filter.filter(51.0, 0.0, 50f, 0)
+        filter.filter(51.0 + 100 * meter, 0.0, 3f, 60 * second)
+        assertTrue(abs(filter.latitude - (51.0 + 100 * meter)) / meter < 5)
+    }
+}
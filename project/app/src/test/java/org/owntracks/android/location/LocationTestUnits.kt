@@ -0,0 +1,10 @@
+package org.owntracks.android.location
+
+import org.owntracks.android.support.Distance
+import java.util.concurrent.TimeUnit
+
+/**
+ * Units for building test fixes: one meter of latitude in degrees, and one second in milliseconds
+ */
+internal const val meter = 1 / Distance.METERS_PER_DEGREE
+internal val second = TimeUnit.SECONDS.toMillis(1)
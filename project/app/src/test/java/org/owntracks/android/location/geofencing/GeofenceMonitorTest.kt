@@ -0,0 +1,98 @@
+package org.owntracks.android.location.geofencing
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.owntracks.android.location.meter
+import org.owntracks.android.location.geofencing.Geofence.Companion.GEOFENCE_TRANSITION_DWELL
+import org.owntracks.android.location.geofencing.Geofence.Companion.GEOFENCE_TRANSITION_ENTER
+import org.owntracks.android.location.geofencing.Geofence.Companion.GEOFENCE_TRANSITION_EXIT
+
+class GeofenceMonitorTest {
+    private fun geofence(id: String, latitude: Double, loiteringDelay: Int? = null) = Geofence(
+        id,
+        GEOFENCE_TRANSITION_ENTER or GEOFENCE_TRANSITION_EXIT or (if (loiteringDelay != null) GEOFENCE_TRANSITION_DWELL else 0),
+        null,
+        latitude,
+        0.0,
+        100f,
+        Geofence.NEVER_EXPIRE,
+        loiteringDelay
+    )
+
+    private fun GeofenceMonitor.at(latitude: Double, now: Long = 0) =
+        onLocation(latitude, 0.0, 5f, now).map { transition -> transition.transition to transition.geofences.map { it.requestId } }
+
+    @Test
+    fun `Given a location inside a fence when it's added, when the first location arrives, then an initial enter is reported`() {
+        val monitor = GeofenceMonitor()
+        monitor.add(listOf(geofence("a", 51.0)), GEOFENCE_TRANSITION_ENTER, 0)
+        assertEquals(listOf(GEOFENCE_TRANSITION_ENTER to listOf("a")), monitor.at(51.0 + 50 * meter))
+    }
+
+    @Test
+    fun `Given a location outside a fence when it's added, when the first location arrives, then nothing is reported`() {
+        val monitor = GeofenceMonitor()
+        monitor.add(listOf(geofence("a", 51.0)), GEOFENCE_TRANSITION_ENTER, 0)
+        assertTrue(monitor.at(52.0).isEmpty())
+        assertEquals(listOf(GEOFENCE_TRANSITION_ENTER to listOf("a")), monitor.at(51.0))
+    }
+
+    @Test
+    fun `Given an occupied fence, when locations jitter just outside its edge, then no exit is reported until past the margin`() {
+        val monitor = GeofenceMonitor()
+        monitor.add(listOf(geofence("a", 51.0)), GEOFENCE_TRANSITION_ENTER, 0)
+        monitor.at(51.0)
+        assertTrue(monitor.at(51.0 + 110 * meter).isEmpty())
+        assertTrue(monitor.at(51.0 + 95 * meter).isEmpty())
+        assertEquals(listOf(GEOFENCE_TRANSITION_EXIT to listOf("a")), monitor.at(51.0 + 150 * meter))
+        assertEquals(listOf(GEOFENCE_TRANSITION_ENTER to listOf("a")), monitor.at(51.0))
+    }
+
+    @Test
+    fun `Given an occupied fence, when the location jumps far away, then an exit is reported`() {
+        val monitor = GeofenceMonitor()
+        monitor.add(listOf(geofence("a", 51.0)), GEOFENCE_TRANSITION_ENTER, 0)
+        monitor.at(51.0)
+        assertEquals(listOf(GEOFENCE_TRANSITION_EXIT to listOf("a")), monitor.at(-30.0))
+    }
+
+    @Test
+    fun `Given an occupied fence, when an inaccurate location is clearly outside it, then an exit is reported`() {
+        val monitor = GeofenceMonitor()
+        monitor.add(listOf(geofence("a", 51.0)), GEOFENCE_TRANSITION_ENTER, 0)
+        monitor.at(51.0)
+        assertTrue(monitor.onLocation(51.0 + 600 * meter, 0.0, 500f, 0).isEmpty())
+        assertEquals(
+            listOf(GEOFENCE_TRANSITION_EXIT to listOf("a")),
+            monitor.onLocation(51.0 + 1000 * meter, 0.0, 500f, 0).map { it.transition to it.geofences.map { g -> g.requestId } }
+        )
+    }
+
+    @Test
+    fun `Given an empty fence, when an inaccurate location is near it, then no entry is reported`() {
+        val monitor = GeofenceMonitor()
+        monitor.add(listOf(geofence("a", 51.0)), GEOFENCE_TRANSITION_ENTER, 0)
+        monitor.at(52.0)
+        assertTrue(monitor.onLocation(51.0, 0.0, 500f, 0).isEmpty())
+    }
+
+    @Test
+    fun `Given a fence with a loitering delay, when occupied for long enough, then a single dwell is reported`() {
+        val monitor = GeofenceMonitor()
+        monitor.add(listOf(geofence("a", 51.0, loiteringDelay = 1000)), GEOFENCE_TRANSITION_ENTER, 0)
+        assertEquals(listOf(GEOFENCE_TRANSITION_ENTER to listOf("a")), monitor.at(51.0, 0))
+        assertTrue(monitor.at(51.0, 500).isEmpty())
+        assertEquals(listOf(GEOFENCE_TRANSITION_DWELL to listOf("a")), monitor.at(51.0, 1000))
+        assertTrue(monitor.at(51.0, 2000).isEmpty())
+    }
+
+    @Test
+    fun `Given many fences, when near one of them, then the distance to its edge is reported`() {
+        val monitor = GeofenceMonitor()
+        monitor.add((0 until 1000).map { geofence("$it", 40.0 + it * 0.01) }, GEOFENCE_TRANSITION_ENTER, 0)
+        assertEquals(100.0, monitor.distanceToNearestBoundary(45.0 + 200 * meter, 0.0)!!, 2.0)
+        assertNull(monitor.distanceToNearestBoundary(0.0, 0.0))
+    }
+}
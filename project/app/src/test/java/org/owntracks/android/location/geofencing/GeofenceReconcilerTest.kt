@@ -0,0 +1,111 @@
+package org.owntracks.android.location.geofencing
+
+import android.app.PendingIntent
+import com.nhaarman.mockitokotlin2.mock
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class GeofenceReconcilerTest {
+    private class RecordingGeofencingClient : GeofencingClient {
+        val registered = HashSet<String>()
+        val added = mutableListOf<String>()
+        val removed = mutableListOf<String>()
+        var removedAll = 0
+
+        override fun removeGeofences(GeofencePendingIntent: PendingIntent) {
+            removedAll++
+            registered.clear()
+        }
+
+        override fun removeGeofences(requestIds: List<String>) {
+            removed.addAll(requestIds)
+            registered.removeAll(requestIds)
+        }
+
+        override fun addGeofences(request: GeofencingRequest, GeofencePendingIntent: PendingIntent) {
+            request.geofences!!.mapNotNull { it.requestId }.run {
+                added.addAll(this)
+                registered.addAll(this)
+            }
+        }
+
+        fun reset() {
+            added.clear()
+            removed.clear()
+            removedAll = 0
+        }
+    }
+
+    private fun geofence(id: Int, radius: Float = 100f) = Geofence(
+        id.toString(),
+        Geofence.GEOFENCE_TRANSITION_ENTER or Geofence.GEOFENCE_TRANSITION_EXIT,
+        null,
+        id.toDouble() * 0.01,
+        0.0,
+        radius,
+        Geofence.NEVER_EXPIRE,
+        null
+    )
+
+    @Test
+    fun `Given registered geofences, when the set changes, then only the differences are submitted`() {
+        val client = RecordingGeofencingClient()
+        val reconciler = GeofenceReconciler(client, mock())
+        reconciler.setGeofences((0 until 5).map { geofence(it) }, null, null)
+        assertEquals(5, client.added.size)
+        client.reset()
+
+        reconciler.setGeofences((1 until 5).map { geofence(it) } + geofence(2, 200f) + geofence(7), null, null)
+        assertEquals(setOf("0", "2"), client.removed.toSet())
+        assertEquals(setOf("2", "7"), client.added.toSet())
+        assertEquals((1 until 5).map { it.toString() }.toSet() + "7", client.registered)
+    }
+
+    @Test
+    fun `Given geofences left by a previous process, when first set, then everything is removed before adding`() {
+        val client = RecordingGeofencingClient()
+        client.registered.addAll(listOf("stale", "0"))
+        val reconciler = GeofenceReconciler(client, mock())
+        reconciler.setGeofences((0 until 5).map { geofence(it) }, null, null)
+        assertEquals(1, client.removedAll)
+        assertEquals((0 until 5).map { it.toString() }.toSet(), client.registered)
+    }
+
+    @Test
+    fun `Given registered geofences, when reset and set again, then they are all registered again`() {
+        val client = RecordingGeofencingClient()
+        val reconciler = GeofenceReconciler(client, mock())
+        reconciler.setGeofences((0 until 5).map { geofence(it) }, null, null)
+        client.reset()
+        reconciler.reset()
+        reconciler.setGeofences((0 until 5).map { geofence(it) }, null, null)
+        assertEquals(1, client.removedAll)
+        assertEquals(5, client.added.size)
+    }
+
+    @Test
+    fun `Given unchanged geofences, when set again, then nothing is submitted`() {
+        val client = RecordingGeofencingClient()
+        val reconciler = GeofenceReconciler(client, mock())
+        reconciler.setGeofences((0 until 5).map { geofence(it) }, 0.0, 0.0)
+        client.reset()
+        reconciler.setGeofences((0 until 5).map { geofence(it) }, 0.0, 0.0)
+        assertTrue(client.added.isEmpty())
+        assertTrue(client.removed.isEmpty())
+    }
+
+    @Test
+    fun `Given more geofences than the limit, when the device moves, then the nearest ones are registered`() {
+        val client = RecordingGeofencingClient()
+        val reconciler = GeofenceReconciler(client, mock(), limit = 10)
+        reconciler.setGeofences((0 until 100).map { geofence(it) }, 0.0, 0.0)
+        assertEquals((0 until 10).map { it.toString() }.toSet(), client.registered)
+
+        reconciler.onLocation(0.001, 0.0)
+        assertEquals((0 until 10).map { it.toString() }.toSet(), client.registered)
+
+        reconciler.onLocation(0.502, 0.0)
+        assertEquals((46 until 56).map { it.toString() }.toSet(), client.registered)
+    }
+}
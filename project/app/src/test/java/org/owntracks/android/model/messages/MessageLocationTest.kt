@@ -13,6 +13,7 @@ import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNull
 import org.junit.Test
 import org.owntracks.android.services.WifiInfoProvider
+import org.owntracks.android.support.DeviceStateSnapshot
 import java.lang.reflect.Field
 import java.lang.reflect.Modifier
 
@@ -76,12 +77,7 @@ class MessageLocationTest {
             on { connectionInfo } doReturn wifiInfo
         }
 
-        val mockContext: Context = mock {
-            on { getSystemService(Context.WIFI_SERVICE) } doReturn mockWifiManager
-        }
-        val wifiInfoProvider = WifiInfoProvider(mockContext)
-
-        val messageLocation = MessageLocation.fromLocationAndWifiInfo(location, wifiInfoProvider)
+        val messageLocation = MessageLocation.fromLocationAndDeviceState(location, deviceState(mockWifiManager))
         assertEquals("My SSID", messageLocation.ssid)
         assertEquals("12:34:56:78", messageLocation.bssid)
     }
@@ -103,16 +99,18 @@ class MessageLocationTest {
             on { connectionInfo } doReturn wifiInfo
         }
 
-        val mockContext: Context = mock {
-            on { getSystemService(Context.WIFI_SERVICE) } doReturn mockWifiManager
-        }
-        val wifiInfoProvider = WifiInfoProvider(mockContext)
-
-        val messageLocation = MessageLocation.fromLocationAndWifiInfo(location, wifiInfoProvider)
+        val messageLocation = MessageLocation.fromLocationAndDeviceState(location, deviceState(mockWifiManager))
         assertNull(messageLocation.ssid)
         assertNull(messageLocation.bssid)
     }
 
+    private fun deviceState(wifiManager: WifiManager): DeviceStateSnapshot {
+        val context: Context = mock {
+            on { getSystemService(Context.WIFI_SERVICE) } doReturn wifiManager
+        }
+        return DeviceStateSnapshot(context, mock {}, WifiInfoProvider(context))
+    }
+
     @Throws(Exception::class)
     fun setFinalStatic(field: Field, newValue: Any?) {
         field.isAccessible = true
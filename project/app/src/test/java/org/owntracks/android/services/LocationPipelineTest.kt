@@ -0,0 +1,92 @@
+package org.owntracks.android.services
+
+import android.location.Location
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.anyOrNull
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.inOrder
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import org.junit.Before
+import org.junit.Test
+import org.owntracks.android.data.WaypointModel
+import org.owntracks.android.data.repos.LocationRepo
+import org.owntracks.android.location.geofencing.Geofence
+import org.owntracks.android.model.messages.MessageLocation
+import org.owntracks.android.model.messages.MessageTransition
+
+class LocationPipelineTest {
+    private lateinit var locationProcessor: LocationProcessor
+    private lateinit var pipeline: LocationPipeline
+    private val pending = mutableListOf<Runnable>()
+
+    @Before
+    fun setup() {
+        locationProcessor = mock {}
+        val locationRepo = mock<LocationRepo> {
+            on { currentLocationTime } doReturn 0L
+        }
+        pending.clear()
+        pipeline = LocationPipeline(locationProcessor, locationRepo) { pending.add(it) }
+    }
+
+    private fun runWorker() {
+        while (pending.isNotEmpty()) {
+            pending.removeAt(0).run()
+        }
+    }
+
+    private fun fix(time: Long): Location = mock {
+        on { this.time } doReturn time
+    }
+
+    @Test
+    fun `given a full queue, when another fix arrives, then the oldest fixes are dropped and the rest kept in order`() {
+        val waypoint = mock<WaypointModel> {}
+        val transitionLocation = fix(0)
+        pipeline.submitTransition(
+            waypoint,
+            transitionLocation,
+            Geofence.GEOFENCE_TRANSITION_ENTER,
+            MessageTransition.TRIGGER_CIRCULAR
+        )
+        val fixes = (1..LocationPipeline.CAPACITY + 5).map { fix(it.toLong()) }
+        fixes.forEach { pipeline.submit(it, MessageLocation.REPORT_TYPE_DEFAULT) }
+
+        runWorker()
+
+        val dropped = fixes.size - (LocationPipeline.CAPACITY - 1)
+        fixes.take(dropped).forEach { verify(locationProcessor, never()).onLocationChanged(eq(it), anyOrNull()) }
+        inOrder(locationProcessor) {
+            verify().onWaypointTransition(
+                waypoint,
+                transitionLocation,
+                Geofence.GEOFENCE_TRANSITION_ENTER,
+                MessageTransition.TRIGGER_CIRCULAR
+            )
+            fixes.drop(dropped).forEach { verify().onLocationChanged(it, MessageLocation.REPORT_TYPE_DEFAULT) }
+        }
+    }
+
+    @Test
+    fun `given a queue full of pings, when another ping arrives, then none are dropped`() {
+        repeat(LocationPipeline.CAPACITY + 1) { pipeline.submit(MessageLocation.REPORT_TYPE_PING) }
+
+        runWorker()
+
+        verify(locationProcessor, times(LocationPipeline.CAPACITY + 1))
+            .publishLocationMessage(MessageLocation.REPORT_TYPE_PING)
+    }
+
+    @Test
+    fun `given a fix no newer than the current location, when it is processed, then it is skipped`() {
+        pipeline.submit(fix(0), MessageLocation.REPORT_TYPE_DEFAULT)
+
+        runWorker()
+
+        verify(locationProcessor, never()).onLocationChanged(any(), anyOrNull())
+    }
+}
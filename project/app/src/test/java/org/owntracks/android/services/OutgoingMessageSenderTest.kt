@@ -0,0 +1,149 @@
+package org.owntracks.android.services
+
+import androidx.test.espresso.idling.CountingIdlingResource
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.test.TestCoroutineDispatcher
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.owntracks.android.model.messages.MessageBase
+import java.io.IOException
+import java.util.concurrent.LinkedBlockingDeque
+
+@ExperimentalCoroutinesApi
+class OutgoingMessageSenderTest {
+    private val dispatcher = TestCoroutineDispatcher()
+    private val queue = LinkedBlockingDeque<MessageBase>(10)
+    private val sent = mutableListOf<MessageBase>()
+    private var failureFor: (MessageBase, Int) -> Exception? = { _, _ -> null }
+    private lateinit var idlingResource: CountingIdlingResource
+    private lateinit var endpoint: MessageProcessorEndpoint
+    private lateinit var sender: OutgoingMessageSender
+
+    @Before
+    fun setup() {
+        idlingResource = mock { on { isIdleNow } doReturn false }
+        endpoint = mock {
+            on { sendMessage(any()) } doAnswer {
+                val message = it.getArgument<MessageBase>(0)
+                sent.add(message)
+                failureFor(message, sent.count { attempt -> attempt == message })?.let { e -> throw e }
+                Unit
+            }
+        }
+        sender = OutgoingMessageSender(queue, idlingResource, dispatcher)
+    }
+
+    @After
+    fun teardown() {
+        sender.stop()
+    }
+
+    private fun message(retries: Int = 10): MessageBase = mock { on { numberOfRetries } doReturn retries }
+
+    private fun sendingFailed() = OutgoingMessageSendingException(Exception("broker unavailable"))
+
+    @Test
+    fun `given a message that keeps failing, when retrying it, then the wait doubles each time`() {
+        val message = message()
+        failureFor = { _, _ -> sendingFailed() }
+        queue.offer(message)
+        sender.start(endpoint)
+        assertEquals(1, sent.size)
+
+        dispatcher.advanceTimeBy(999)
+        assertEquals(1, sent.size)
+        dispatcher.advanceTimeBy(1)
+        assertEquals(2, sent.size)
+        dispatcher.advanceTimeBy(1999)
+        assertEquals(2, sent.size)
+        dispatcher.advanceTimeBy(1)
+        assertEquals(3, sent.size)
+        dispatcher.advanceTimeBy(4000)
+        assertEquals(4, sent.size)
+        assertEquals(message, queue.peekFirst())
+        verify(idlingResource, never()).decrement()
+    }
+
+    @Test
+    fun `given a message that fails more times than it allows, when it runs out of retries, then it is dropped and the next is sent`() {
+        val failing = message(retries = 3)
+        val next = message()
+        failureFor = { message, _ -> if (message == failing) sendingFailed() else null }
+        queue.offer(failing)
+        queue.offer(next)
+        sender.start(endpoint)
+
+        dispatcher.advanceTimeBy(1000 + 2000)
+
+        assertEquals(listOf(failing, failing, failing, next), sent)
+        assertEquals(0, queue.size)
+        dispatcher.advanceTimeBy(60_000)
+        assertEquals(4, sent.size)
+    }
+
+    @Test
+    fun `given a message that can't be serialized, when sending it, then it is dropped without retrying`() {
+        val unserializable = message()
+        val next = message()
+        failureFor = { message, _ -> if (message == unserializable) IOException("unserializable") else null }
+        queue.offer(unserializable)
+        queue.offer(next)
+        sender.start(endpoint)
+
+        assertEquals(listOf(unserializable, next), sent)
+        assertEquals(0, queue.size)
+        dispatcher.advanceTimeBy(60_000)
+        assertEquals(2, sent.size)
+    }
+
+    @Test
+    fun `given the loop is cancelled while sending, when it stops, then the message goes back on the head of the queue`() {
+        val interrupted = message()
+        val next = message()
+        failureFor = { message, _ -> if (message == interrupted) CancellationException("stopped") else null }
+        queue.offer(interrupted)
+        queue.offer(next)
+        sender.start(endpoint)
+
+        assertEquals(listOf(interrupted), sent)
+        assertEquals(listOf(interrupted, next), queue.toList())
+
+        failureFor = { _, _ -> null }
+        sender.start(endpoint)
+        assertEquals(listOf(interrupted, interrupted, next), sent)
+        assertEquals(0, queue.size)
+    }
+
+    @Test
+    fun `given messages that are sent, retried and dropped, when they are all done, then the idling resource is decremented once for each`() {
+        val retried = message()
+        val unserializable = message()
+        failureFor = { message, attempt ->
+            when {
+                message == retried && attempt == 1 -> sendingFailed()
+                message == unserializable -> IOException("unserializable")
+                else -> null
+            }
+        }
+        queue.offer(retried)
+        queue.offer(message())
+        queue.offer(unserializable)
+        sender.start(endpoint)
+        verify(idlingResource, never()).decrement()
+
+        dispatcher.advanceTimeBy(1000)
+
+        assertEquals(4, sent.size)
+        verify(idlingResource, times(3)).decrement()
+    }
+}
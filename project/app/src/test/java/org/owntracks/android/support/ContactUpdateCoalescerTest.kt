@@ -0,0 +1,74 @@
+package org.owntracks.android.support
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.verify
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.owntracks.android.model.FusedContact
+
+class ContactUpdateCoalescerTest {
+    private lateinit var contactsUpdated: EventChannel<List<FusedContact>>
+    private lateinit var coalescer: ContactUpdateCoalescer
+    private val scheduled = mutableListOf<Runnable>()
+
+    @Before
+    fun setup() {
+        contactsUpdated = mock {}
+        val eventChannels = mock<EventChannels> {
+            on { contactsUpdated } doReturn contactsUpdated
+        }
+        scheduled.clear()
+        coalescer = ContactUpdateCoalescer(eventChannels) { scheduled.add(it) }
+    }
+
+    private fun flushScheduled() {
+        val toRun = scheduled.toList()
+        scheduled.clear()
+        toRun.forEach { it.run() }
+    }
+
+    @Test
+    fun `given several updates before a flush, when flushing, then they are delivered as one batch`() {
+        val first = FusedContact("first")
+        val second = FusedContact("second")
+        coalescer.offer(first)
+        coalescer.offer(second)
+        coalescer.offer(first)
+        assertEquals(1, scheduled.size)
+        flushScheduled()
+        verify(contactsUpdated).post(listOf(first, second))
+    }
+
+    @Test
+    fun `given a flush has happened, when offering another update, then another flush is scheduled`() {
+        val contact = FusedContact("contact")
+        coalescer.offer(contact)
+        flushScheduled()
+        coalescer.offer(contact)
+        assertEquals(1, scheduled.size)
+    }
+
+    @Test
+    fun `given a pending update, when it is cancelled, then it is not delivered`() {
+        val kept = FusedContact("kept")
+        val removed = FusedContact("removed")
+        coalescer.offer(kept)
+        coalescer.offer(removed)
+        coalescer.cancel(removed)
+        flushScheduled()
+        verify(contactsUpdated).post(listOf(kept))
+    }
+
+    @Test
+    fun `given every pending update is cancelled, when flushing, then nothing is posted`() {
+        val contact = FusedContact("contact")
+        coalescer.offer(contact)
+        coalescer.cancel(contact)
+        flushScheduled()
+        verify(contactsUpdated, never()).post(any())
+    }
+}
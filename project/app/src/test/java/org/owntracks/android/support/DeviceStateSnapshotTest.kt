@@ -0,0 +1,69 @@
+package org.owntracks.android.support
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.net.wifi.WifiManager
+import android.os.BatteryManager
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.argumentCaptor
+import com.nhaarman.mockitokotlin2.atLeastOnce
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.verify
+import com.nhaarman.mockitokotlin2.whenever
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.owntracks.android.model.BatteryStatus
+import org.owntracks.android.model.messages.MessageLocation
+import org.owntracks.android.services.WifiInfoProvider
+
+class DeviceStateSnapshotTest {
+    private fun batteryChanged(level: Int, status: Int): Intent = mock {
+        on { action } doReturn Intent.ACTION_BATTERY_CHANGED
+        on { getIntExtra(BatteryManager.EXTRA_LEVEL, 0) } doReturn level
+        on { getIntExtra(BatteryManager.EXTRA_STATUS, 0) } doReturn status
+    }
+
+    @Test
+    fun `Given a charging battery on mobile data, when reading the snapshot, then the battery and network state are reported`() {
+        val battery = batteryChanged(42, BatteryManager.BATTERY_STATUS_CHARGING)
+        val context: Context = mock {
+            on { registerReceiver(any(), any()) } doReturn battery
+        }
+        val deviceMetricsProvider: DeviceMetricsProvider = mock {
+            on { connectionType } doReturn MessageLocation.CONN_TYPE_MOBILE
+        }
+        val snapshot = DeviceStateSnapshot(context, deviceMetricsProvider, mock {})
+
+        assertEquals(42, snapshot.batteryLevel)
+        assertEquals(BatteryStatus.CHARGING, snapshot.batteryStatus)
+        assertEquals(MessageLocation.CONN_TYPE_MOBILE, snapshot.connectionType)
+        assertNull(snapshot.bssid)
+        assertNull(snapshot.ssid)
+    }
+
+    @Test
+    fun `Given a started snapshot, when the battery and WiFi change, then the new state is reported`() {
+        val context: Context = mock {
+            on { registerReceiver(any(), any()) } doReturn batteryChanged(80, BatteryManager.BATTERY_STATUS_DISCHARGING)
+        }
+        val wifiInfoProvider: WifiInfoProvider = mock {}
+        val snapshot = DeviceStateSnapshot(context, mock {}, wifiInfoProvider)
+        assertEquals(BatteryStatus.UNPLUGGED, snapshot.batteryStatus)
+        assertNull(snapshot.ssid)
+
+        val receiver = argumentCaptor<BroadcastReceiver>()
+        verify(context, atLeastOnce()).registerReceiver(receiver.capture(), any())
+        whenever(wifiInfoProvider.getBSSID()).thenReturn("12:34:56:78")
+        whenever(wifiInfoProvider.getSSID()).thenReturn("My SSID")
+        receiver.firstValue.onReceive(context, batteryChanged(100, BatteryManager.BATTERY_STATUS_FULL))
+        receiver.firstValue.onReceive(context, mock { on { action } doReturn WifiManager.NETWORK_STATE_CHANGED_ACTION })
+
+        assertEquals(100, snapshot.batteryLevel)
+        assertEquals(BatteryStatus.FULL, snapshot.batteryStatus)
+        assertEquals("My SSID", snapshot.ssid)
+        assertEquals("12:34:56:78", snapshot.bssid)
+    }
+}
@@ -0,0 +1,21 @@
+package org.owntracks.android.support
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class DistanceTest {
+    @Test
+    fun `Given two points one degree of latitude apart, when measuring the distance, then it is one degree in meters`() {
+        assertEquals(Distance.METERS_PER_DEGREE, Distance.meters(51.0, 0.0, 52.0, 0.0), 0.01)
+    }
+
+    @Test
+    fun `Given two points one degree of longitude apart at 60 degrees north, when measuring the distance, then it is about half a degree in meters`() {
+        assertEquals(Distance.METERS_PER_DEGREE / 2, Distance.meters(60.0, 0.0, 60.0, 1.0), 10.0)
+    }
+
+    @Test
+    fun `Given the same point twice, when measuring the distance, then it is zero`() {
+        assertEquals(0.0, Distance.meters(51.5, -0.1, 51.5, -0.1), 0.0)
+    }
+}
@@ -0,0 +1,18 @@
+package org.owntracks.android.support
+
+import kotlinx.coroutines.Dispatchers
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class EventChannelTest {
+    @Test
+    fun `given a new subscription, when posting straight away, then the subscriber gets the event`() {
+        val channel = EventChannel<Int>("test", conflated = false)
+        val received = mutableListOf<Int>()
+        val subscription = channel.subscribe("subscriber", Dispatchers.Unconfined) { received.add(it) }
+        channel.post(1)
+        channel.post(2)
+        subscription.cancel()
+        assertEquals(listOf(1, 2), received)
+    }
+}
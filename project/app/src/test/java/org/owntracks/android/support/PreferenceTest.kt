@@ -69,12 +69,18 @@ class PreferenceTest {
     private val preferenceKeys = listOf(
         "autostartOnBoot",
         "cleanSession",
+        "contactsIdleHours",
+        "contactsMaxCount",
         "debugLog",
         "deviceId",
         "fusedRegionDetection",
         "reverseGeocodeProvider",
         "ignoreInaccurateLocations",
         "ignoreStaleLocations",
+        "locationFilterMaxSpeed",
+        "locationFilterMinDistance",
+        "locationFilterMinInterval",
+        "locationFilterSmoothing",
         "locatorDisplacement",
         "locatorInterval",
         "locatorPriority",
@@ -75,6 +75,8 @@ class PreferencesGettersAndSetters(
                     arrayOf("AutostartOnBoot", "autostartOnBoot", true, true, Boolean::class, false),
                     arrayOf("CleanSession", "cleanSession", true, true, Boolean::class, false),
                     arrayOf("ClientId", "clientId", "testClientId", "testClientId", String::class, false),
+                    arrayOf("ContactsIdleHours", "contactsIdleHours", 24, 24, Int::class, false),
+                    arrayOf("ContactsMaxCount", "contactsMaxCount", 100, 100, Int::class, false),
                     arrayOf("DebugLog", "debugLog", true, true, Boolean::class, false),
                     arrayOf("DeviceId", "deviceId", "deviceId", "deviceId", String::class, false),
                     arrayOf("DontReuseHttpClient", "dontReuseHttpClient", true, true, Boolean::class, true),
@@ -83,6 +85,7 @@ class PreferencesGettersAndSetters(
                     arrayOf("ReverseGeocodeProvider", "reverseGeocodeProvider", "Device", "Device", String::class, false),
                     arrayOf("ReverseGeocodeProvider", "reverseGeocodeProvider", "OpenCage", "OpenCage", String::class, false),
                     arrayOf("ReverseGeocodeProvider", "reverseGeocodeProvider", "None", "None", String::class, false),
+                    arrayOf("ReverseGeocodeProvider", "reverseGeocodeProvider", "Offline", "Offline", String::class, false),
                     arrayOf("ReverseGeocodeProvider", "reverseGeocodeProvider", "Nonsense", "None", String::class, false),
                     arrayOf("Host", "host", "testHost", "testHost", String::class, false),
                     arrayOf("IgnoreInaccurateLocations", "ignoreInaccurateLocations", 123, 123, Int::class, false),
@@ -93,6 +96,10 @@ class PreferencesGettersAndSetters(
                     arrayOf("Keepalive", "keepalive", 899, 900, Int::class, false),
                     arrayOf("Keepalive", "keepalive", 0, 900, Int::class, false),
                     arrayOf("Keepalive", "keepalive", -1, 900, Int::class, false),
+                    arrayOf("LocationFilterMaxSpeed", "locationFilterMaxSpeed", 70, 70, Int::class, false),
+                    arrayOf("LocationFilterMinDistance", "locationFilterMinDistance", 50, 50, Int::class, false),
+                    arrayOf("LocationFilterMinInterval", "locationFilterMinInterval", 30, 30, Int::class, false),
+                    arrayOf("LocationFilterSmoothing", "locationFilterSmoothing", true, true, Boolean::class, false),
                     arrayOf("LocatorDisplacement", "locatorDisplacement", 1690, 1690, Int::class, false),
                     arrayOf("LocatorInterval", "locatorInterval", 1000, 1000, Int::class, false),
                     arrayOf("LocatorPriority", "locatorPriority", 2, 2, Int::class, false),
@@ -143,6 +150,8 @@ class PreferencesGettersAndSetters(
                 on { getString(eq(R.string.preferenceKeyAutostartOnBoot)) } doReturn "autostartOnBoot"
                 on { getString(eq(R.string.preferenceKeyCleanSession)) } doReturn "cleanSession"
                 on { getString(eq(R.string.preferenceKeyClientId)) } doReturn "clientId"
+                on { getString(eq(R.string.preferenceKeyContactsIdleHours)) } doReturn "contactsIdleHours"
+                on { getString(eq(R.string.preferenceKeyContactsMaxCount)) } doReturn "contactsMaxCount"
                 on { getString(eq(R.string.preferenceKeyDebugLog)) } doReturn "debugLog"
                 on { getString(eq(R.string.preferenceKeyDeviceId)) } doReturn "deviceId"
                 on { getString(eq(R.string.preferenceKeyDontReuseHttpClient)) } doReturn "dontReuseHttpClient"
@@ -153,6 +162,10 @@ class PreferencesGettersAndSetters(
                 on { getString(eq(R.string.preferenceKeyGeocodeEnabled)) } doReturn "geocodeEnabled"
                 on { getString(eq(R.string.preferenceKeyHost)) } doReturn "host"
                 on { getString(eq(R.string.preferenceKeyIgnoreInaccurateLocations)) } doReturn "ignoreInaccurateLocations"
+                on { getString(eq(R.string.preferenceKeyLocationFilterMaxSpeed)) } doReturn "locationFilterMaxSpeed"
+                on { getString(eq(R.string.preferenceKeyLocationFilterMinDistance)) } doReturn "locationFilterMinDistance"
+                on { getString(eq(R.string.preferenceKeyLocationFilterMinInterval)) } doReturn "locationFilterMinInterval"
+                on { getString(eq(R.string.preferenceKeyLocationFilterSmoothing)) } doReturn "locationFilterSmoothing"
                 on { getString(eq(R.string.preferenceKeyIgnoreStaleLocations)) } doReturn "ignoreStaleLocations"
                 on { getString(eq(R.string.preferenceKeyInfo)) } doReturn "info"
                 on { getString(eq(R.string.preferenceKeyKeepalive)) } doReturn "keepalive"
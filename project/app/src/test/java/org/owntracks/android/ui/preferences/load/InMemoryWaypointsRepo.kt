@@ -5,8 +5,10 @@ import io.objectbox.query.Query
 import org.greenrobot.eventbus.EventBus
 import org.owntracks.android.data.WaypointModel
 import org.owntracks.android.data.repos.WaypointsRepo
+import org.owntracks.android.support.RunThingsOnOtherThreads
 
-class InMemoryWaypointsRepo(eventBus: EventBus?) : WaypointsRepo(eventBus) {
+class InMemoryWaypointsRepo(eventBus: EventBus?, runThingsOnOtherThreads: RunThingsOnOtherThreads? = null) :
+    WaypointsRepo(eventBus, runThingsOnOtherThreads) {
     override fun get(tst: Long): WaypointModel {
         TODO("Not yet implemented")
     }
@@ -19,11 +21,11 @@ class InMemoryWaypointsRepo(eventBus: EventBus?) : WaypointsRepo(eventBus) {
         TODO("Not yet implemented")
     }
 
-    override fun getAllLive(): ObjectBoxLiveData<WaypointModel> {
+    override fun getAllLive_impl(): ObjectBoxLiveData<WaypointModel> {
         TODO("Not yet implemented")
     }
 
-    override fun getAllQuery(): Query<WaypointModel> {
+    override fun getAllQuery_impl(): Query<WaypointModel> {
         TODO("Not yet implemented")
     }
 
@@ -39,4 +41,12 @@ class InMemoryWaypointsRepo(eventBus: EventBus?) : WaypointsRepo(eventBus) {
         TODO("Not yet implemented")
     }
 
+    override fun updateTransitionStates_impl(states: MutableMap<Long, WaypointModel>?) {
+        TODO("Not yet implemented")
+    }
+
+    override fun importAll_impl(waypoints: MutableCollection<WaypointModel>?): MutableList<WaypointModel> {
+        TODO("Not yet implemented")
+    }
+
 }
\ No newline at end of file
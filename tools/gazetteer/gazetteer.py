@@ -0,0 +1,180 @@
+#!/usr/bin/env python3
+"""
+Builds a gazetteer.bin for the app's offline reverse geocoder.
+
+Places come from a GeoNames dump, streets from named OSM highways exported with osmium, and anything
+else from a simple CSV. See README.md alongside this script for where to get the inputs.
+
+The output format is described in Gazetteer.kt, and must be kept in step with it.
+"""
+
+import argparse
+import csv
+import json
+import math
+import struct
+import sys
+
+MAGIC = 0x4F54475A  # "OTGZ"
+VERSION = 2
+DEFAULT_CELL_SIZE_MICRODEGREES = 10_000
+KIND_PLACE = 0
+KIND_STREET = 1
+MAX_NAME_BYTES = 0xFFFF
+
+# Streets are stored as points along their length, at most this far apart
+STREET_SAMPLE_METERS = 50.0
+METERS_PER_DEGREE = 111_195.0
+
+
+def microdegrees(value):
+    # Rounds half up, like Kotlin's roundToInt
+    return int(math.floor(value * 1e6 + 0.5))
+
+
+def cell_key(latitude_index, longitude_index):
+    # Python's integers behave as infinite two's complement, so this is already the signed 64-bit key
+    return (latitude_index << 32) | (longitude_index & 0xFFFFFFFF)
+
+
+def truncated_utf8(name):
+    encoded = name.encode("utf-8")
+    if len(encoded) <= MAX_NAME_BYTES:
+        return encoded
+    return encoded[:MAX_NAME_BYTES].decode("utf-8", "ignore").encode("utf-8")
+
+
+def read_geonames(path, min_population):
+    """Populated places (feature class P) from a GeoNames tab-separated dump"""
+    with open(path, encoding="utf-8") as dump:
+        for line in dump:
+            fields = line.rstrip("\n").split("\t")
+            if len(fields) < 15 or fields[6] != "P":
+                continue
+            population = int(fields[14] or 0)
+            if population < min_population:
+                continue
+            yield float(fields[4]), float(fields[5]), fields[1], KIND_PLACE
+
+
+def distance_meters(latitude1, longitude1, latitude2, longitude2):
+    x = (longitude2 - longitude1) * math.cos(math.radians((latitude1 + latitude2) / 2))
+    y = latitude2 - latitude1
+    return math.hypot(x, y) * METERS_PER_DEGREE
+
+
+def sample_line(coordinates):
+    """Points along a line, no further apart than STREET_SAMPLE_METERS"""
+    previous = None
+    for longitude, latitude in coordinates:
+        if previous is not None:
+            length = distance_meters(previous[0], previous[1], latitude, longitude)
+            steps = int(length // STREET_SAMPLE_METERS)
+            for step in range(1, steps + 1):
+                fraction = step / (steps + 1)
+                yield (previous[0] + (latitude - previous[0]) * fraction,
+                       previous[1] + (longitude - previous[1]) * fraction)
+        yield latitude, longitude
+        previous = (latitude, longitude)
+
+
+def read_streets(path):
+    """Named highways from `osmium export -f geojsonseq` output"""
+    seen = set()
+    with open(path, encoding="utf-8") as export:
+        for line in export:
+            line = line.strip().lstrip("\x1e")
+            if not line:
+                continue
+            feature = json.loads(line)
+            name = (feature.get("properties") or {}).get("name")
+            geometry = feature.get("geometry") or {}
+            if not name:
+                continue
+            if geometry.get("type") == "LineString":
+                lines = [geometry["coordinates"]]
+            elif geometry.get("type") == "MultiLineString":
+                lines = geometry["coordinates"]
+            else:
+                continue
+            for coordinates in lines:
+                for latitude, longitude in sample_line(coordinates):
+                    # Neighbouring ways of the same street share points, so only keep one of them
+                    key = (name, round(latitude * 2000), round(longitude * 2000))
+                    if key in seen:
+                        continue
+                    seen.add(key)
+                    yield latitude, longitude, name, KIND_STREET
+
+
+def read_csv(path):
+    """latitude,longitude,name[,kind] rows, where kind is "place" (the default) or "street" """
+    with open(path, encoding="utf-8", newline="") as rows:
+        for row in csv.reader(rows):
+            if len(row) < 3 or row[0].startswith("#"):
+                continue
+            kind = KIND_STREET if len(row) > 3 and row[3].strip() == "street" else KIND_PLACE
+            yield float(row[0]), float(row[1]), row[2], kind
+
+
+def write(places, output, cell_size):
+    cells = {}
+    for latitude, longitude, name, kind in places:
+        latitude_e6 = microdegrees(latitude)
+        longitude_e6 = microdegrees(longitude)
+        key = cell_key(latitude_e6 // cell_size, longitude_e6 // cell_size)
+        cells.setdefault(key, []).append((latitude_e6, longitude_e6, truncated_utf8(name), kind))
+
+    ordered = sorted(cells.items())
+    place_count = sum(len(cell) for _, cell in ordered)
+
+    output.write(struct.pack(">iiiii", MAGIC, VERSION, cell_size, place_count, len(ordered)))
+    first = 0
+    for key, cell in ordered:
+        output.write(struct.pack(">qii", key, first, len(cell)))
+        first += len(cell)
+
+    name_offset = 0
+    for _, cell in ordered:
+        for latitude_e6, longitude_e6, name, kind in cell:
+            output.write(struct.pack(">iiib", latitude_e6, longitude_e6, name_offset, kind))
+            name_offset += 2 + len(name)
+
+    for _, cell in ordered:
+        for _, _, name, _ in cell:
+            output.write(struct.pack(">H", len(name)))
+            output.write(name)
+    return place_count
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--geonames", action="append", default=[], help="GeoNames dump, e.g. cities500.txt")
+    parser.add_argument("--min-population", type=int, default=0,
+                        help="skip GeoNames places with a smaller population")
+    parser.add_argument("--streets", action="append", default=[],
+                        help="named highways exported by osmium as GeoJSON sequence")
+    parser.add_argument("--csv", action="append", default=[], help="latitude,longitude,name[,kind] rows")
+    parser.add_argument("--cell-size", type=int, default=DEFAULT_CELL_SIZE_MICRODEGREES,
+                        help="grid cell size in microdegrees")
+    parser.add_argument("-o", "--output", default="gazetteer.bin")
+    arguments = parser.parse_args()
+
+    if not (arguments.geonames or arguments.streets or arguments.csv):
+        parser.error("no input given")
+
+    places = []
+    for path in arguments.geonames:
+        places.extend(read_geonames(path, arguments.min_population))
+    for path in arguments.streets:
+        places.extend(read_streets(path))
+    for path in arguments.csv:
+        places.extend(read_csv(path))
+
+    with open(arguments.output, "wb") as output:
+        count = write(places, output, arguments.cell_size)
+    print("Wrote %d places and streets to %s" % (count, arguments.output), file=sys.stderr)
+
+
+if __name__ == "__main__":
+    main()